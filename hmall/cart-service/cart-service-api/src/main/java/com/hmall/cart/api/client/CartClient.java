@@ -1,7 +1,10 @@
 package com.hmall.cart.api.client;
 
+import com.hmall.cart.api.dto.CartItemDTO;
 import org.springframework.cloud.openfeign.FeignClient;
 import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestParam;
 
 import java.util.List;
@@ -9,6 +12,14 @@ import java.util.List;
 @FeignClient(name="cart-service")
 public interface CartClient {
 
+    /**
+     * 按商品id删除当前用户的购物车条目
+     *
+     * @return 被删除的条目，撤销时用 addItems2Cart 放回
+     */
     @DeleteMapping("/carts")
-    void removeByItemIds(@RequestParam("ids") List<Long> ids);
+    List<CartItemDTO> removeByItemIds(@RequestParam("ids") List<Long> ids);
+
+    @PostMapping("/carts/batch")
+    void addItems2Cart(@RequestBody List<CartItemDTO> items);
 }
@@ -0,0 +1,27 @@
+package com.hmall.cart.api.dto;
+
+import io.swagger.annotations.ApiModel;
+import io.swagger.annotations.ApiModelProperty;
+import lombok.Data;
+import lombok.experimental.Accessors;
+
+/*
+* 加入购物车的商品，字段与购物车服务的 CartFormDTO 保持一致
+* */
+@Data
+@Accessors(chain = true)
+@ApiModel(description = "加入购物车的商品")
+public class CartItemDTO {
+    @ApiModelProperty("商品id")
+    private Long itemId;
+    @ApiModelProperty("商品标题")
+    private String name;
+    @ApiModelProperty("商品动态属性键值集")
+    private String spec;
+    @ApiModelProperty("价格,单位：分")
+    private Integer price;
+    @ApiModelProperty("商品图片")
+    private String image;
+    @ApiModelProperty("加入的数量")
+    private Integer num;
+}
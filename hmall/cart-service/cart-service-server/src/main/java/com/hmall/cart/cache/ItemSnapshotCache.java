@@ -0,0 +1,43 @@
+package com.hmall.cart.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.hmall.cart.config.CartEnrichProperties;
+import com.hmall.item.api.dto.ItemDTO;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.Map;
+
+/*
+* 商品快照
+* 作用：
+*  1. 每次成功查询到的商品价格、状态、库存都保存一份
+*  2. 商品服务超时或降级时，购物车使用快照中的数据，并标记为过期（stale），而不是整个购物车都没有最新价格
+* 注意：
+*  1. 快照只用于降级，正常情况下购物车总是使用商品服务返回的最新数据
+* */
+@Component
+public class ItemSnapshotCache {
+
+    private final Cache<Long, ItemDTO> snapshots;
+
+    public ItemSnapshotCache(CartEnrichProperties properties) {
+        this.snapshots = Caffeine.newBuilder()
+                .maximumSize(properties.getSnapshotMaximumSize())
+                .expireAfterWrite(properties.getSnapshotTtl())
+                .build();
+    }
+
+    public void putAll(Collection<ItemDTO> items) {
+        for (ItemDTO item : items) {
+            if (item != null && item.getId() != null) {
+                snapshots.put(item.getId(), item);
+            }
+        }
+    }
+
+    public Map<Long, ItemDTO> getAll(Collection<Long> itemIds) {
+        return snapshots.getAllPresent(itemIds);
+    }
+}
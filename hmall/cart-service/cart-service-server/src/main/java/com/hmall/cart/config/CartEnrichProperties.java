@@ -0,0 +1,35 @@
+package com.hmall.cart.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.cloud.context.config.annotation.RefreshScope;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+@Data
+@RefreshScope
+@Component
+@ConfigurationProperties(prefix = "hm.cart.enrich")
+public class CartEnrichProperties {
+    /**
+     * 每次调用商品服务查询的最大商品数量，超过时拆分为多次并行调用
+     */
+    private int chunkSize = 20;
+    /**
+     * 并行查询商品的线程数，仅在启动时读取
+     */
+    private int parallelism = 4;
+    /**
+     * 所有分批查询的总等待时间，超时未返回的批次使用本地快照
+     */
+    private Duration timeout = Duration.ofMillis(800);
+    /**
+     * 商品快照的保存时间，仅在启动时读取
+     */
+    private Duration snapshotTtl = Duration.ofMinutes(30);
+    /**
+     * 最多保存的商品快照数量，仅在启动时读取
+     */
+    private long snapshotMaximumSize = 100_000;
+}
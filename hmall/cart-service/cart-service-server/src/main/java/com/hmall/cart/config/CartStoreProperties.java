@@ -0,0 +1,53 @@
+package com.hmall.cart.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/*
+* 购物车存储相关配置，都只在启动时读取
+* */
+@Data
+@Component
+@ConfigurationProperties(prefix = "hm.cart.store")
+public class CartStoreProperties {
+    /**
+     * 存储模式：db 每次读写都访问数据库；memory 活跃用户的购物车保存在内存中，修改异步批量落库
+     */
+    private Mode mode = Mode.DB;
+    /**
+     * memory 模式下，修改落库的周期
+     */
+    private Duration flushInterval = Duration.ofMillis(500);
+    /**
+     * memory 模式下，用户购物车多久没有访问之后从内存中移除
+     */
+    private Duration idleTimeout = Duration.ofMinutes(30);
+    /**
+     * memory 模式下，内存中最多保存的用户购物车数量
+     */
+    private long maximumUsers = 100_000;
+    /**
+     * memory 模式下，预写日志的目录，每个实例必须使用独立的目录
+     */
+    private String walDir = "data/cart-wal";
+    /**
+     * memory 模式下，每次写预写日志后是否强制刷盘
+     */
+    private boolean walFsync = true;
+    /**
+     * memory 模式下，当前实例的唯一标识，用于在数据库中保存已落库的日志序号，必须配置且与 walDir 一一对应
+     */
+    private String nodeId;
+    /**
+     * memory 模式下，单实例租约的有效期。同一时刻只有一个实例能以 memory 模式运行，
+     * 其他实例启动时会失败；实例异常退出后，最多等待这么久其他实例才能启动
+     */
+    private Duration leaseTtl = Duration.ofSeconds(30);
+
+    public enum Mode {
+        DB, MEMORY
+    }
+}
@@ -0,0 +1,35 @@
+package com.hmall.cart.config;
+
+import com.hmall.common.constants.MqConstants;
+import org.springframework.amqp.core.Binding;
+import org.springframework.amqp.core.BindingBuilder;
+import org.springframework.amqp.core.DirectExchange;
+import org.springframework.amqp.core.Queue;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/*
+* 清理购物车消息的死信交换机和死信队列，在第一次连接 RabbitMQ 时声明
+* 消费失败并且重试耗尽的消息（见 application.yaml 中的 spring.rabbitmq.listener），
+* 由 cart.clear.queue 的 x-dead-letter-exchange 转入死信队列，需要人工处理后重新投递
+* */
+@Configuration
+@ConditionalOnProperty(prefix = "hm.cart.order-listener", name = "enabled", havingValue = "true")
+public class OrderListenerMqConfig {
+
+    @Bean
+    public DirectExchange cartClearDeadLetterExchange() {
+        return new DirectExchange(MqConstants.CART_CLEAR_DLX, true, false);
+    }
+
+    @Bean
+    public Queue cartClearDeadLetterQueue() {
+        return new Queue(MqConstants.CART_CLEAR_DLQ, true);
+    }
+
+    @Bean
+    public Binding cartClearDeadLetterBinding() {
+        return BindingBuilder.bind(cartClearDeadLetterQueue()).to(cartClearDeadLetterExchange()).with(MqConstants.CART_CLEAR_DLQ);
+    }
+}
@@ -6,6 +6,7 @@ import com.hmall.cart.domain.dto.CartFormDTO;
 import com.hmall.cart.domain.po.Cart;
 import com.hmall.cart.domain.vo.CartVO;
 import com.hmall.cart.service.ICartService;
+import com.hmall.common.utils.BeanUtils;
 import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiImplicitParam;
 import io.swagger.annotations.ApiOperation;
@@ -29,6 +30,12 @@ public class CartController {
         cartService.addItem2Cart(cartFormDTO);
     }
 
+    @ApiOperation("批量添加商品到购物车")
+    @PostMapping("/batch")
+    public void addItems2Cart(@RequestBody List<CartFormDTO> cartFormDTOs){
+        cartService.addItems2Cart(cartFormDTOs);
+    }
+
     @ApiOperation("更新购物车数据")
     @PutMapping
     public void updateCart(@RequestBody Cart cart){
@@ -49,7 +56,8 @@ public class CartController {
     @ApiOperation("批量删除购物车中商品")
     @ApiImplicitParam(name = "ids", value = "购物车条目id集合")
     @DeleteMapping
-    public void deleteCartItemByIds(@RequestParam("ids") List<Long> ids){
-        cartService.removeByItemIds(ids);
+    public List<CartFormDTO> deleteCartItemByIds(@RequestParam("ids") List<Long> ids){
+        // 返回被删除的条目，调用方需要撤销时原样放回购物车
+        return BeanUtils.copyList(cartService.removeByItemIds(ids), CartFormDTO.class);
     }
 }
@@ -4,6 +4,8 @@ import io.swagger.annotations.ApiModel;
 import io.swagger.annotations.ApiModelProperty;
 import lombok.Data;
 
+import javax.validation.constraints.Min;
+
 @Data
 @ApiModel(description = "新增购物车商品表单实体")
 public class CartFormDTO {
@@ -17,4 +19,7 @@ public class CartFormDTO {
     private Integer price;
     @ApiModelProperty("商品图片")
     private String image;
+    @ApiModelProperty("加入的数量，为空时为1")
+    @Min(value = 1, message = "数量不能小于1")
+    private Integer num;
 }
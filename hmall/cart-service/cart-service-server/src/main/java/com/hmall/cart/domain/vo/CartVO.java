@@ -36,5 +36,7 @@ public class CartVO {
     private String image;
     @ApiModelProperty("创建时间")
     private LocalDateTime createTime;
+    @ApiModelProperty("商品最新价格、状态、库存是否来自本地快照，商品服务超时或降级时为true，数据可能不是最新")
+    private Boolean stale = false;
 
 }
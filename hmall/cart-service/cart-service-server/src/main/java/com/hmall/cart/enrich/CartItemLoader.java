@@ -0,0 +1,160 @@
+package com.hmall.cart.enrich;
+
+import cn.hutool.core.collection.ListUtil;
+import com.hmall.cart.cache.ItemSnapshotCache;
+import com.hmall.cart.config.CartEnrichProperties;
+import com.hmall.common.utils.CollUtils;
+import com.hmall.common.utils.UserContextTaskDecorator;
+import com.hmall.item.api.client.ItemClient;
+import com.hmall.item.api.dto.ItemDTO;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/*
+* 购物车查询商品信息
+* 流程：
+*  1. 商品id按 chunkSize 拆分为多批，在线程池中并行调用商品服务，每一批可能落在不同的商品服务实例上
+*  2. 所有批次共用一个总的等待时间，一个慢实例只会让它负责的批次降级，而不会让整个购物车的耗时翻倍
+*  3. 成功的批次写入商品快照；失败、超时的批次从快照中读取，并标记为过期
+* 注意：
+*  1. ItemClient 的降级实现在调用失败时返回空列表，所以非空的批次返回空列表也视为失败
+*  2. 快照中也没有的商品不做处理，与原来查询不到商品时的行为相同
+* */
+@Slf4j
+@Component
+public class CartItemLoader {
+
+    private final ItemClient itemClient;
+    private final ItemSnapshotCache snapshotCache;
+    private final CartEnrichProperties properties;
+    private final ThreadPoolTaskExecutor executor;
+
+    public CartItemLoader(ItemClient itemClient, ItemSnapshotCache snapshotCache, CartEnrichProperties properties) {
+        this.itemClient = itemClient;
+        this.snapshotCache = snapshotCache;
+        this.properties = properties;
+        this.executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(properties.getParallelism());
+        executor.setMaxPoolSize(properties.getParallelism());
+        executor.setQueueCapacity(properties.getParallelism() * 64);
+        executor.setThreadNamePrefix("cart-item-loader-");
+        // 调用商品服务时需要带上当前用户
+        executor.setTaskDecorator(new UserContextTaskDecorator());
+        // 排队已满时拒绝，由调用方按失败处理，使用快照
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+        executor.initialize();
+    }
+
+    /**
+     * 查询商品信息
+     *
+     * @param itemIds 商品id
+     * @return 查询到的商品，以及其中来自快照的商品id
+     */
+    public LoadedItems load(Collection<Long> itemIds) {
+        Map<Long, ItemDTO> items = new HashMap<>();
+        Set<Long> staleIds = new HashSet<>();
+        if (CollUtils.isEmpty(itemIds)) {
+            return new LoadedItems(items, staleIds);
+        }
+        // 1.拆分批次，并行查询
+        List<List<Long>> chunks = ListUtil.partition(new ArrayList<>(itemIds), Math.max(1, properties.getChunkSize()));
+        List<CompletableFuture<List<ItemDTO>>> futures = new ArrayList<>(chunks.size());
+        for (List<Long> chunk : chunks) {
+            futures.add(submit(chunk));
+        }
+        // 2.在总的等待时间内收集结果
+        long deadline = System.nanoTime() + properties.getTimeout().toNanos();
+        List<Long> failedIds = new ArrayList<>();
+        for (int i = 0; i < chunks.size(); i++) {
+            List<ItemDTO> result = await(futures.get(i), deadline);
+            if (CollUtils.isEmpty(result)) {
+                failedIds.addAll(chunks.get(i));
+                continue;
+            }
+            for (ItemDTO item : result) {
+                items.put(item.getId(), item);
+            }
+            snapshotCache.putAll(result);
+        }
+        // 3.失败的批次使用快照
+        if (!failedIds.isEmpty()) {
+            Map<Long, ItemDTO> snapshots = snapshotCache.getAll(failedIds);
+            items.putAll(snapshots);
+            staleIds.addAll(snapshots.keySet());
+            log.warn("查询商品信息失败，商品数量：{}，使用快照：{}", failedIds.size(), snapshots.size());
+        }
+        return new LoadedItems(items, staleIds);
+    }
+
+    private CompletableFuture<List<ItemDTO>> submit(List<Long> chunk) {
+        try {
+            return CompletableFuture.supplyAsync(() -> itemClient.queryItemByIds(chunk), executor);
+        } catch (RuntimeException e) {
+            // 线程池已满
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    private static List<ItemDTO> await(CompletableFuture<List<ItemDTO>> future, long deadline) {
+        try {
+            return future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(false);
+            return null;
+        } catch (ExecutionException e) {
+            log.debug("查询商品信息失败", e.getCause());
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    /**
+     * 商品查询结果
+     */
+    public static class LoadedItems {
+        private final Map<Long, ItemDTO> items;
+        private final Set<Long> staleIds;
+
+        private LoadedItems(Map<Long, ItemDTO> items, Set<Long> staleIds) {
+            this.items = items;
+            this.staleIds = staleIds;
+        }
+
+        /**
+         * 商品id -> 商品
+         */
+        public Map<Long, ItemDTO> getItems() {
+            return items;
+        }
+
+        /**
+         * 是否来自快照，可能不是最新数据
+         */
+        public boolean isStale(Long itemId) {
+            return staleIds.contains(itemId);
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.hmall.cart.listener;
+
+import com.hmall.cart.service.ICartService;
+import com.hmall.common.constants.MqConstants;
+import com.hmall.common.domain.dto.OrderCreatedMessage;
+import com.hmall.common.domain.dto.OrderDetailDTO;
+import com.hmall.common.utils.CollUtils;
+import com.hmall.common.utils.UserContext;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.core.ExchangeTypes;
+import org.springframework.amqp.rabbit.annotation.Argument;
+import org.springframework.amqp.rabbit.annotation.Exchange;
+import org.springframework.amqp.rabbit.annotation.Queue;
+import org.springframework.amqp.rabbit.annotation.QueueBinding;
+import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+/*
+* 订单创建成功后清理购物车，交易服务的 hm.trade.order.pipeline=async 时由消息触发
+* 注意：
+*  1. 消费线程中没有请求头，用户id从消息中获取并放入 UserContext，处理结束后清除
+*  2. 删除本身是幂等的，重复投递不会有影响
+*  3. 需要 RabbitMQ，默认不启用，通过 hm.cart.order-listener.enabled=true 开启
+*  4. 处理失败时在消费线程中重试，重试耗尽或者消息无法解析时拒绝且不重新入队，转入死信队列 cart.clear.dlq，
+*     不会无限重新投递（见 OrderListenerMqConfig、application.yaml）
+* */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(prefix = "hm.cart.order-listener", name = "enabled", havingValue = "true")
+public class OrderCreatedListener {
+
+    private final ICartService cartService;
+
+    @RabbitListener(bindings = @QueueBinding(
+            value = @Queue(name = MqConstants.CART_CLEAR_QUEUE, durable = "true", arguments = {
+                    @Argument(name = "x-dead-letter-exchange", value = MqConstants.CART_CLEAR_DLX),
+                    @Argument(name = "x-dead-letter-routing-key", value = MqConstants.CART_CLEAR_DLQ)
+            }),
+            exchange = @Exchange(name = MqConstants.TRADE_EXCHANGE, type = ExchangeTypes.TOPIC),
+            key = MqConstants.ORDER_CREATED_KEY
+    ))
+    public void onOrderCreated(OrderCreatedMessage message) {
+        if (message.getUserId() == null || CollUtils.isEmpty(message.getItems())) {
+            log.warn("订单创建消息缺少用户或商品，忽略：{}", message);
+            return;
+        }
+        List<Long> itemIds = message.getItems().stream().map(OrderDetailDTO::getItemId).collect(Collectors.toList());
+        UserContext.setUser(message.getUserId());
+        try {
+            cartService.removeByItemIds(itemIds);
+        } finally {
+            UserContext.removeUser();
+        }
+    }
+}
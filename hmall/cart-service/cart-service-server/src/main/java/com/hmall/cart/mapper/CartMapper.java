@@ -2,9 +2,13 @@ package com.hmall.cart.mapper;
 
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import com.hmall.cart.domain.po.Cart;
+import org.apache.ibatis.annotations.Insert;
 import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
 import org.apache.ibatis.annotations.Update;
 
+import java.util.List;
+
 /**
  * <p>
  * 订单详情表 Mapper 接口
@@ -12,6 +16,61 @@ import org.apache.ibatis.annotations.Update;
  */
 public interface CartMapper extends BaseMapper<Cart> {
 
-    @Update("UPDATE cart SET num = num + 1 WHERE user_id = #{userId} AND item_id = #{itemId}")
-    void updateNum(@Param("itemId") Long itemId, @Param("userId") Long userId);
+    @Update("UPDATE cart SET num = num + #{num} WHERE user_id = #{userId} AND item_id = #{itemId}")
+    void updateNum(@Param("itemId") Long itemId, @Param("userId") Long userId, @Param("num") int num);
+
+    /*
+    * 加入购物车：一条语句完成“已存在则增加数量，否则在购物车未满时新增”
+    * 返回值：1 新增，2 增加数量，0 购物车已满
+    * 依赖 (user_id, item_id) 唯一索引
+    * 注意：InnoDB 执行 INSERT ... SELECT 时对子查询扫描到的记录和间隙加共享的 next-key 锁，同一用户的两个并发添加
+    * 都持有共享锁后再插入，会互相等待对方的锁而死锁，MySQL 回滚其中一个（DeadlockLoserDataAccessException），
+    * 单条语句没有其他副作用，调用方直接重试（见 CartServiceImpl.addItem2Cart）
+    * */
+    @Insert("INSERT INTO cart (user_id, item_id, num, name, spec, price, image) " +
+            "SELECT #{c.userId}, #{c.itemId}, #{num}, #{c.name}, #{c.spec}, #{c.price}, #{c.image} FROM DUAL " +
+            "WHERE (SELECT COUNT(*) FROM cart WHERE user_id = #{c.userId}) < #{maxItem} " +
+            "OR EXISTS (SELECT 1 FROM cart WHERE user_id = #{c.userId} AND item_id = #{c.itemId}) " +
+            "ON DUPLICATE KEY UPDATE num = num + VALUES(num), update_time = NOW()")
+    int upsertItem(@Param("c") Cart cart, @Param("num") int num, @Param("maxItem") int maxItem);
+
+    /*
+    * 批量加入购物车：已存在的商品增加数量，不存在的新增
+    * 不检查购物车容量，调用方需要先通过 lockItemIds 锁定用户的购物车并检查
+    * */
+    @Insert("<script>" +
+            "INSERT INTO cart (user_id, item_id, num, name, spec, price, image) VALUES " +
+            "<foreach collection='carts' item='c' separator=','>" +
+            "(#{c.userId}, #{c.itemId}, #{c.num}, #{c.name}, #{c.spec}, #{c.price}, #{c.image})" +
+            "</foreach>" +
+            " ON DUPLICATE KEY UPDATE num = num + VALUES(num), update_time = NOW()" +
+            "</script>")
+    int upsertItems(@Param("carts") List<Cart> carts);
+
+    /*
+    * 查询并锁定用户购物车中的商品id，在事务提交前同一用户的其他添加操作会等待
+    * */
+    @Select("SELECT item_id FROM cart WHERE user_id = #{userId} FOR UPDATE")
+    List<Long> lockItemIds(@Param("userId") Long userId);
+
+    /*
+    * 检查 (user_id, item_id) 唯一索引是否存在，索引由 db/cart_uk_user_item.sql 创建
+    * */
+    @Select("SELECT COUNT(*) FROM information_schema.STATISTICS " +
+            "WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = 'cart' AND INDEX_NAME = 'uk_user_item'")
+    int countUserItemIndex();
+
+    /*
+    * memory 模式下批量落库：按主键插入或覆盖购物车条目的最新状态
+    * 主键在内存中生成，cart 表的自增主键不会生效，所以需要显式写入 id
+    * */
+    @Insert("<script>" +
+            "INSERT INTO cart (id, user_id, item_id, num, name, spec, price, image, create_time, update_time) VALUES " +
+            "<foreach collection='carts' item='c' separator=','>" +
+            "(#{c.id}, #{c.userId}, #{c.itemId}, #{c.num}, #{c.name}, #{c.spec}, #{c.price}, #{c.image}, #{c.createTime}, #{c.updateTime})" +
+            "</foreach>" +
+            " ON DUPLICATE KEY UPDATE num = VALUES(num), name = VALUES(name), spec = VALUES(spec), " +
+            "price = VALUES(price), image = VALUES(image), update_time = VALUES(update_time)" +
+            "</script>")
+    int upsertBatch(@Param("carts") List<Cart> carts);
 }
@@ -0,0 +1,40 @@
+package com.hmall.cart.mapper;
+
+import org.apache.ibatis.annotations.Delete;
+import org.apache.ibatis.annotations.Insert;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.annotations.Update;
+
+/**
+ * <p>
+ * 购物车 memory 模式的租约 Mapper 接口
+ * 同一时刻只有持有租约的实例能以 memory 模式读写购物车，过期时间以数据库时钟为准
+ * </p>
+ */
+public interface CartStoreLeaseMapper {
+
+    @Update("CREATE TABLE IF NOT EXISTS cart_store_lease (" +
+            "name VARCHAR(32) NOT NULL PRIMARY KEY, " +
+            "node_id VARCHAR(64) NOT NULL, " +
+            "lease_until DATETIME(3) NOT NULL" +
+            ") COMMENT '购物车memory模式租约'")
+    void createTableIfAbsent();
+
+    /*
+    * 获取或续期租约：没有租约、租约已过期或者本来就由该实例持有时，改为该实例持有并延长过期时间
+    * ON DUPLICATE KEY UPDATE 按顺序赋值，lease_until 判断的是更新后的 node_id
+    * */
+    @Insert("INSERT INTO cart_store_lease (name, node_id, lease_until) " +
+            "VALUES (#{name}, #{nodeId}, NOW(3) + INTERVAL #{ttlMicros} MICROSECOND) " +
+            "ON DUPLICATE KEY UPDATE " +
+            "node_id = IF(node_id = VALUES(node_id) OR lease_until < NOW(3), VALUES(node_id), node_id), " +
+            "lease_until = IF(node_id = VALUES(node_id), VALUES(lease_until), lease_until)")
+    void acquire(@Param("name") String name, @Param("nodeId") String nodeId, @Param("ttlMicros") long ttlMicros);
+
+    @Select("SELECT node_id FROM cart_store_lease WHERE name = #{name}")
+    String getHolder(@Param("name") String name);
+
+    @Delete("DELETE FROM cart_store_lease WHERE name = #{name} AND node_id = #{nodeId}")
+    void release(@Param("name") String name, @Param("nodeId") String nodeId);
+}
@@ -18,7 +18,15 @@ public interface ICartService extends IService<Cart> {
 
     void addItem2Cart(CartFormDTO cartFormDTO);
 
+    void addItems2Cart(List<CartFormDTO> cartFormDTOs);
+
     List<CartVO> queryMyCarts();
 
-    void removeByItemIds(Collection<Long> itemIds);
+    /**
+     * 按商品id删除当前用户的购物车条目
+     *
+     * @param itemIds 商品id
+     * @return 被删除的条目，购物车中没有的商品不在其中
+     */
+    List<Cart> removeByItemIds(Collection<Long> itemIds);
 }
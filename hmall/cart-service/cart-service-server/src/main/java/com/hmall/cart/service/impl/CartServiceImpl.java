@@ -7,22 +7,34 @@ import com.hmall.cart.config.CartBusiness;
 import com.hmall.cart.domain.dto.CartFormDTO;
 import com.hmall.cart.domain.po.Cart;
 import com.hmall.cart.domain.vo.CartVO;
+import com.hmall.cart.enrich.CartItemLoader;
 import com.hmall.cart.mapper.CartMapper;
 import com.hmall.cart.service.ICartService;
+import com.hmall.cart.store.MemoryCartStore;
+import com.hmall.common.exception.BadRequestException;
 import com.hmall.common.exception.BizIllegalException;
+import com.hmall.common.exception.UnauthorizedException;
 import com.hmall.common.utils.BeanUtils;
 import com.hmall.common.utils.CollUtils;
 import com.hmall.common.utils.UserContext;
-import com.hmall.item.api.client.ItemClient;
 import com.hmall.item.api.dto.ItemDTO;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DeadlockLoserDataAccessException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
+import javax.annotation.PostConstruct;
+import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.function.Function;
 import java.util.stream.Collectors;
 
 /**
@@ -30,27 +42,69 @@ import java.util.stream.Collectors;
  * 订单详情表 服务实现类
  * </p>
  */
+@Slf4j
 @Service
 @RequiredArgsConstructor // Lombok - 自动生成有参构造器，并且只使用必须放在构造函数中的字段进行初始化（final字段）
 public class CartServiceImpl extends ServiceImpl<CartMapper, Cart> implements ICartService {
 
+    // 单条语句加入购物车因死锁被回滚时的最大尝试次数
+    private static final int UPSERT_MAX_ATTEMPTS = 3;
+
     // private final IItemService itemService;
     // private final RestTemplate restTemplate;
     // private final DiscoveryClient discoveryClient;
-    // 优化为使用openfeign
-    private final ItemClient itemClient;
+    // 优化为使用openfeign，再优化为分批并行调用，并在商品服务降级时使用快照（见 CartItemLoader）
+    private final CartItemLoader cartItemLoader;
     private final CartBusiness cartBusiness;
+    // hm.cart.store.mode=memory 时购物车的读写都在内存中完成，批量写回数据库（见 MemoryCartStore）
+    private final ObjectProvider<MemoryCartStore> memoryCartStore;
+    // cart 表是否有 (user_id, item_id) 唯一索引，有则使用单条语句加入购物车
+    private volatile boolean upsertSupported;
 
+    /**
+     * 初始化加入购物车的方式
+     * <p>
+     * 单条语句加入购物车依赖 (user_id, item_id) 唯一索引，启动时只检查索引是否存在，不修改表结构。
+     * 索引由 DBA 执行 db/cart_uk_user_item.sql 创建，不存在或检查失败时仍使用先查询再写入的方式。
+     * </p>
+     */
+    @PostConstruct
+    public void initUpsert() {
+        try {
+            upsertSupported = baseMapper.countUserItemIndex() > 0;
+        } catch (DataAccessException e) {
+            log.warn("检查cart表的(user_id, item_id)唯一索引失败，加入购物车使用先查询再写入的方式", e);
+            return;
+        }
+        if (!upsertSupported) {
+            log.warn("cart表没有(user_id, item_id)唯一索引，加入购物车使用先查询再写入的方式，执行 db/cart_uk_user_item.sql 后重启生效");
+        }
+    }
 
     @Override
     public void addItem2Cart(CartFormDTO cartFormDTO) {
         // 1.获取登录用户
         Long userId = UserContext.getUser();
+        cartFormDTO = normalize(List.of(cartFormDTO)).get(0);
+        MemoryCartStore store = memoryCartStore.getIfAvailable();
+        if (store != null) {
+            store.add(requireUser(userId), cartFormDTO, cartBusiness.getMaxItem());
+            return;
+        }
+
+        // 优化：一条语句完成判断和写入，不存在先判断后写入之间的并发问题
+        if (upsertSupported) {
+            Cart cart = BeanUtils.copyBean(cartFormDTO, Cart.class).setUserId(userId);
+            if (upsertItem(cart, cartFormDTO.getNum()) == 0) {
+                throw new BizIllegalException(StrUtil.format("用户购物车课程不能超过{}", cartBusiness.getMaxItem()));
+            }
+            return;
+        }
 
         // 2.判断是否已经存在
         if(checkItemExists(cartFormDTO.getItemId(), userId)){
             // 2.1.存在，则更新数量
-            baseMapper.updateNum(cartFormDTO.getItemId(), userId);
+            baseMapper.updateNum(cartFormDTO.getItemId(), userId, cartFormDTO.getNum());
             return;
         }
         // 2.2.不存在，判断是否超过购物车数量
@@ -65,10 +119,89 @@ public class CartServiceImpl extends ServiceImpl<CartMapper, Cart> implements IC
         save(cart);
     }
 
+    @Override
+    @Transactional
+    public void addItems2Cart(List<CartFormDTO> cartFormDTOs) {
+        // 1.获取登录用户，合并重复的商品
+        Long userId = UserContext.getUser();
+        List<CartFormDTO> forms = normalize(cartFormDTOs);
+        if (forms.isEmpty()) {
+            return;
+        }
+        MemoryCartStore store = memoryCartStore.getIfAvailable();
+        if (store != null) {
+            store.addAll(requireUser(userId), forms, cartBusiness.getMaxItem());
+            return;
+        }
+        if (!upsertSupported) {
+            forms.forEach(this::addItem2Cart);
+            return;
+        }
+
+        // 2.锁定用户的购物车，判断新增的商品是否超过购物车数量
+        Set<Long> existing = new HashSet<>(baseMapper.lockItemIds(userId));
+        long added = forms.stream().filter(f -> !existing.contains(f.getItemId())).count();
+        if (existing.size() + added > cartBusiness.getMaxItem()) {
+            throw new BizIllegalException(StrUtil.format("用户购物车课程不能超过{}", cartBusiness.getMaxItem()));
+        }
+
+        // 3.一条语句写入全部商品
+        List<Cart> carts = BeanUtils.copyList(forms, Cart.class);
+        carts.forEach(c -> c.setUserId(userId));
+        baseMapper.upsertItems(carts);
+    }
+
+    /*
+    * 同一用户并发加入购物车时语句可能因死锁被回滚，回滚的语句没有生效，直接重试
+    * */
+    private int upsertItem(Cart cart, int num) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return baseMapper.upsertItem(cart, num, cartBusiness.getMaxItem());
+            } catch (DeadlockLoserDataAccessException e) {
+                if (attempt >= UPSERT_MAX_ATTEMPTS) {
+                    throw e;
+                }
+                log.debug("加入购物车时发生死锁，第{}次重试", attempt);
+            }
+        }
+    }
+
+    /*
+    * 校验商品id和数量，数量为空时为1，同一个商品出现多次时合并数量
+    * */
+    private static List<CartFormDTO> normalize(List<CartFormDTO> forms) {
+        if (forms == null) {
+            return CollUtils.emptyList();
+        }
+        Map<Long, CartFormDTO> byItem = new LinkedHashMap<>(forms.size());
+        for (CartFormDTO form : forms) {
+            if (form == null || form.getItemId() == null) {
+                throw new BadRequestException("商品id不能为空");
+            }
+            int num = form.getNum() == null ? 1 : form.getNum();
+            if (num < 1) {
+                throw new BadRequestException("数量不能小于1");
+            }
+            CartFormDTO merged = byItem.get(form.getItemId());
+            if (merged == null) {
+                merged = BeanUtils.copyBean(form, CartFormDTO.class);
+                merged.setNum(num);
+                byItem.put(form.getItemId(), merged);
+            } else {
+                merged.setNum(merged.getNum() + num);
+            }
+        }
+        return new ArrayList<>(byItem.values());
+    }
+
     @Override
     public List<CartVO> queryMyCarts() {
         // 1.查询我的购物车列表
-        List<Cart> carts = lambdaQuery().eq(Cart::getUserId, UserContext.getUser()).list();
+        MemoryCartStore store = memoryCartStore.getIfAvailable();
+        List<Cart> carts = store != null
+                ? store.list(requireUser(UserContext.getUser()))
+                : lambdaQuery().eq(Cart::getUserId, UserContext.getUser()).list();
         if (CollUtils.isEmpty(carts)) {
             return CollUtils.emptyList();
         }
@@ -124,14 +257,14 @@ public class CartServiceImpl extends ServiceImpl<CartMapper, Cart> implements IC
 //        }
 
         // 2.1-2.3 优化：使用openfeign优化调用商品服务
-        List<ItemDTO> items = itemClient.queryItemByIds(itemIds.stream().toList());
-        if (items == null || items.isEmpty()) {
+        // 2.4 优化：分批并行调用，失败的批次使用本地快照
+        CartItemLoader.LoadedItems loaded = cartItemLoader.load(itemIds);
+        Map<Long, ItemDTO> itemMap = loaded.getItems();
+        if (itemMap.isEmpty()) {
             return;
         }
 
-        // 3.转为 id 到 item的map
-        Map<Long, ItemDTO> itemMap = items.stream().collect(Collectors.toMap(ItemDTO::getId, Function.identity()));
-        // 4.写入vo
+        // 3.写入vo
         for (CartVO v : vos) {
             ItemDTO item = itemMap.get(v.getItemId());
             if (item == null) {
@@ -140,18 +273,58 @@ public class CartServiceImpl extends ServiceImpl<CartMapper, Cart> implements IC
             v.setNewPrice(item.getPrice());
             v.setStatus(item.getStatus());
             v.setStock(item.getStock());
+            v.setStale(loaded.isStale(v.getItemId()));
         }
     }
 
     @Override
-    public void removeByItemIds(Collection<Long> itemIds) {
-        // 1.构建删除条件，userId和itemId
+    @Transactional
+    public List<Cart> removeByItemIds(Collection<Long> itemIds) {
+        MemoryCartStore store = memoryCartStore.getIfAvailable();
+        if (store != null) {
+            return store.removeByItemIds(requireUser(UserContext.getUser()), itemIds);
+        }
+        // 1.构建查询条件，userId和itemId，锁定要删除的条目，返回给调用方用于撤销
         QueryWrapper<Cart> queryWrapper = new QueryWrapper<Cart>();
         queryWrapper.lambda()
                 .eq(Cart::getUserId, UserContext.getUser())
-                .in(Cart::getItemId, itemIds);
+                .in(Cart::getItemId, itemIds)
+                .last("FOR UPDATE");
+        List<Cart> carts = list(queryWrapper);
+        if (carts.isEmpty()) {
+            return carts;
+        }
         // 2.删除
-        remove(queryWrapper);
+        removeByIds(carts.stream().map(Cart::getId).collect(Collectors.toList()));
+        return carts;
+    }
+
+    @Override
+    public boolean updateById(Cart entity) {
+        MemoryCartStore store = memoryCartStore.getIfAvailable();
+        if (store != null) {
+            return store.update(requireUser(UserContext.getUser()), entity);
+        }
+        return super.updateById(entity);
+    }
+
+    @Override
+    public boolean removeById(Serializable id) {
+        MemoryCartStore store = memoryCartStore.getIfAvailable();
+        if (store != null) {
+            return store.remove(requireUser(UserContext.getUser()), Long.valueOf(id.toString()));
+        }
+        return super.removeById(id);
+    }
+
+    /*
+    * 内存存储按用户保存购物车，必须知道当前用户
+    * */
+    private static Long requireUser(Long userId) {
+        if (userId == null) {
+            throw new UnauthorizedException("未登录");
+        }
+        return userId;
     }
 
     private void checkCartsFull(Long userId) {
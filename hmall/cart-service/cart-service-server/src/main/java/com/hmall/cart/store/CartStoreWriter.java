@@ -0,0 +1,43 @@
+package com.hmall.cart.store;
+
+import com.hmall.cart.domain.po.Cart;
+import com.hmall.cart.mapper.CartCheckpointMapper;
+import com.hmall.cart.mapper.CartMapper;
+import com.hmall.common.utils.CollUtils;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Collection;
+import java.util.List;
+
+/*
+* memory 模式下购物车修改的批量落库
+* */
+@Component
+@RequiredArgsConstructor
+public class CartStoreWriter {
+
+    private final CartMapper cartMapper;
+    private final CartCheckpointMapper cartCheckpointMapper;
+
+    /**
+     * 在一个事务中写入购物车条目的最新状态、删除已删除的条目，并保存日志序号
+     *
+     * @param upserts   新增或修改后的条目
+     * @param deleteIds 已删除的条目id
+     * @param nodeId    当前实例的唯一标识
+     * @param seq       本批修改对应的最大日志序号
+     */
+    @Transactional
+    public void flush(List<Cart> upserts, Collection<Long> deleteIds, String nodeId, long seq) {
+        // 先删除再写入：同一批中删除后又重新加入的商品会得到新的条目id，先写入会与旧条目的 (user_id, item_id) 唯一索引冲突
+        if (CollUtils.isNotEmpty(deleteIds)) {
+            cartMapper.deleteBatchIds(deleteIds);
+        }
+        if (CollUtils.isNotEmpty(upserts)) {
+            cartMapper.upsertBatch(upserts);
+        }
+        cartCheckpointMapper.saveSeq(nodeId, seq);
+    }
+}
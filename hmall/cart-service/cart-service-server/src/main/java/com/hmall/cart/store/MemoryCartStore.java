@@ -0,0 +1,503 @@
+package com.hmall.cart.store;
+
+import cn.hutool.core.bean.copier.CopyOptions;
+import cn.hutool.core.util.StrUtil;
+import cn.hutool.json.JSONUtil;
+import com.baomidou.mybatisplus.core.toolkit.IdWorker;
+import com.baomidou.mybatisplus.core.toolkit.Wrappers;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.hmall.cart.config.CartStoreProperties;
+import com.hmall.cart.domain.dto.CartFormDTO;
+import com.hmall.cart.domain.po.Cart;
+import com.hmall.cart.mapper.CartCheckpointMapper;
+import com.hmall.cart.mapper.CartMapper;
+import com.hmall.cart.mapper.CartStoreLeaseMapper;
+import com.hmall.common.exception.BizIllegalException;
+import com.hmall.common.utils.BeanUtils;
+import com.hmall.common.utils.WriteAheadLog;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+
+/*
+* 内存购物车存储，hm.cart.store.mode=memory 时启用
+* 作用：
+*  1. 原来每次加入购物车都要执行两次 COUNT 和一次插入或更新，每次查询购物车都要读数据库
+*  2. 活跃用户的购物车整体保存在内存中，读写都在内存中完成，用户一段时间不访问后移除
+*  3. 修改先写预写日志，再由后台线程把同一个条目的多次修改合并为最终状态，批量落库
+* 流程：
+*  1. 读写某个用户的购物车时，先持有该用户的锁；内存中没有时从数据库加载，并叠加尚未落库的修改
+*  2. 修改时先计算出条目的新状态，写入预写日志后才修改内存，日志写入失败时内存不变
+*  3. flush：定期取出待落库的修改（条目id -> 最终状态），在一个事务中批量写入并保存日志序号，然后记录本地检查点
+*  4. 启动时：先获取单实例租约，再读取数据库中保存的序号，重放之后的日志并立即落库，然后才开始接受请求
+* 注意：
+*  1. 条目id在内存中由 IdWorker 生成，不再使用 cart 表的自增主键
+*  2. 多个实例以 memory 模式同时修改同一个用户的购物车会互相覆盖（例如另一个实例把已删除的条目重新写回），
+*     所以同一时刻只允许一个实例以 memory 模式运行：租约被其他实例持有时启动失败；每 leaseTtl/3 续期一次，
+*     本地只在 leaseTtl 的 3/4 内认为租约有效，续期失败超过这个时间就拒绝读写，在其他实例接手之前停止
+*  3. 加载购物车与落库互斥，避免加载时读到已经取出、尚未写入数据库的修改之前的数据
+*  4. nodeId 必须配置，检查点按 nodeId 保存，与 walDir 中的日志一一对应
+* */
+@Slf4j
+@Component
+@ConditionalOnProperty(prefix = "hm.cart.store", name = "mode", havingValue = "memory")
+public class MemoryCartStore {
+
+    private static final int LOCK_STRIPES = 64;
+    private static final String LEASE_NAME = "memory";
+
+    private final CartStoreProperties properties;
+    private final CartMapper cartMapper;
+    private final CartCheckpointMapper cartCheckpointMapper;
+    private final CartStoreLeaseMapper cartStoreLeaseMapper;
+    private final CartStoreWriter cartStoreWriter;
+    // 本地认为租约有效的截止时间（System.nanoTime）
+    private volatile long leaseValidUntil;
+    // 用户id -> 购物车（条目id -> 条目），只在持有该用户的锁时访问
+    private final Cache<Long, Map<Long, Cart>> carts;
+    // 按用户id分段的锁
+    private final Object[] userLocks = new Object[LOCK_STRIPES];
+    // 条目id -> 尚未落库的最终状态
+    private final Map<Long, Change> pending = new ConcurrentHashMap<>();
+    private final ReentrantReadWriteLock pendingLock = new ReentrantReadWriteLock();
+    // 同一时刻只有一个线程落库或从数据库加载购物车
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private final ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "cart-store-flusher");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private WriteAheadLog wal;
+
+    public MemoryCartStore(CartStoreProperties properties, CartMapper cartMapper,
+                           CartCheckpointMapper cartCheckpointMapper, CartStoreLeaseMapper cartStoreLeaseMapper,
+                           CartStoreWriter cartStoreWriter) {
+        this.properties = properties;
+        this.cartMapper = cartMapper;
+        this.cartCheckpointMapper = cartCheckpointMapper;
+        this.cartStoreLeaseMapper = cartStoreLeaseMapper;
+        this.cartStoreWriter = cartStoreWriter;
+        this.carts = Caffeine.newBuilder()
+                .maximumSize(properties.getMaximumUsers())
+                .expireAfterAccess(properties.getIdleTimeout())
+                .build();
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            userLocks[i] = new Object();
+        }
+    }
+
+    @PostConstruct
+    public void start() throws IOException {
+        if (StrUtil.isBlank(properties.getNodeId())) {
+            throw new IllegalStateException("购物车 memory 模式必须配置 hm.cart.store.node-id");
+        }
+        // 1.获取单实例租约
+        cartStoreLeaseMapper.createTableIfAbsent();
+        if (!renewLease()) {
+            throw new IllegalStateException(StrUtil.format("购物车 memory 模式的租约由实例{}持有，同一时刻只能有一个实例以 memory 模式运行",
+                    cartStoreLeaseMapper.getHolder(LEASE_NAME)));
+        }
+        // 2.打开预写日志，序号从数据库中保存的检查点之后开始
+        cartCheckpointMapper.createTableIfAbsent();
+        Long dbSeq = cartCheckpointMapper.getSeq(properties.getNodeId());
+        long flushedSeq = dbSeq == null ? 0 : dbSeq;
+        wal = new WriteAheadLog(Paths.get(properties.getWalDir()), "cart", properties.isWalFsync());
+        wal.ensureSeqAfter(flushedSeq);
+        // 3.重放尚未落库的日志，同一个条目只保留最后的状态
+        List<WriteAheadLog.Entry> entries = wal.readFrom(flushedSeq);
+        for (WriteAheadLog.Entry entry : entries) {
+            for (Change change : decode(entry.getPayload())) {
+                pending.put(change.getCartId(), change);
+            }
+        }
+        flush();
+        if (!entries.isEmpty()) {
+            log.info("重放购物车预写日志{}条", entries.size());
+        }
+        // 4.开始定期落库和续期
+        long interval = properties.getFlushInterval().toMillis();
+        flusher.scheduleWithFixedDelay(this::flushQuietly, interval, interval, TimeUnit.MILLISECONDS);
+        long renewInterval = properties.getLeaseTtl().toMillis() / 3;
+        flusher.scheduleWithFixedDelay(this::renewLeaseQuietly, renewInterval, renewInterval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 查询用户的购物车
+     *
+     * @param userId 用户id
+     * @return 条目的副本，按加入顺序排列
+     */
+    public List<Cart> list(Long userId) {
+        checkLease();
+        synchronized (lockOf(userId)) {
+            Map<Long, Cart> cart = load(userId);
+            List<Cart> result = new ArrayList<>(cart.size());
+            for (Cart item : cart.values()) {
+                result.add(copy(item));
+            }
+            return result;
+        }
+    }
+
+    /**
+     * 加入购物车：已有该商品时增加数量，否则新增条目
+     *
+     * @param userId  用户id
+     * @param form    商品信息，num 不能为空
+     * @param maxItem 购物车最大条目数
+     */
+    public void add(Long userId, CartFormDTO form, int maxItem) {
+        addAll(userId, List.of(form), maxItem);
+    }
+
+    /**
+     * 批量加入购物车，全部成功或全部不生效
+     *
+     * @param userId  用户id
+     * @param forms   商品信息，num 不能为空
+     * @param maxItem 购物车最大条目数
+     */
+    public void addAll(Long userId, Collection<CartFormDTO> forms, int maxItem) {
+        modify(userId, cart -> {
+            LocalDateTime now = LocalDateTime.now();
+            // 商品id -> 条目，本次修改过的条目替换为修改后的副本
+            Map<Long, Cart> byItem = new HashMap<>();
+            for (Cart item : cart.values()) {
+                byItem.put(item.getItemId(), item);
+            }
+            // 条目id -> 修改后的条目
+            Map<Long, Cart> changed = new LinkedHashMap<>();
+            int size = cart.size();
+            for (CartFormDTO form : forms) {
+                // 1.已经存在，增加数量
+                Cart item = byItem.get(form.getItemId());
+                if (item != null) {
+                    Cart updated = copy(item).setNum(item.getNum() + form.getNum()).setUpdateTime(now);
+                    byItem.put(updated.getItemId(), updated);
+                    changed.put(updated.getId(), updated);
+                    continue;
+                }
+                // 2.不存在，判断是否超过购物车数量
+                if (size >= maxItem) {
+                    throw new BizIllegalException(StrUtil.format("用户购物车课程不能超过{}", maxItem));
+                }
+                // 3.新增条目
+                Cart created = BeanUtils.copyBean(form, Cart.class)
+                        .setId(IdWorker.getId())
+                        .setUserId(userId)
+                        .setCreateTime(now)
+                        .setUpdateTime(now);
+                size++;
+                byItem.put(created.getItemId(), created);
+                changed.put(created.getId(), created);
+            }
+            List<Change> changes = new ArrayList<>(changed.size());
+            for (Cart item : changed.values()) {
+                changes.add(Change.upsert(item));
+            }
+            return changes;
+        });
+    }
+
+    /**
+     * 修改购物车条目，只修改不为null的字段，与 updateById 相同
+     *
+     * @param userId 用户id
+     * @param cart   条目id和要修改的字段
+     * @return 条目是否存在
+     */
+    public boolean update(Long userId, Cart cart) {
+        List<Change> changes = modify(userId, current -> {
+            Cart item = cart.getId() == null ? null : current.get(cart.getId());
+            if (item == null) {
+                return List.of();
+            }
+            Cart updated = copy(item);
+            BeanUtils.copyProperties(cart, updated, CopyOptions.create()
+                    .ignoreNullValue()
+                    .setIgnoreProperties("id", "userId", "createTime"));
+            updated.setUpdateTime(LocalDateTime.now());
+            return List.of(Change.upsert(updated));
+        });
+        return !changes.isEmpty();
+    }
+
+    /**
+     * 删除购物车条目
+     *
+     * @param userId 用户id
+     * @param cartId 条目id
+     * @return 条目是否存在
+     */
+    public boolean remove(Long userId, Long cartId) {
+        List<Change> changes = modify(userId, current -> current.containsKey(cartId)
+                ? List.of(Change.delete(userId, cartId))
+                : List.of());
+        return !changes.isEmpty();
+    }
+
+    /**
+     * 按商品id删除购物车条目，例如下单之后
+     *
+     * @param userId  用户id
+     * @param itemIds 商品id
+     * @return 被删除的条目
+     */
+    public List<Cart> removeByItemIds(Long userId, Collection<Long> itemIds) {
+        Set<Long> ids = new HashSet<>(itemIds);
+        List<Cart> removed = new ArrayList<>();
+        modify(userId, current -> {
+            List<Change> changes = new ArrayList<>();
+            for (Cart item : current.values()) {
+                if (ids.contains(item.getItemId())) {
+                    removed.add(copy(item));
+                    changes.add(Change.delete(userId, item.getId()));
+                }
+            }
+            return changes;
+        });
+        return removed;
+    }
+
+    /**
+     * 立即把待落库的修改写入数据库
+     */
+    public void flush() throws IOException {
+        flushLock.lock();
+        try {
+            // 1.取出待落库的修改，同时切换日志段，取出的修改恰好对应序号不大于seq的日志
+            Map<Long, Change> drained;
+            long seq;
+            pendingLock.writeLock().lock();
+            try {
+                drained = new LinkedHashMap<>(pending);
+                pending.clear();
+                seq = wal.roll();
+            } finally {
+                pendingLock.writeLock().unlock();
+            }
+            if (drained.isEmpty()) {
+                wal.checkpoint(seq);
+                return;
+            }
+            // 2.批量落库，失败时把修改放回去（期间又有新修改的条目以新修改为准），下次重试，日志不做检查点
+            List<Cart> upserts = new ArrayList<>();
+            List<Long> deleteIds = new ArrayList<>();
+            for (Change change : drained.values()) {
+                if (change.getCart() == null) {
+                    deleteIds.add(change.getCartId());
+                } else {
+                    upserts.add(change.getCart());
+                }
+            }
+            try {
+                cartStoreWriter.flush(upserts, deleteIds, properties.getNodeId(), seq);
+            } catch (RuntimeException e) {
+                drained.forEach(pending::putIfAbsent);
+                throw e;
+            }
+            // 3.记录本地检查点，删除已落库的日志段
+            wal.checkpoint(seq);
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() throws IOException {
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(properties.getFlushInterval().toMillis() * 10, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            flush();
+        } finally {
+            wal.close();
+        }
+        // 全部修改落库之后才释放租约，接手的实例不需要等待过期
+        try {
+            cartStoreLeaseMapper.release(LEASE_NAME, properties.getNodeId());
+        } catch (Exception e) {
+            log.warn("释放购物车 memory 模式的租约失败，将在过期后自动释放", e);
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (Exception e) {
+            log.error("购物车落库失败，将在下个周期重试", e);
+        }
+    }
+
+    /*
+    * 获取或续期租约，成功时延长本地有效期：从发出请求时开始计算，只用 leaseTtl 的 3/4
+    * */
+    private boolean renewLease() {
+        long start = System.nanoTime();
+        Duration ttl = properties.getLeaseTtl();
+        cartStoreLeaseMapper.acquire(LEASE_NAME, properties.getNodeId(), TimeUnit.MILLISECONDS.toMicros(ttl.toMillis()));
+        if (!properties.getNodeId().equals(cartStoreLeaseMapper.getHolder(LEASE_NAME))) {
+            return false;
+        }
+        leaseValidUntil = start + ttl.toNanos() / 4 * 3;
+        return true;
+    }
+
+    private void renewLeaseQuietly() {
+        try {
+            if (!renewLease()) {
+                // 其他实例可能已经修改过购物车，内存中的数据不再可信，重新拿到租约后从数据库加载
+                log.error("购物车 memory 模式的租约已被实例{}接手，停止读写购物车", cartStoreLeaseMapper.getHolder(LEASE_NAME));
+                carts.invalidateAll();
+            }
+        } catch (Exception e) {
+            log.error("购物车 memory 模式的租约续期失败，将在下个周期重试", e);
+        }
+    }
+
+    private void checkLease() {
+        if (System.nanoTime() - leaseValidUntil >= 0) {
+            throw new BizIllegalException("购物车服务暂不可用，请稍后重试！");
+        }
+    }
+
+    /*
+    * 修改用户的购物车
+    * planner 根据当前购物车计算出要修改的条目，不能直接修改购物车；写入日志成功后才应用到内存和待落库的修改中
+    * */
+    private List<Change> modify(Long userId, Function<Map<Long, Cart>, List<Change>> planner) {
+        checkLease();
+        synchronized (lockOf(userId)) {
+            // 加载购物车时需要获取 flushLock，必须在获取 pendingLock 之前完成，否则会与落库线程死锁
+            Map<Long, Cart> cart = load(userId);
+            List<Change> changes = planner.apply(cart);
+            if (changes.isEmpty()) {
+                return changes;
+            }
+            pendingLock.readLock().lock();
+            try {
+                try {
+                    wal.append(JSONUtil.toJsonStr(changes));
+                } catch (IOException e) {
+                    throw new BizIllegalException("购物车保存失败！", e);
+                }
+                for (Change change : changes) {
+                    if (change.getCart() == null) {
+                        cart.remove(change.getCartId());
+                    } else {
+                        cart.put(change.getCartId(), copy(change.getCart()));
+                    }
+                    pending.put(change.getCartId(), change);
+                }
+            } finally {
+                pendingLock.readLock().unlock();
+            }
+            return changes;
+        }
+    }
+
+    /*
+    * 获取用户的购物车，调用方必须持有该用户的锁
+    * 内存中没有时从数据库加载，并叠加尚未落库的修改
+    * */
+    private Map<Long, Cart> load(Long userId) {
+        Map<Long, Cart> cart = carts.getIfPresent(userId);
+        if (cart != null) {
+            return cart;
+        }
+        cart = new LinkedHashMap<>();
+        flushLock.lock();
+        try {
+            List<Cart> rows = cartMapper.selectList(Wrappers.<Cart>lambdaQuery()
+                    .eq(Cart::getUserId, userId)
+                    .orderByAsc(Cart::getCreateTime));
+            for (Cart row : rows) {
+                cart.put(row.getId(), row);
+            }
+            for (Change change : pending.values()) {
+                if (!userId.equals(change.getUserId())) {
+                    continue;
+                }
+                if (change.getCart() == null) {
+                    cart.remove(change.getCartId());
+                } else {
+                    cart.put(change.getCartId(), copy(change.getCart()));
+                }
+            }
+        } finally {
+            flushLock.unlock();
+        }
+        carts.put(userId, cart);
+        return cart;
+    }
+
+    private Object lockOf(Long userId) {
+        return userLocks[(Long.hashCode(userId) & Integer.MAX_VALUE) % LOCK_STRIPES];
+    }
+
+    private static Cart copy(Cart cart) {
+        return BeanUtils.copyBean(cart, Cart.class);
+    }
+
+    private static List<Change> decode(String payload) {
+        return JSONUtil.toList(payload, Change.class);
+    }
+
+    /**
+     * 一个购物车条目的最终状态，也是预写日志的内容
+     */
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Change {
+        /**
+         * 用户id
+         */
+        private Long userId;
+        /**
+         * 条目id
+         */
+        private Long cartId;
+        /**
+         * 条目的最新状态，为null表示已删除
+         */
+        private Cart cart;
+
+        static Change upsert(Cart cart) {
+            return new Change(cart.getUserId(), cart.getId(), cart);
+        }
+
+        static Change delete(Long userId, Long cartId) {
+            return new Change(userId, cartId, null);
+        }
+    }
+}
@@ -0,0 +1,11 @@
+-- 为 cart 表添加 (user_id, item_id) 唯一索引，加入购物车才能使用单条语句（见 CartMapper.upsertItem）
+-- 服务启动时只检查索引是否存在，不会执行这个脚本；由 DBA 在低峰期执行，执行后重启购物车服务生效
+
+-- 1.先检查已有数据中是否有重复的 (user_id, item_id)，有则需要先合并，否则无法创建唯一索引
+SELECT user_id, item_id, COUNT(*) AS cnt
+FROM cart
+GROUP BY user_id, item_id
+HAVING cnt > 1;
+
+-- 2.创建唯一索引
+ALTER TABLE cart ADD UNIQUE INDEX uk_user_item (user_id, item_id);
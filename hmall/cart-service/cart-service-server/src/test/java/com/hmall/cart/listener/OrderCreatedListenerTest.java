@@ -0,0 +1,184 @@
+package com.hmall.cart.listener;
+
+import com.hmall.cart.service.ICartService;
+import com.hmall.common.config.MqConfig;
+import com.hmall.common.constants.MqConstants;
+import com.hmall.common.domain.dto.OrderCreatedMessage;
+import com.hmall.common.domain.dto.OrderDetailDTO;
+import com.hmall.common.utils.UserContext;
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.Consumer;
+import com.rabbitmq.client.Envelope;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.config.SimpleRabbitListenerContainerFactory;
+import org.springframework.amqp.rabbit.connection.Connection;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.amqp.rabbit.listener.MessageListenerContainer;
+import org.springframework.amqp.rabbit.listener.MethodRabbitListenerEndpoint;
+import org.springframework.amqp.rabbit.support.DefaultMessagePropertiesConverter;
+import org.springframework.amqp.support.converter.MessageConverter;
+import org.springframework.boot.autoconfigure.amqp.RabbitAutoConfiguration;
+import org.springframework.boot.env.YamlPropertySourceLoader;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.core.env.PropertySource;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.messaging.handler.annotation.support.DefaultMessageHandlerMethodFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/*
+* 监听容器由 Spring Boot 按 application.yaml 中的 spring.rabbitmq.listener 配置创建，
+* 重试次数、重试耗尽后是否重新入队都来自配置文件；RabbitMQ 的连接和 Channel 是模拟的
+* */
+class OrderCreatedListenerTest {
+
+    private static final long DELIVERY_TAG = 1L;
+
+    private final MessageConverter converter = new MqConfig().messageConverter();
+    private final AtomicReference<Consumer> consumer = new AtomicReference<>();
+    private ICartService cartService;
+    private Channel channel;
+    private AnnotationConfigApplicationContext context;
+    private MessageListenerContainer container;
+    private int maxAttempts;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        cartService = mock(ICartService.class);
+        // 1.模拟连接，记录容器注册的消费者
+        channel = mock(Channel.class);
+        when(channel.isOpen()).thenReturn(true);
+        doAnswer(invocation -> {
+            consumer.set(invocation.getArgument(6));
+            return "consumer-tag";
+        }).when(channel).basicConsume(anyString(), anyBoolean(), anyString(), anyBoolean(), anyBoolean(), anyMap(), any(Consumer.class));
+        Connection connection = mock(Connection.class);
+        when(connection.isOpen()).thenReturn(true);
+        when(connection.createChannel(anyBoolean())).thenReturn(channel);
+        ConnectionFactory connectionFactory = mock(ConnectionFactory.class);
+        when(connectionFactory.createConnection()).thenReturn(connection);
+        // 2.按 application.yaml 创建监听容器工厂
+        context = new AnnotationConfigApplicationContext();
+        loadApplicationYaml().forEach(context.getEnvironment().getPropertySources()::addLast);
+        context.registerBean(ConnectionFactory.class, () -> connectionFactory);
+        context.registerBean(MessageConverter.class, () -> converter);
+        context.register(RabbitAutoConfiguration.class);
+        context.refresh();
+        maxAttempts = context.getEnvironment().getRequiredProperty("spring.rabbitmq.listener.simple.retry.max-attempts", Integer.class);
+        SimpleRabbitListenerContainerFactory factory = context.getBean(SimpleRabbitListenerContainerFactory.class);
+        // 3.与 @RabbitListener 相同，为监听方法创建容器并启动
+        MethodRabbitListenerEndpoint endpoint = new MethodRabbitListenerEndpoint();
+        endpoint.setId("order-created-listener-test");
+        endpoint.setQueueNames(MqConstants.CART_CLEAR_QUEUE);
+        endpoint.setBean(new OrderCreatedListener(cartService));
+        endpoint.setMethod(OrderCreatedListener.class.getMethod("onOrderCreated", OrderCreatedMessage.class));
+        DefaultMessageHandlerMethodFactory handlerMethodFactory = new DefaultMessageHandlerMethodFactory();
+        handlerMethodFactory.afterPropertiesSet();
+        endpoint.setMessageHandlerMethodFactory(handlerMethodFactory);
+        container = factory.createListenerContainer(endpoint);
+        container.afterPropertiesSet();
+        container.start();
+        verify(channel, timeout(5000)).basicConsume(eq(MqConstants.CART_CLEAR_QUEUE), anyBoolean(), anyString(),
+                anyBoolean(), anyBoolean(), anyMap(), any(Consumer.class));
+    }
+
+    @AfterEach
+    void tearDown() {
+        container.stop();
+        context.close();
+    }
+
+    @Test
+    void removesOrderedItemsAsMessageUser() throws Exception {
+        List<Long> users = new ArrayList<>();
+        doAnswer(invocation -> {
+            users.add(UserContext.getUser());
+            return List.of();
+        }).when(cartService).removeByItemIds(anyCollection());
+
+        deliver(message(7L, 100L, 200L));
+
+        verify(channel, timeout(5000)).basicAck(eq(DELIVERY_TAG), anyBoolean());
+        verify(cartService).removeByItemIds(List.of(100L, 200L));
+        assertThat(users).containsExactly(7L);
+    }
+
+    @Test
+    void rejectsWithoutRequeueAfterRetries() throws Exception {
+        AtomicInteger attempts = new AtomicInteger();
+        doAnswer(invocation -> {
+            attempts.incrementAndGet();
+            throw new IllegalStateException("数据库不可用");
+        }).when(cartService).removeByItemIds(anyCollection());
+
+        deliver(message(7L, 100L));
+
+        // 不重新入队，由队列的 x-dead-letter-exchange 转入死信队列
+        verify(channel, timeout(30_000)).basicNack(eq(DELIVERY_TAG), anyBoolean(), eq(false));
+        verify(channel, never()).basicNack(eq(DELIVERY_TAG), anyBoolean(), eq(true));
+        verify(channel, never()).basicAck(anyLong(), anyBoolean());
+        assertThat(attempts).hasValue(maxAttempts);
+    }
+
+    @Test
+    void ignoresMessageWithoutUser() throws Exception {
+        deliver(message(null, 100L));
+
+        verify(channel, timeout(5000)).basicAck(eq(DELIVERY_TAG), anyBoolean());
+        verify(cartService, never()).removeByItemIds(anyCollection());
+    }
+
+    /*
+    * 与 RabbitTemplate 一样用 MessageConverter 序列化，再通过容器注册的消费者投递
+    * */
+    private void deliver(OrderCreatedMessage payload) throws IOException {
+        Message message = converter.toMessage(payload, new MessageProperties());
+        AMQP.BasicProperties properties = new DefaultMessagePropertiesConverter()
+                .fromMessageProperties(message.getMessageProperties(), "UTF-8");
+        consumer.get().handleDelivery("consumer-tag",
+                new Envelope(DELIVERY_TAG, false, MqConstants.TRADE_EXCHANGE, MqConstants.ORDER_CREATED_KEY),
+                properties, message.getBody());
+    }
+
+    private static List<PropertySource<?>> loadApplicationYaml() {
+        try {
+            return new YamlPropertySourceLoader().load("application.yaml", new ClassPathResource("application.yaml"));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static OrderCreatedMessage message(Long userId, Long... itemIds) {
+        List<OrderDetailDTO> items = new ArrayList<>();
+        for (Long itemId : itemIds) {
+            items.add(new OrderDetailDTO().setItemId(itemId).setNum(1));
+        }
+        return new OrderCreatedMessage(1L, userId, items);
+    }
+}
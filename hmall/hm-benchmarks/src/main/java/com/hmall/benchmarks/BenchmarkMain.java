@@ -0,0 +1,41 @@
+package com.hmall.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.ProfilerConfig;
+
+/*
+* benchmarks.jar 的入口，参数与 JMH 自带的 org.openjdk.jmh.Main 相同
+* 区别：
+*  1. 默认启用 GC 分析器（-prof gc），结果中的 gc.alloc.rate.norm 是每次操作分配的字节数
+*  2. 命令行已经指定了 -prof gc 时不重复添加
+* 构建：不在默认构建中，在 hmall 目录执行 mvn -Pbenchmarks -pl hm-benchmarks -am package -DskipTests
+* 运行：
+*  1. 全部：java -jar target/benchmarks.jar
+*  2. 单个：java -jar target/benchmarks.jar JsonBenchmark
+*  3. 与基线对比：java -jar target/benchmarks.jar -wi 2 -w 1 -i 3 -r 1 -rf text -rff new.txt，再与 baseline 目录中的结果比较
+* */
+public class BenchmarkMain {
+
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions cmd = new CommandLineOptions(args);
+        if (cmd.shouldHelp() || cmd.shouldList() || cmd.shouldListProfilers() || cmd.shouldListResultFormats()) {
+            org.openjdk.jmh.Main.main(args);
+            return;
+        }
+        OptionsBuilder options = new OptionsBuilder();
+        options.parent(cmd);
+        boolean gcEnabled = false;
+        for (ProfilerConfig profiler : cmd.getProfilers()) {
+            if (profiler.getKlass().equals(GCProfiler.class.getName()) || "gc".equals(profiler.getKlass())) {
+                gcEnabled = true;
+            }
+        }
+        if (!gcEnabled) {
+            options.addProfiler(GCProfiler.class);
+        }
+        new Runner(options.build()).run();
+    }
+}
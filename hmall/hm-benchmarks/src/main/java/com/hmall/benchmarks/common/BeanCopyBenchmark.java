@@ -0,0 +1,119 @@
+package com.hmall.benchmarks.common;
+
+import cn.hutool.core.bean.BeanUtil;
+import com.hmall.cart.domain.po.Cart;
+import com.hmall.cart.domain.vo.CartVO;
+import com.hmall.common.utils.BeanUtils;
+import com.hmall.item.api.dto.ItemDTO;
+import com.hmall.item.domain.po.Item;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/*
+* 对比 hutool 的反射复制和 BeanUtils（BeanCopier）的复制
+* 场景：
+*  1. Item -> ItemDTO：商品查询、分页接口
+*  2. Cart -> CartVO：查询购物车
+*  3. 单个对象和一页（size个）对象的列表
+* 运行：java -jar target/benchmarks.jar BeanCopyBenchmark -prof gc
+*  -prof gc 输出每次操作分配的内存（gc.alloc.rate.norm）
+* */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BeanCopyBenchmark {
+
+    @Param({"20"})
+    public int size;
+
+    private Item item;
+    private Cart cart;
+    private List<Item> items;
+    private List<Cart> carts;
+
+    @Setup
+    public void setup() {
+        items = new ArrayList<>(size);
+        carts = new ArrayList<>(size);
+        for (long i = 1; i <= size; i++) {
+            Item it = new Item();
+            it.setId(i);
+            it.setName("商品" + i);
+            it.setPrice(9900);
+            it.setStock(100);
+            it.setImage("https://example.com/" + i + ".jpg");
+            it.setCategory("手机");
+            it.setBrand("品牌");
+            it.setSpec("{}");
+            it.setSold(10);
+            it.setCommentCount(5);
+            it.setIsAD(false);
+            it.setStatus(1);
+            it.setCreateTime(LocalDateTime.now());
+            it.setUpdateTime(LocalDateTime.now());
+            items.add(it);
+            carts.add(new Cart().setId(i).setUserId(1L).setItemId(i).setNum(1).setName("商品" + i)
+                    .setSpec("{}").setPrice(9900).setImage("https://example.com/" + i + ".jpg")
+                    .setCreateTime(LocalDateTime.now()).setUpdateTime(LocalDateTime.now()));
+        }
+        item = items.get(0);
+        cart = carts.get(0);
+    }
+
+    @Benchmark
+    public ItemDTO itemHutool() {
+        return BeanUtil.toBean(item, ItemDTO.class);
+    }
+
+    @Benchmark
+    public ItemDTO itemCopier() {
+        return BeanUtils.copyBean(item, ItemDTO.class);
+    }
+
+    @Benchmark
+    public CartVO cartHutool() {
+        return BeanUtil.toBean(cart, CartVO.class);
+    }
+
+    @Benchmark
+    public CartVO cartCopier() {
+        return BeanUtils.copyBean(cart, CartVO.class);
+    }
+
+    @Benchmark
+    public List<ItemDTO> itemListHutool() {
+        return BeanUtil.copyToList(items, ItemDTO.class);
+    }
+
+    @Benchmark
+    public List<ItemDTO> itemListCopier() {
+        return BeanUtils.copyList(items, ItemDTO.class);
+    }
+
+    @Benchmark
+    public List<CartVO> cartListHutool() {
+        return BeanUtil.copyToList(carts, CartVO.class);
+    }
+
+    @Benchmark
+    public List<CartVO> cartListCopier() {
+        return BeanUtils.copyList(carts, CartVO.class);
+    }
+}
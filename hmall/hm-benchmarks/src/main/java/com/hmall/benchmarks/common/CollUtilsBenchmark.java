@@ -0,0 +1,74 @@
+package com.hmall.benchmarks.common;
+
+import com.hmall.common.utils.CollUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/*
+* CollUtils 中在请求路径上使用的方法
+*  1. convertToLong：把请求参数中的id字符串转换为Long
+*  2. join、joinIgnoreNull：把id列表拼接为字符串，例如Feign调用的参数
+*  3. isEmpty / isNotEmpty：几乎每个接口都会调用
+* 运行：java -jar target/benchmarks.jar CollUtilsBenchmark
+* */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CollUtilsBenchmark {
+
+    @Param({"20"})
+    public int size;
+
+    private List<String> idStrings;
+    private List<Long> ids;
+    private List<Long> idsWithNull;
+
+    @Setup
+    public void setup() {
+        idStrings = new ArrayList<>(size);
+        ids = new ArrayList<>(size);
+        idsWithNull = new ArrayList<>(size);
+        for (long i = 0; i < size; i++) {
+            long id = 100_000_000L + i;
+            idStrings.add(String.valueOf(id));
+            ids.add(id);
+            idsWithNull.add(i % 5 == 0 ? null : id);
+        }
+    }
+
+    @Benchmark
+    public List<Long> convertToLong() {
+        return CollUtils.convertToLong(idStrings);
+    }
+
+    @Benchmark
+    public String join() {
+        return CollUtils.join(ids, ",");
+    }
+
+    @Benchmark
+    public String joinIgnoreNull() {
+        return CollUtils.joinIgnoreNull(idsWithNull, ",");
+    }
+
+    @Benchmark
+    public boolean isNotEmpty() {
+        return CollUtils.isNotEmpty(ids);
+    }
+}
@@ -0,0 +1,66 @@
+package com.hmall.benchmarks.common;
+
+import com.baomidou.mybatisplus.core.incrementer.DefaultIdentifierGenerator;
+import com.hmall.common.id.SnowflakeIdGenerator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/*
+* id生成的吞吐量
+*  1. mybatisPlus：MyBatis-Plus 默认的 DefaultIdentifierGenerator（synchronized 的雪花算法，同一毫秒序号用完时自旋等待下一毫秒）
+*  2. snowflake：SnowflakeIdGenerator（一次CAS，序号用完时借用下一毫秒）
+* 注意：
+*  1. 雪花算法每毫秒最多生成4096个id，单线程就能达到这个上限，所以前两项的结果都接近 4.096 ops/us，反映的是上限而不是单次开销
+*  2. snowflakeUncapped 允许一直借用未来的时间，不受上限限制，反映单次生成的开销，只用于对比，不能用于生产
+*  3. 单核机器上多线程的结果主要反映上下文切换的开销
+* 运行：java -jar target/benchmarks.jar IdGeneratorBenchmark
+* */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IdGeneratorBenchmark {
+
+    private final DefaultIdentifierGenerator mybatisPlus = new DefaultIdentifierGenerator(1, 1);
+    private final SnowflakeIdGenerator snowflake = new SnowflakeIdGenerator(1, 1000);
+    private final SnowflakeIdGenerator uncapped = new SnowflakeIdGenerator(1, Long.MAX_VALUE / 4);
+
+    @Benchmark
+    public long mybatisPlus() {
+        return mybatisPlus.nextId(null);
+    }
+
+    @Benchmark
+    public long snowflake() {
+        return snowflake.nextId();
+    }
+
+    @Benchmark
+    public long snowflakeUncapped() {
+        return uncapped.nextId();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public long mybatisPlus4Threads() {
+        return mybatisPlus.nextId(null);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public long snowflake4Threads() {
+        return snowflake.nextId();
+    }
+}
@@ -0,0 +1,79 @@
+package com.hmall.benchmarks.common;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hmall.common.config.JsonConfig;
+import com.hmall.item.api.dto.ItemDTO;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/*
+* 商品列表的JSON序列化
+*  1. hmall：与各微服务相同，使用 JsonConfig 定制的 ObjectMapper，Long 序列化为字符串
+*  2. plain：Spring 默认的 ObjectMapper，Long 序列化为数字，用于观察 Long 转字符串的额外开销
+* 运行：java -jar target/benchmarks.jar JsonBenchmark
+* */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JsonBenchmark {
+
+    @Param({"20"})
+    public int size;
+
+    private ObjectMapper hmallMapper;
+    private ObjectMapper plainMapper;
+    private List<ItemDTO> items;
+
+    @Setup
+    public void setup() {
+        Jackson2ObjectMapperBuilder builder = Jackson2ObjectMapperBuilder.json();
+        new JsonConfig().jackson2ObjectMapperBuilderCustomizer().customize(builder);
+        hmallMapper = builder.build();
+        plainMapper = Jackson2ObjectMapperBuilder.json().build();
+        items = new ArrayList<>(size);
+        for (long i = 1; i <= size; i++) {
+            ItemDTO item = new ItemDTO();
+            item.setId(1_600_000_000_000_000_000L + i);
+            item.setName("商品" + i);
+            item.setPrice(9900);
+            item.setStock(100);
+            item.setImage("https://example.com/" + i + ".jpg");
+            item.setCategory("手机");
+            item.setBrand("品牌");
+            item.setSpec("{}");
+            item.setSold(10);
+            item.setCommentCount(5);
+            item.setIsAD(false);
+            item.setStatus(1);
+            items.add(item);
+        }
+    }
+
+    @Benchmark
+    public byte[] hmall() throws JsonProcessingException {
+        return hmallMapper.writeValueAsBytes(items);
+    }
+
+    @Benchmark
+    public byte[] plain() throws JsonProcessingException {
+        return plainMapper.writeValueAsBytes(items);
+    }
+}
@@ -0,0 +1,73 @@
+package com.hmall.benchmarks.common;
+
+import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
+import com.hmall.common.domain.PageDTO;
+import com.hmall.item.api.dto.ItemDTO;
+import com.hmall.item.domain.po.Item;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/*
+* 分页接口的结果转换：PageDTO.of(page, ItemDTO.class)，即一页 Item 复制为 ItemDTO 并包装总数、页数
+* 运行：java -jar target/benchmarks.jar PageDTOBenchmark
+* */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PageDTOBenchmark {
+
+    @Param({"20", "100"})
+    public int pageSize;
+
+    private Page<Item> page;
+
+    @Setup
+    public void setup() {
+        List<Item> records = new ArrayList<>(pageSize);
+        for (long i = 1; i <= pageSize; i++) {
+            Item item = new Item();
+            item.setId(i);
+            item.setName("商品" + i);
+            item.setPrice(9900);
+            item.setStock(100);
+            item.setImage("https://example.com/" + i + ".jpg");
+            item.setCategory("手机");
+            item.setBrand("品牌");
+            item.setSold(10);
+            item.setCommentCount(5);
+            item.setStatus(1);
+            item.setUpdateTime(LocalDateTime.now());
+            records.add(item);
+        }
+        page = new Page<>(1, pageSize);
+        page.setTotal(88_000);
+        page.setRecords(records);
+    }
+
+    @Benchmark
+    public PageDTO<ItemDTO> ofClass() {
+        return PageDTO.of(page, ItemDTO.class);
+    }
+
+    @Benchmark
+    public PageDTO<Item> ofRecords() {
+        return PageDTO.of(page);
+    }
+}
@@ -0,0 +1,94 @@
+package com.hmall.benchmarks.common;
+
+import com.hmall.common.timer.TimingWheel;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/*
+* 已有 timers 个超时任务（例如未支付的订单）时，新增并取消一个超时任务的耗时
+*  1. timingWheel：TimingWheel，哈希表 + 槽位链表，与任务数量无关
+*  2. scheduledExecutor：ScheduledThreadPoolExecutor（setRemoveOnCancelPolicy），堆上的插入和删除是 O(log n)，
+*     支付成功时要按订单id取消，所以同样需要保存 订单id -> ScheduledFuture
+* 注意：
+*  1. 超时时间在 1~120 分钟内随机，测试期间都不会到期；随机的超时时间插入堆时平均只上移常数层，所以堆的实际开销接近常数
+*  2. 两者都是一把锁保护，这里只比较单线程下的开销
+*  3. 时间轮每个任务只有一个链表节点，到期时批量交给处理器；线程池每个任务是一个 Runnable 和 Future，到期时逐个执行
+* 运行：java -jar target/benchmarks.jar TimingWheelBenchmark
+* */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class TimingWheelBenchmark {
+
+    private static final long MAX_DELAY_MILLIS = TimeUnit.MINUTES.toMillis(120);
+
+    @Param({"10000", "1000000"})
+    private int timers;
+
+    private TimingWheel<Long> wheel;
+    private ScheduledThreadPoolExecutor executor;
+    private final Map<Long, ScheduledFuture<?>> futures = new HashMap<>();
+    private long nextKey;
+
+    @Setup
+    public void setup() {
+        wheel = new TimingWheel<>("benchmark-wheel", Duration.ofSeconds(1), 512, keys -> {
+        });
+        executor = new ScheduledThreadPoolExecutor(1);
+        executor.setRemoveOnCancelPolicy(true);
+        long now = System.currentTimeMillis();
+        for (nextKey = 0; nextKey < timers; nextKey++) {
+            long delay = randomDelay();
+            wheel.schedule(nextKey, now + delay);
+            futures.put(nextKey, executor.schedule(TimingWheelBenchmark::noop, delay, TimeUnit.MILLISECONDS));
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        wheel.close();
+        executor.shutdownNow();
+    }
+
+    @Benchmark
+    public boolean timingWheel() {
+        long key = nextKey++;
+        wheel.schedule(key, System.currentTimeMillis() + randomDelay());
+        return wheel.cancel(key);
+    }
+
+    @Benchmark
+    public boolean scheduledExecutor() {
+        long key = nextKey++;
+        futures.put(key, executor.schedule(TimingWheelBenchmark::noop, randomDelay(), TimeUnit.MILLISECONDS));
+        return futures.remove(key).cancel(false);
+    }
+
+    private static long randomDelay() {
+        return ThreadLocalRandom.current().nextLong(TimeUnit.MINUTES.toMillis(1), MAX_DELAY_MILLIS);
+    }
+
+    private static void noop() {
+    }
+}
@@ -0,0 +1,57 @@
+package com.hmall.benchmarks.gateway;
+
+import cn.hutool.jwt.JWT;
+import cn.hutool.jwt.signers.JWTSignerUtil;
+import com.hmall.gateway.utils.JwtTool;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.time.Duration;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/*
+* 网关 JwtTool.parseToken：RS256 验签 + 过期校验 + 解析用户id
+* 密钥对在启动时生成，与 hmall.jks 一样是 2048 位 RSA，结果与真实密钥相当
+* 运行：java -jar target/benchmarks.jar JwtBenchmark
+* */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JwtBenchmark {
+
+    private JwtTool jwtTool;
+    private String token;
+
+    @Setup
+    public void setup() throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        KeyPair keyPair = generator.generateKeyPair();
+        jwtTool = new JwtTool(keyPair);
+        // 与 user-service 的 JwtTool.createToken 相同的载荷
+        token = JWT.create()
+                .setPayload("user", 1L)
+                .setExpiresAt(new Date(System.currentTimeMillis() + Duration.ofHours(1).toMillis()))
+                .setSigner(JWTSignerUtil.createSigner("rs256", keyPair))
+                .sign();
+    }
+
+    @Benchmark
+    public Long parseToken() {
+        return jwtTool.parseToken(token);
+    }
+}
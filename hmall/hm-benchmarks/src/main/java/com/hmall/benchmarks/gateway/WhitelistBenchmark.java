@@ -0,0 +1,93 @@
+package com.hmall.benchmarks.gateway;
+
+import com.hmall.gateway.config.AuthProperties;
+import com.hmall.gateway.utils.AuthPathMatcher;
+import com.hmall.gateway.utils.PathPatternTrie;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.util.AntPathMatcher;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/*
+* 网关白名单判断，每次对一组典型路径（命中与未命中都有）各判断一次
+*  1. antPathMatcher：原来的实现，逐条用 AntPathMatcher 匹配 excludePaths
+*  2. trie：AuthPathMatcher 预编译的 PathPatternTrie，不带结果缓存
+*  3. authPathMatcher：网关实际使用的 AuthPathMatcher，热点路径命中 LRU
+* 运行：java -jar target/benchmarks.jar WhitelistBenchmark
+* */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WhitelistBenchmark {
+
+    // 与 Nacos 中 hm.auth.excludePaths 的配置相同
+    private static final List<String> EXCLUDE_PATHS = Arrays.asList(
+            "/search/**", "/users/login", "/items/**", "/hi");
+    private static final String[] PATHS = {
+            "/search/list", "/items/100000006163", "/users/login", "/carts", "/orders/1654779387523936258",
+            "/pay-orders/1654779387523936258", "/users/money/deduct", "/addresses"};
+
+    private final AntPathMatcher antPathMatcher = new AntPathMatcher();
+    private PathPatternTrie trie;
+    private AuthPathMatcher authPathMatcher;
+
+    @Setup
+    public void setup() {
+        trie = new PathPatternTrie(EXCLUDE_PATHS);
+        AuthProperties properties = new AuthProperties();
+        properties.setExcludePaths(EXCLUDE_PATHS);
+        properties.setIncludePaths(List.of());
+        authPathMatcher = new AuthPathMatcher(properties);
+        authPathMatcher.compile();
+    }
+
+    @Benchmark
+    public int antPathMatcher() {
+        int excluded = 0;
+        for (String path : PATHS) {
+            for (String pattern : EXCLUDE_PATHS) {
+                if (antPathMatcher.match(pattern, path)) {
+                    excluded++;
+                    break;
+                }
+            }
+        }
+        return excluded;
+    }
+
+    @Benchmark
+    public int trie() {
+        int excluded = 0;
+        for (String path : PATHS) {
+            if (trie.matches(path)) {
+                excluded++;
+            }
+        }
+        return excluded;
+    }
+
+    @Benchmark
+    public int authPathMatcher() {
+        int excluded = 0;
+        for (String path : PATHS) {
+            if (authPathMatcher.isExcluded(path)) {
+                excluded++;
+            }
+        }
+        return excluded;
+    }
+}
@@ -0,0 +1,108 @@
+package com.hmall.benchmarks.item;
+
+import com.hmall.item.stock.SingleStockCounter;
+import com.hmall.item.stock.StockCounter;
+import com.hmall.item.stock.StripedStockCounter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+* 64个线程同时扣减同一个商品的库存
+* 模式：
+*  1. SIMULATED_ROW_LOCK：db 模式的模拟，不访问数据库，所有线程在同一把 JVM 锁上串行执行"库存充足才扣减"，
+*     只体现行锁的串行化，不含网络往返、日志刷盘和事务提交的耗时，结果是 db 模式吞吐量的上限，远高于真实的 MySQL
+*  2. SINGLE：memory 模式的单值计数器，所有线程在同一个 AtomicInteger 上 CAS
+*  3. STRIPED：memory 模式的分桶计数器，线程按hint选择子桶
+* 运行：java -jar target/benchmarks.jar StockCounterBenchmark
+* 基线结果见 baseline/results.txt 中单独的一节
+* */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(64)
+public class StockCounterBenchmark {
+
+    // 足够大的库存，测试过程中不会售罄
+    private static final int STOCK = 1_000_000_000;
+
+    @Param({"SIMULATED_ROW_LOCK", "SINGLE", "STRIPED"})
+    public String mode;
+
+    @Param({"16"})
+    public int stripes;
+
+    private StockCounter counter;
+
+    @Setup(Level.Iteration)
+    public void setup() {
+        switch (mode) {
+            case "SIMULATED_ROW_LOCK":
+                counter = new SimulatedRowLockCounter(STOCK);
+                break;
+            case "SINGLE":
+                counter = new SingleStockCounter(STOCK);
+                break;
+            default:
+                counter = new StripedStockCounter(STOCK, stripes);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class ThreadHint {
+        private static final AtomicInteger SEQ = new AtomicInteger();
+        // 每个线程模拟一个用户
+        public final int hint = SEQ.incrementAndGet();
+    }
+
+    @Benchmark
+    public boolean deduct(ThreadHint thread) {
+        return counter.tryDeduct(1, thread.hint);
+    }
+
+    /*
+    * 在 JVM 中模拟 UPDATE item SET stock = stock - #{num} WHERE id = #{itemId} AND stock >= #{num} 的行锁串行化
+    * */
+    private static class SimulatedRowLockCounter implements StockCounter {
+        private int stock;
+
+        private SimulatedRowLockCounter(int stock) {
+            this.stock = stock;
+        }
+
+        @Override
+        public synchronized boolean tryDeduct(int num, int hint) {
+            if (stock < num) {
+                return false;
+            }
+            stock -= num;
+            return true;
+        }
+
+        @Override
+        public synchronized void add(int num, int hint) {
+            stock += num;
+        }
+
+        @Override
+        public synchronized int get() {
+            return stock;
+        }
+    }
+}
@@ -0,0 +1,200 @@
+package com.hmall.benchmarks.trade;
+
+import com.baomidou.mybatisplus.core.MybatisConfiguration;
+import com.baomidou.mybatisplus.core.MybatisSqlSessionFactoryBuilder;
+import com.baomidou.mybatisplus.core.config.GlobalConfig;
+import com.baomidou.mybatisplus.core.toolkit.GlobalConfigUtils;
+import com.hmall.common.id.SnowflakeIdGenerator;
+import com.hmall.common.mybatis.BatchSqlInjector;
+import com.hmall.trade.domain.po.OrderDetail;
+import com.hmall.trade.mapper.OrderDetailMapper;
+import org.apache.ibatis.logging.nologging.NoLoggingImpl;
+import org.apache.ibatis.mapping.Environment;
+import org.apache.ibatis.session.ExecutorType;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.apache.ibatis.transaction.jdbc.JdbcTransactionFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/*
+* 插入一个订单的订单详情
+*  1. saveBatch：与 ServiceImpl.saveBatch 相同，BATCH 执行器逐行 insert 后 flushStatements
+*  2. insertValues：OrderDetailMapper.insertValues，一条 INSERT ... VALUES (...), (...) 语句
+* 注意：
+*  1. 数据库是一个桩JDBC驱动，每次往返固定等待 rttMicros 微秒，模拟应用到MySQL的网络和执行耗时，结果只用于比较往返次数的影响
+*  2. 没有开启 rewriteBatchedStatements 时 MySQL 驱动的 executeBatch 逐条发送，桩驱动按行数计算往返；开启后驱动会改写为多行插入，两者接近
+*  3. rttMicros=0 时反映的是 MyBatis 本身的开销（逐行生成语句、设置参数 vs 一次生成多行语句）
+* 运行：java -jar target/benchmarks.jar OrderDetailInsertBenchmark
+* */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OrderDetailInsertBenchmark {
+
+    @Param({"5", "50"})
+    private int rows;
+
+    @Param({"0", "200"})
+    private long rttMicros;
+
+    private SqlSessionFactory sqlSessionFactory;
+    private List<OrderDetail> details;
+
+    @Setup
+    public void setup() {
+        MybatisConfiguration configuration = new MybatisConfiguration();
+        // 不输出每条SQL，否则测到的主要是写控制台的耗时
+        configuration.setLogImpl(NoLoggingImpl.class);
+        GlobalConfig globalConfig = GlobalConfigUtils.defaults();
+        globalConfig.setBanner(false);
+        globalConfig.setSqlInjector(new BatchSqlInjector());
+        globalConfig.setIdentifierGenerator(new SnowflakeIdGenerator(1, Long.MAX_VALUE / 4));
+        GlobalConfigUtils.setGlobalConfig(configuration, globalConfig);
+        configuration.setEnvironment(new Environment("benchmark", new JdbcTransactionFactory(), dataSource()));
+        configuration.addMapper(OrderDetailMapper.class);
+        sqlSessionFactory = new MybatisSqlSessionFactoryBuilder().build(configuration);
+
+        details = new ArrayList<>(rows);
+        for (int i = 0; i < rows; i++) {
+            details.add(new OrderDetail()
+                    .setOrderId(1L)
+                    .setItemId(100_000L + i)
+                    .setNum(1)
+                    .setName("商品名称-" + i)
+                    .setSpec("{\"颜色\":\"白色\",\"尺码\":\"XL\"}")
+                    .setPrice(9_900)
+                    .setImage("https://example.com/images/" + i + ".jpg"));
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void clearIds() {
+        // 每次都和业务中一样由插入语句生成id
+        for (OrderDetail detail : details) {
+            detail.setId(null);
+        }
+    }
+
+    @Benchmark
+    public int saveBatch() {
+        try (SqlSession session = sqlSessionFactory.openSession(ExecutorType.BATCH)) {
+            OrderDetailMapper mapper = session.getMapper(OrderDetailMapper.class);
+            for (OrderDetail detail : details) {
+                mapper.insert(detail);
+            }
+            int flushed = session.flushStatements().size();
+            session.commit();
+            return flushed;
+        }
+    }
+
+    @Benchmark
+    public int insertValues() {
+        try (SqlSession session = sqlSessionFactory.openSession()) {
+            int inserted = session.getMapper(OrderDetailMapper.class).insertValues(details);
+            session.commit();
+            return inserted;
+        }
+    }
+
+    /*
+    * 桩数据源：executeBatch 每一行一次往返，execute、executeUpdate、commit 各一次往返，其余方法返回默认值
+    * */
+    private DataSource dataSource() {
+        ClassLoader loader = getClass().getClassLoader();
+        PreparedStatement statement = (PreparedStatement) Proxy.newProxyInstance(loader,
+                new Class[]{PreparedStatement.class}, new StatementHandler());
+        Connection connection = (Connection) Proxy.newProxyInstance(loader, new Class[]{Connection.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "prepareStatement":
+                            return statement;
+                        case "commit":
+                            roundTrips(1);
+                            return null;
+                        default:
+                            return defaultValue(method.getReturnType());
+                    }
+                });
+        return (DataSource) Proxy.newProxyInstance(loader, new Class[]{DataSource.class},
+                (proxy, method, args) -> "getConnection".equals(method.getName())
+                        ? connection : defaultValue(method.getReturnType()));
+    }
+
+    /*
+    * 桩语句：记录 addBatch 的行数，执行时按往返次数等待
+    * */
+    private class StatementHandler implements InvocationHandler {
+        private int batched;
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            switch (method.getName()) {
+                case "addBatch":
+                    batched++;
+                    return null;
+                case "executeBatch":
+                    int[] counts = new int[batched];
+                    Arrays.fill(counts, 1);
+                    roundTrips(batched);
+                    batched = 0;
+                    return counts;
+                case "execute":
+                    roundTrips(1);
+                    return false;
+                case "executeUpdate":
+                    roundTrips(1);
+                    return 1;
+                case "getUpdateCount":
+                    return 1;
+                default:
+                    return defaultValue(method.getReturnType());
+            }
+        }
+    }
+
+    private void roundTrips(int count) {
+        if (rttMicros > 0) {
+            LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(rttMicros * count));
+        }
+    }
+
+    private static Object defaultValue(Class<?> type) {
+        if (type == boolean.class) {
+            return false;
+        }
+        if (type == int.class) {
+            return 0;
+        }
+        if (type == long.class) {
+            return 0L;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,50 @@
+package com.hmall.common.config;
+
+import com.baomidou.mybatisplus.core.incrementer.IdentifierGenerator;
+import com.hmall.common.id.SnowflakeIdGenerator;
+import com.hmall.common.id.WorkerIdLease;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+
+/*
+* 雪花算法id生成器，hm.id.enabled=true 时启用
+* MyBatis-Plus 的自动配置会使用容器中的 IdentifierGenerator，并同时设置给 IdWorker
+* */
+@Configuration
+@ConditionalOnClass(IdentifierGenerator.class)
+@ConditionalOnProperty(prefix = "hm.id", name = "enabled", havingValue = "true")
+@EnableConfigurationProperties(IdGeneratorProperties.class)
+public class IdGeneratorConfig {
+
+    @Bean
+    public SnowflakeIdGenerator snowflakeIdGenerator(IdGeneratorProperties properties) {
+        Integer workerId = properties.getWorkerId();
+        return workerId != null
+                ? new SnowflakeIdGenerator(workerId, properties.getMaxBorrowMillis())
+                : SnowflakeIdGenerator.leased(properties.getMaxBorrowMillis());
+    }
+
+    /*
+    * 没有配置固定的 workerId 时，从数据库租用
+    * */
+    @Bean(destroyMethod = "close")
+    @ConditionalOnExpression("'${hm.id.worker-id:}'.isEmpty()")
+    public WorkerIdLease workerIdLease(IdGeneratorProperties properties, SnowflakeIdGenerator generator,
+                                       ObjectProvider<DataSource> dataSource) throws SQLException {
+        DataSource ds = dataSource.getIfAvailable();
+        if (ds == null) {
+            throw new IllegalStateException("没有数据源，无法租用 workerId，请配置 hm.id.worker-id");
+        }
+        WorkerIdLease lease = new WorkerIdLease(ds, generator, properties.getLeaseTtl());
+        lease.start();
+        return lease;
+    }
+}
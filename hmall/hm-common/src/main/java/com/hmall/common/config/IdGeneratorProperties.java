@@ -0,0 +1,31 @@
+package com.hmall.common.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/*
+* 雪花算法id生成器配置，都只在启动时读取
+* 注意：本类由 IdGeneratorConfig 通过 @EnableConfigurationProperties 注册，原因与 MvcConfig 的说明相同
+* */
+@Data
+@ConfigurationProperties(prefix = "hm.id")
+public class IdGeneratorProperties {
+    /**
+     * 是否使用雪花算法生成器替换 MyBatis-Plus 默认的id生成器，开启后 ASSIGN_ID 和 IdWorker.getId() 都使用它
+     */
+    private boolean enabled = false;
+    /**
+     * 固定的 workerId，0-1023；为空时从数据库租用
+     */
+    private Integer workerId;
+    /**
+     * workerId 租约的有效期，每 1/3 有效期续期一次
+     */
+    private Duration leaseTtl = Duration.ofSeconds(60);
+    /**
+     * 时钟回拨或者请求量过大时，最多借用未来多少毫秒的时间，超过时等待，超过两倍时拒绝生成
+     */
+    private long maxBorrowMillis = 1000;
+}
@@ -0,0 +1,29 @@
+package com.hmall.common.config;
+
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
+import org.springframework.amqp.support.converter.MessageConverter;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/*
+* 消息队列的公共配置，只在引入了 spring-rabbit 的微服务中生效
+* */
+@Configuration
+@ConditionalOnClass(RabbitTemplate.class)
+public class MqConfig {
+
+    /*
+    * 消息体使用JSON，默认的JDK序列化要求双方使用同一个类、体积大，也无法在管理界面中查看
+    * 每条消息生成id，便于消费者排查重复投递
+    * */
+    @Bean
+    @ConditionalOnMissingBean(MessageConverter.class)
+    public MessageConverter messageConverter() {
+        Jackson2JsonMessageConverter converter = new Jackson2JsonMessageConverter();
+        converter.setCreateMessageIds(true);
+        return converter;
+    }
+}
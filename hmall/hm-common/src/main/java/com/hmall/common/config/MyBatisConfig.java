@@ -1,25 +1,39 @@
 package com.hmall.common.config;
 
 import com.baomidou.mybatisplus.annotation.DbType;
+import com.baomidou.mybatisplus.core.injector.ISqlInjector;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import com.baomidou.mybatisplus.extension.plugins.MybatisPlusInterceptor;
-import com.baomidou.mybatisplus.extension.plugins.inner.PaginationInnerInterceptor;
+import com.hmall.common.interceptor.CountCachingPaginationInterceptor;
+import com.hmall.common.mybatis.BatchSqlInjector;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
 @Configuration
 @ConditionalOnClass({MybatisPlusInterceptor.class, BaseMapper.class})
+@EnableConfigurationProperties(PageCountProperties.class)
 public class MyBatisConfig {
     @Bean
     @ConditionalOnMissingBean
-    public MybatisPlusInterceptor mybatisPlusInterceptor() {
+    public MybatisPlusInterceptor mybatisPlusInterceptor(PageCountProperties pageCountProperties) {
         MybatisPlusInterceptor interceptor = new MybatisPlusInterceptor();
-        // 1.分页拦截器
-        PaginationInnerInterceptor paginationInnerInterceptor = new PaginationInnerInterceptor(DbType.MYSQL);
+        // 1.分页拦截器，可以按接口配置缓存或估算总数
+        CountCachingPaginationInterceptor paginationInnerInterceptor =
+                new CountCachingPaginationInterceptor(DbType.MYSQL, pageCountProperties);
         paginationInnerInterceptor.setMaxLimit(1000L);
         interceptor.addInnerInterceptor(paginationInnerInterceptor);
         return interceptor;
     }
+
+    /*
+    * 为继承了 BatchBaseMapper 的 Mapper 注入多行插入方法
+    * */
+    @Bean
+    @ConditionalOnMissingBean(ISqlInjector.class)
+    public ISqlInjector batchSqlInjector() {
+        return new BatchSqlInjector();
+    }
 }
\ No newline at end of file
@@ -0,0 +1,63 @@
+package com.hmall.common.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+* 分页查询总数的统计方式
+* 注意：
+*  1. 本类由 MyBatisConfig 通过 @EnableConfigurationProperties 注册，原因与 MvcConfig 的说明相同：其他微服务扫描不到 com.hmall.common 包
+*  2. 规则在每次查询时读取，配置中心修改后立即生效；缓存大小只在启动时读取
+* */
+@Data
+@ConfigurationProperties(prefix = "hm.mybatis.page-count")
+public class PageCountProperties {
+    /**
+     * 未匹配任何规则的请求使用的统计方式
+     */
+    private CountMode defaultMode = CountMode.EXACT;
+    /**
+     * CACHED、ESTIMATED 模式下总数的缓存时间
+     */
+    private Duration ttl = Duration.ofSeconds(30);
+    /**
+     * 最多缓存的总数条数，仅在启动时读取
+     */
+    private long maximumSize = 10_000;
+    /**
+     * 按接口路径配置统计方式，按顺序匹配，使用第一个命中的规则
+     */
+    private List<Rule> rules = new ArrayList<>();
+
+    @Data
+    public static class Rule {
+        /**
+         * 接口路径，Ant风格
+         */
+        private List<String> paths = new ArrayList<>();
+        /**
+         * 统计方式
+         */
+        private CountMode mode = CountMode.EXACT;
+    }
+
+    public enum CountMode {
+        /**
+         * 每次都执行 COUNT(*)，与原来的行为相同
+         */
+        EXACT,
+        /**
+         * 执行 COUNT(*) 后按SQL和参数缓存，有效期内相同条件的查询直接使用缓存
+         */
+        CACHED,
+        /**
+         * 没有查询条件时使用表的统计信息（information_schema.TABLES.TABLE_ROWS）作为近似总数，
+         * 有查询条件时统计信息无法反映过滤后的数量，按 CACHED 处理
+         */
+        ESTIMATED
+    }
+}
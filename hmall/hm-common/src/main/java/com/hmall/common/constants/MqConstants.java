@@ -0,0 +1,28 @@
+package com.hmall.common.constants;
+
+/*
+* 消息队列的交换机、队列、RoutingKey
+* 发送方和消费方都引用这里的常量，避免名称不一致
+* */
+public interface MqConstants {
+    /**
+     * 交易服务的交换机，topic类型
+     */
+    String TRADE_EXCHANGE = "trade.topic";
+    /**
+     * 订单创建成功
+     */
+    String ORDER_CREATED_KEY = "order.created";
+    /**
+     * 购物车服务：下单后清理购物车
+     */
+    String CART_CLEAR_QUEUE = "cart.clear.queue";
+    /**
+     * 购物车服务：清理购物车的死信交换机，direct类型
+     */
+    String CART_CLEAR_DLX = "cart.clear.dlx";
+    /**
+     * 购物车服务：重试耗尽仍然失败的清理购物车消息，同时也是死信的RoutingKey
+     */
+    String CART_CLEAR_DLQ = "cart.clear.dlq";
+}
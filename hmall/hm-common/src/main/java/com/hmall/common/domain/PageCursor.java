@@ -0,0 +1,60 @@
+package com.hmall.common.domain;
+
+import cn.hutool.core.util.StrUtil;
+import com.hmall.common.exception.BadRequestException;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Base64;
+
+/**
+ * 游标分页的游标：上一页最后一条数据的更新时间和id
+ * <p>
+ * 游标分页固定按 update_time、id 降序排列，下一页的条件是 (update_time, id) 小于游标，
+ * 数据库可以直接沿 (update_time, id) 索引定位到游标位置，不需要像 LIMIT offset 那样读取并丢弃前面的数据，
+ * 所以翻到第几页的开销都和第一页相同。
+ * </p>
+ * 对前端而言游标是不透明的字符串，只能原样传回，不能自行构造。
+ */
+@Data
+@AllArgsConstructor
+public class PageCursor {
+    /**
+     * 上一页最后一条数据的更新时间
+     */
+    private LocalDateTime updateTime;
+    /**
+     * 上一页最后一条数据的id
+     */
+    private Long id;
+
+    /**
+     * 编码为URL安全的字符串
+     */
+    public String encode() {
+        String text = updateTime + "," + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 解析前端传回的游标
+     *
+     * @param cursor 游标字符串
+     * @return 游标，为空时返回null，表示从第一页开始
+     * @throws BadRequestException 游标格式不正确
+     */
+    public static PageCursor decode(String cursor) {
+        if (StrUtil.isBlank(cursor)) {
+            return null;
+        }
+        try {
+            String text = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int comma = text.indexOf(',');
+            return new PageCursor(LocalDateTime.parse(text.substring(0, comma)), Long.valueOf(text.substring(comma + 1)));
+        } catch (RuntimeException e) {
+            throw new BadRequestException("分页游标格式不正确", e);
+        }
+    }
+}
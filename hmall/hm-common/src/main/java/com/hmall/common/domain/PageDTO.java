@@ -5,7 +5,6 @@ import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.hmall.common.utils.BeanUtils;
 import com.hmall.common.utils.CollUtils;
 import com.hmall.common.utils.Convert;
-import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
@@ -15,17 +14,26 @@ import java.util.stream.Collectors;
 
 @Data
 @NoArgsConstructor
-@AllArgsConstructor
 public class PageDTO<T> {
     protected Long total;
     protected Long pages;
     protected List<T> list;
+    /**
+     * 游标分页时下一页的游标，没有下一页时为null
+     */
+    protected String nextCursor;
+
+    public PageDTO(Long total, Long pages, List<T> list) {
+        this.total = total;
+        this.pages = pages;
+        this.list = list;
+    }
 
     public static <T> PageDTO<T> empty(Long total, Long pages) {
         return new PageDTO<>(total, pages, CollUtils.emptyList());
     }
     public static <T> PageDTO<T> empty(Page<?> page) {
-        return new PageDTO<>(page.getTotal(), page.getPages(), CollUtils.emptyList());
+        return new PageDTO<>(totalOf(page), pagesOf(page), CollUtils.emptyList());
     }
 
     public static <T> PageDTO<T> of(Page<T> page) {
@@ -35,7 +43,7 @@ public class PageDTO<T> {
         if (CollUtils.isEmpty(page.getRecords())) {
             return empty(page);
         }
-        return new PageDTO<>(page.getTotal(), page.getPages(), page.getRecords());
+        return new PageDTO<>(totalOf(page), pagesOf(page), page.getRecords());
     }
     public static <T,R> PageDTO<T> of(Page<R> page, Function<R, T> mapper) {
         if(page == null){
@@ -44,18 +52,29 @@ public class PageDTO<T> {
         if (CollUtils.isEmpty(page.getRecords())) {
             return empty(page);
         }
-        return new PageDTO<>(page.getTotal(), page.getPages(),
+        return new PageDTO<>(totalOf(page), pagesOf(page),
                 page.getRecords().stream().map(mapper).collect(Collectors.toList()));
     }
     public static <T> PageDTO<T> of(Page<?> page, List<T> list) {
-        return new PageDTO<>(page.getTotal(), page.getPages(), list);
+        return new PageDTO<>(totalOf(page), pagesOf(page), list);
     }
 
     public static <T, R> PageDTO<T> of(Page<R> page, Class<T> clazz) {
-        return new PageDTO<>(page.getTotal(), page.getPages(), BeanUtils.copyList(page.getRecords(), clazz));
+        return new PageDTO<>(totalOf(page), pagesOf(page), BeanUtils.copyList(page.getRecords(), clazz));
     }
 
     public static <T, R> PageDTO<T> of(Page<R> page, Class<T> clazz, Convert<R, T> convert) {
-        return new PageDTO<>(page.getTotal(), page.getPages(), BeanUtils.copyList(page.getRecords(), clazz, convert));
+        return new PageDTO<>(totalOf(page), pagesOf(page), BeanUtils.copyList(page.getRecords(), clazz, convert));
+    }
+
+    /*
+    * 分页时没有查询总数（searchCount=false），MP的total为0，这里返回null，避免前端误以为没有数据
+    * */
+    private static Long totalOf(Page<?> page) {
+        return page.isSearchCount() ? page.getTotal() : null;
+    }
+
+    private static Long pagesOf(Page<?> page) {
+        return page.isSearchCount() ? page.getPages() : null;
     }
 }
@@ -27,13 +27,31 @@ public class PageQuery {
     private Boolean isAsc = true;
     @ApiModelProperty("排序方式")
     private String sortBy;
+    @ApiModelProperty("分页游标，传入后使用游标分页：第一页传空字符串，之后传上一页返回的nextCursor；游标分页固定按更新时间降序，忽略页码和排序方式")
+    private String cursor;
+    @ApiModelProperty("是否查询总数，不需要总数时传false，省去一次COUNT查询")
+    private Boolean withTotal = true;
 
     public int from(){
         return (pageNo - 1) * pageSize;
     }
 
+    /**
+     * 是否使用游标分页
+     */
+    public boolean useCursor() {
+        return cursor != null;
+    }
+
+    /**
+     * 是否需要查询总数
+     */
+    public boolean needTotal() {
+        return !Boolean.FALSE.equals(withTotal);
+    }
+
     public <T> Page<T> toMpPage(OrderItem... orderItems) {
-        Page<T> page = new Page<>(pageNo, pageSize);
+        Page<T> page = new Page<>(pageNo, pageSize, needTotal());
         // 是否手动指定排序方式
         if (orderItems != null && orderItems.length > 0) {
             for (OrderItem orderItem : orderItems) {
@@ -56,7 +74,7 @@ public class PageQuery {
             sortBy = defaultSortBy;
             this.isAsc = isAsc;
         }
-        Page<T> page = new Page<>(pageNo, pageSize);
+        Page<T> page = new Page<>(pageNo, pageSize, needTotal());
         OrderItem orderItem = new OrderItem();
         orderItem.setAsc(this.isAsc);
         orderItem.setColumn(sortBy);
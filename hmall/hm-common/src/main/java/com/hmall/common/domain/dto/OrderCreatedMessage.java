@@ -0,0 +1,32 @@
+package com.hmall.common.domain.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * 订单创建成功的消息
+ * <p>
+ * 消费者在独立的线程中处理，没有请求头中的用户信息，需要的用户id从消息中获取。
+ * 消息可能重复投递，消费者的处理必须是幂等的。
+ * </p>
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class OrderCreatedMessage {
+    /**
+     * 订单id
+     */
+    private Long orderId;
+    /**
+     * 下单用户id
+     */
+    private Long userId;
+    /**
+     * 下单的商品id和数量
+     */
+    private List<OrderDetailDTO> items;
+}
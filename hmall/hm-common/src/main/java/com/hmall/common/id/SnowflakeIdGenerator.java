@@ -0,0 +1,131 @@
+package com.hmall.common.id;
+
+import com.baomidou.mybatisplus.core.incrementer.IdentifierGenerator;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.LongSupplier;
+
+/**
+ * 雪花算法id生成器，注册为 MyBatis-Plus 的 {@link IdentifierGenerator}
+ * <p>
+ * id结构：1位符号 + 41位毫秒时间戳（相对 {@link #EPOCH}） + 10位 workerId + 12位毫秒内序号。
+ * 时间戳和序号合并保存在一个 AtomicLong 中，生成id只是一次CAS，没有锁：
+ * </p>
+ * <ul>
+ *     <li>时钟前进时从新的毫秒、序号0开始</li>
+ *     <li>同一毫秒内序号加1，序号用完时自然进位到下一毫秒，即“借用”未来的时间，不需要等待</li>
+ *     <li>时钟回拨时同样继续使用上次的时间加1，id保持递增；借用超过 maxBorrowMillis 时等待时钟追上，
+ *     回拨过多时抛出异常，而不是生成可能重复的id</li>
+ * </ul>
+ * workerId 由 {@link WorkerIdLease} 从数据库租用，租约失效后拒绝生成id，避免与接手该 workerId 的节点重复。
+ */
+public class SnowflakeIdGenerator implements IdentifierGenerator {
+
+    /**
+     * 时间戳起点：2024-01-01T00:00:00Z
+     */
+    public static final long EPOCH = 1704067200000L;
+    public static final int MAX_WORKER_ID = (1 << 10) - 1;
+    private static final int SEQUENCE_BITS = 12;
+    private static final int TIMESTAMP_SHIFT = SEQUENCE_BITS + 10;
+    private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+
+    private final LongSupplier clock;
+    private final long maxBorrowMillis;
+    // 高位为相对 EPOCH 的毫秒数，低12位为该毫秒内已经使用的最大序号
+    private final AtomicLong state = new AtomicLong();
+    private volatile long workerBits;
+    // 租约有效期，System.nanoTime() 的值；固定 workerId 时一直有效
+    private volatile long validUntilNanos;
+    private volatile boolean leased;
+
+    public SnowflakeIdGenerator(int workerId, long maxBorrowMillis) {
+        this(workerId, maxBorrowMillis, System::currentTimeMillis);
+    }
+
+    SnowflakeIdGenerator(int workerId, long maxBorrowMillis, LongSupplier clock) {
+        this.clock = clock;
+        this.maxBorrowMillis = maxBorrowMillis;
+        reset(workerId, 0);
+    }
+
+    /**
+     * 创建使用租约的生成器，在 {@link WorkerIdLease} 租到 workerId 之前拒绝生成id
+     */
+    public static SnowflakeIdGenerator leased(long maxBorrowMillis) {
+        SnowflakeIdGenerator generator = new SnowflakeIdGenerator(0, maxBorrowMillis);
+        generator.validUntil(System.nanoTime());
+        return generator;
+    }
+
+    @Override
+    public Long nextId(Object entity) {
+        return nextId();
+    }
+
+    /**
+     * 生成一个id
+     *
+     * @throws IllegalStateException workerId 租约已失效，或时钟回拨过多
+     */
+    public long nextId() {
+        if (leased && System.nanoTime() - validUntilNanos > 0) {
+            throw new IllegalStateException("workerId 租约已失效，暂停生成id");
+        }
+        long now = clock.getAsLong() - EPOCH;
+        while (true) {
+            long prev = state.get();
+            long next = (prev >>> SEQUENCE_BITS) < now ? now << SEQUENCE_BITS : prev + 1;
+            long ahead = (next >>> SEQUENCE_BITS) - now;
+            if (ahead > maxBorrowMillis) {
+                // 借用的时间过多：时钟回拨，或者短时间内请求量超过每毫秒4096个
+                if (ahead > maxBorrowMillis * 2) {
+                    throw new IllegalStateException("时钟回拨" + ahead + "毫秒，暂停生成id");
+                }
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(ahead - maxBorrowMillis));
+                now = clock.getAsLong() - EPOCH;
+                continue;
+            }
+            if (state.compareAndSet(prev, next)) {
+                return (next >>> SEQUENCE_BITS) << TIMESTAMP_SHIFT | workerBits | (next & SEQUENCE_MASK);
+            }
+        }
+    }
+
+    /**
+     * 已经使用到的时间，毫秒时间戳，用于保存到租约中
+     */
+    public long lastTime() {
+        return (state.get() >>> SEQUENCE_BITS) + EPOCH;
+    }
+
+    /*
+    * 最多借用未来多少毫秒的时间，用于计算租约有效期内最多用到的时间
+    * */
+    long maxBorrowMillis() {
+        return maxBorrowMillis;
+    }
+
+    /*
+    * 切换 workerId，并从 lastTime 之后开始生成，lastTime 是该 workerId 上一个持有者最多可能用到的时间
+    * 只在租约失效、没有线程能够生成id时调用
+    * */
+    void reset(int workerId, long lastTime) {
+        if (workerId < 0 || workerId > MAX_WORKER_ID) {
+            throw new IllegalArgumentException("workerId 必须在 0 到 " + MAX_WORKER_ID + " 之间");
+        }
+        this.workerBits = (long) workerId << SEQUENCE_BITS;
+        long start = Math.max(lastTime - EPOCH + 1, 0);
+        state.accumulateAndGet(start << SEQUENCE_BITS, Math::max);
+    }
+
+    /*
+    * 租约续期成功后延长有效期
+    * */
+    void validUntil(long nanos) {
+        this.validUntilNanos = nanos;
+        this.leased = true;
+    }
+}
@@ -0,0 +1,201 @@
+package com.hmall.common.id;
+
+import lombok.extern.slf4j.Slf4j;
+
+import javax.sql.DataSource;
+import java.io.Closeable;
+import java.lang.management.ManagementFactory;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/*
+* 从数据库租用雪花算法的 workerId
+* 流程：
+*  1. 启动时从按节点名散列的位置开始查找，插入一个新的 workerId，或者接手一个租约已过期的 workerId
+*  2. 租用成功和每次续期时，先保存本次有效期内最多可能用到的时间（last_time）：
+*     当前时间与已用到的时间中较大的一个 + 本地有效期（ttl 的 3/4）+ 最多借用的时间，保存成功后才延长生成器的有效期
+*  3. 接手时生成器从 last_time 之后开始，上一个持有者在有效期内生成的id都早于这个时间，
+*     所以接手节点的时钟比上一个持有者慢也不会重复；慢得过多时生成器按时钟回拨拒绝生成，直到时钟追上
+*  4. 每 ttl/3 续期一次；续期失败超过 ttl 的 3/4 时生成器停止生成，在数据库中的租约过期之前
+*  5. 租约被其他节点接手后重新租用一个 workerId；关闭时先停止生成，再保存实际用到的时间并释放租约
+* 注意：
+*  1. 租约的过期时间使用数据库的时钟判断，不受各节点时钟的影响
+*  2. 同一个数据库中的节点共用 1024 个 workerId，id 只保证在共用同一张租约表的节点之间不重复
+* */
+@Slf4j
+public class WorkerIdLease implements Closeable {
+
+    private static final String CREATE_TABLE = "CREATE TABLE IF NOT EXISTS id_worker_lease (" +
+            "worker_id INT NOT NULL PRIMARY KEY, " +
+            "owner VARCHAR(128) NOT NULL, " +
+            "lease_until DATETIME(3) NOT NULL, " +
+            "last_time BIGINT NOT NULL DEFAULT 0" +
+            ") COMMENT '雪花算法workerId租约'";
+    private static final String INSERT = "INSERT IGNORE INTO id_worker_lease (worker_id, owner, lease_until) " +
+            "VALUES (?, ?, NOW(3) + INTERVAL ? MICROSECOND)";
+    private static final String TAKE_OVER = "UPDATE id_worker_lease SET owner = ?, lease_until = NOW(3) + INTERVAL ? MICROSECOND " +
+            "WHERE worker_id = ? AND lease_until < NOW(3)";
+    private static final String LAST_TIME = "SELECT last_time FROM id_worker_lease WHERE worker_id = ?";
+    private static final String RENEW = "UPDATE id_worker_lease SET lease_until = NOW(3) + INTERVAL ? MICROSECOND, " +
+            "last_time = GREATEST(last_time, ?) WHERE worker_id = ? AND owner = ?";
+    // 释放时已经停止生成，保存实际用到的时间，而不是续期时保存的上限，接手的节点不需要等待时钟追上
+    private static final String RELEASE = "UPDATE id_worker_lease SET lease_until = NOW(3), " +
+            "last_time = ? WHERE worker_id = ? AND owner = ?";
+
+    private final DataSource dataSource;
+    private final SnowflakeIdGenerator generator;
+    private final Duration ttl;
+    private final String owner;
+    private final ScheduledExecutorService renewer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "id-worker-lease");
+        thread.setDaemon(true);
+        return thread;
+    });
+    // 当前租用的 workerId，-1 表示没有
+    private volatile int workerId = -1;
+
+    public WorkerIdLease(DataSource dataSource, SnowflakeIdGenerator generator, Duration ttl) {
+        this.dataSource = dataSource;
+        this.generator = generator;
+        this.ttl = ttl;
+        this.owner = ManagementFactory.getRuntimeMXBean().getName() + "-" + UUID.randomUUID().toString().substring(0, 8);
+    }
+
+    /**
+     * 租用 workerId，开始定期续期
+     *
+     * @throws IllegalStateException 所有 workerId 都已被占用
+     */
+    public void start() throws SQLException {
+        try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+            statement.execute(CREATE_TABLE);
+        }
+        acquire();
+        long interval = ttl.toMillis() / 3;
+        renewer.scheduleWithFixedDelay(this::renewQuietly, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    public int getWorkerId() {
+        return workerId;
+    }
+
+    private void acquire() throws SQLException {
+        long start = System.nanoTime();
+        int first = (owner.hashCode() & Integer.MAX_VALUE) % (SnowflakeIdGenerator.MAX_WORKER_ID + 1);
+        try (Connection connection = dataSource.getConnection()) {
+            for (int i = 0; i <= SnowflakeIdGenerator.MAX_WORKER_ID; i++) {
+                int id = (first + i) % (SnowflakeIdGenerator.MAX_WORKER_ID + 1);
+                if (tryInsert(connection, id) || tryTakeOver(connection, id)) {
+                    generator.reset(id, lastTime(connection, id));
+                    if (!update(RENEW, micros(), upperBound(), id, owner)) {
+                        continue;
+                    }
+                    generator.validUntil(start + validNanos());
+                    workerId = id;
+                    log.info("租用 workerId {}，节点：{}", id, owner);
+                    return;
+                }
+            }
+        }
+        throw new IllegalStateException("没有可用的 workerId");
+    }
+
+    private void renewQuietly() {
+        try {
+            if (workerId < 0) {
+                acquire();
+                return;
+            }
+            long start = System.nanoTime();
+            if (update(RENEW, micros(), upperBound(), workerId, owner)) {
+                generator.validUntil(start + validNanos());
+                return;
+            }
+            // 租约已被其他节点接手，生成器会在有效期结束后停止，之后重新租用
+            log.error("workerId {} 的租约已被其他节点接手", workerId);
+            workerId = -1;
+        } catch (Exception e) {
+            log.error("workerId 租约续期失败，将在下个周期重试", e);
+        }
+    }
+
+    @Override
+    public void close() {
+        renewer.shutdown();
+        if (workerId < 0) {
+            return;
+        }
+        // 先停止生成，保存的时间才是实际用到的最大时间
+        generator.validUntil(System.nanoTime());
+        try {
+            update(RELEASE, generator.lastTime(), workerId, owner);
+        } catch (SQLException e) {
+            log.warn("释放 workerId {} 的租约失败，将在过期后自动释放", workerId, e);
+        }
+    }
+
+    private boolean tryInsert(Connection connection, int id) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(INSERT)) {
+            bind(statement, id, owner, micros());
+            return statement.executeUpdate() > 0;
+        }
+    }
+
+    private boolean tryTakeOver(Connection connection, int id) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(TAKE_OVER)) {
+            bind(statement, owner, micros(), id);
+            return statement.executeUpdate() > 0;
+        }
+    }
+
+    private static long lastTime(Connection connection, int id) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(LAST_TIME)) {
+            statement.setInt(1, id);
+            try (ResultSet rs = statement.executeQuery()) {
+                return rs.next() ? rs.getLong(1) : 0;
+            }
+        }
+    }
+
+    private boolean update(String sql, Object... args) throws SQLException {
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement(sql)) {
+            bind(statement, args);
+            return statement.executeUpdate() > 0;
+        }
+    }
+
+    private static void bind(PreparedStatement statement, Object... args) throws SQLException {
+        for (int i = 0; i < args.length; i++) {
+            statement.setObject(i + 1, args[i]);
+        }
+    }
+
+    private long micros() {
+        return TimeUnit.MILLISECONDS.toMicros(ttl.toMillis());
+    }
+
+    /*
+    * 本次续期的有效期内生成器最多可能用到的时间：从当前时间（或已经借用到的时间）开始，
+    * 再经过本地有效期，加上生成器最多借用的时间
+    * */
+    private long upperBound() {
+        long from = Math.max(generator.lastTime(), System.currentTimeMillis());
+        return from + TimeUnit.NANOSECONDS.toMillis(validNanos()) + generator.maxBorrowMillis();
+    }
+
+    /*
+    * 本地认为租约有效的时间：从发出续期请求时开始计算，只用 ttl 的 3/4，在数据库中的租约过期之前停止生成
+    * */
+    private long validNanos() {
+        return ttl.toNanos() / 4 * 3;
+    }
+}
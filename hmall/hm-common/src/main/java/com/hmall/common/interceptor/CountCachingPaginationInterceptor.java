@@ -0,0 +1,191 @@
+package com.hmall.common.interceptor;
+
+import com.baomidou.mybatisplus.annotation.DbType;
+import com.baomidou.mybatisplus.core.metadata.IPage;
+import com.baomidou.mybatisplus.core.toolkit.ParameterUtils;
+import com.baomidou.mybatisplus.extension.plugins.inner.PaginationInnerInterceptor;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.hmall.common.config.PageCountProperties;
+import com.hmall.common.config.PageCountProperties.CountMode;
+import com.hmall.common.utils.WebUtils;
+import lombok.extern.slf4j.Slf4j;
+import net.sf.jsqlparser.JSQLParserException;
+import net.sf.jsqlparser.parser.CCJSqlParserUtil;
+import net.sf.jsqlparser.schema.Table;
+import net.sf.jsqlparser.statement.Statement;
+import net.sf.jsqlparser.statement.select.PlainSelect;
+import net.sf.jsqlparser.statement.select.Select;
+import org.apache.ibatis.executor.Executor;
+import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.ParameterMapping;
+import org.apache.ibatis.reflection.MetaObject;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.ResultHandler;
+import org.apache.ibatis.session.RowBounds;
+import org.springframework.util.AntPathMatcher;
+
+import javax.servlet.http.HttpServletRequest;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * 可以缓存总数的分页拦截器
+ * <p>
+ * MP的分页拦截器每次分页都会先执行一次 COUNT(*)，对没有过滤条件的大表来说，COUNT 的开销与查询当前页相当。
+ * 本拦截器按当前请求的接口路径选择统计方式（见 {@link PageCountProperties}）：
+ * </p>
+ * <ul>
+ *     <li>EXACT：交给父类执行 COUNT(*)</li>
+ *     <li>CACHED：以 Mapper方法 + 规整后的SQL + 参数值 为key缓存 COUNT(*) 的结果，有效期内相同条件不再统计</li>
+ *     <li>ESTIMATED：SQL没有 WHERE、JOIN、GROUP BY、DISTINCT 时，使用表的统计信息作为近似总数，否则按 CACHED 处理</li>
+ * </ul>
+ * 注意：缓存的总数在有效期内不会随数据的增删变化，只适合列表页“共 N 条”这种允许短时间不准确的场景。
+ */
+@Slf4j
+public class CountCachingPaginationInterceptor extends PaginationInnerInterceptor {
+
+    private static final String TABLE_ROWS_SQL = "SELECT TABLE_ROWS FROM information_schema.TABLES "
+            + "WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = ?";
+
+    private final PageCountProperties properties;
+    private final AntPathMatcher pathMatcher = new AntPathMatcher();
+    // 查询条件 -> 总数
+    private final Cache<String, Long> counts;
+
+    public CountCachingPaginationInterceptor(DbType dbType, PageCountProperties properties) {
+        super(dbType);
+        this.properties = properties;
+        this.counts = Caffeine.newBuilder()
+                .maximumSize(properties.getMaximumSize())
+                .expireAfterWrite(properties.getTtl())
+                .build();
+    }
+
+    @Override
+    public boolean willDoQuery(Executor executor, MappedStatement ms, Object parameter, RowBounds rowBounds,
+                               ResultHandler resultHandler, BoundSql boundSql) throws SQLException {
+        // 1.不需要统计总数，或者使用精确统计，交给父类处理
+        IPage<?> page = ParameterUtils.findPage(parameter).orElse(null);
+        CountMode mode = currentMode();
+        if (page == null || page.getSize() < 0 || !page.isSearchCount() || mode == CountMode.EXACT) {
+            return super.willDoQuery(executor, ms, parameter, rowBounds, resultHandler, boundSql);
+        }
+        // 2.先查缓存
+        String key = countKey(ms, parameter, boundSql);
+        Long total = counts.getIfPresent(key);
+        if (total != null) {
+            page.setTotal(total);
+            return continuePage(page);
+        }
+        // 3.估算模式下，没有过滤条件的单表查询使用表的统计信息
+        if (mode == CountMode.ESTIMATED) {
+            total = estimate(executor, boundSql.getSql());
+        }
+        if (total != null) {
+            page.setTotal(total);
+            counts.put(key, total);
+            return continuePage(page);
+        }
+        // 4.由父类执行 COUNT(*)，再缓存结果
+        boolean continued = super.willDoQuery(executor, ms, parameter, rowBounds, resultHandler, boundSql);
+        counts.put(key, page.getTotal());
+        return continued;
+    }
+
+    /*
+    * 当前请求路径匹配的统计方式，非web请求（如消息消费）使用默认方式
+    * */
+    private CountMode currentMode() {
+        HttpServletRequest request = WebUtils.getRequest();
+        if (request != null) {
+            String path = request.getRequestURI();
+            for (PageCountProperties.Rule rule : properties.getRules()) {
+                for (String pattern : rule.getPaths()) {
+                    if (pathMatcher.match(pattern, path)) {
+                        return rule.getMode();
+                    }
+                }
+            }
+        }
+        return properties.getDefaultMode();
+    }
+
+    /*
+    * 缓存key：Mapper方法 + 空白规整后的SQL + 按占位符顺序排列的参数值
+    * 参数值的读取方式与 MyBatis 的 DefaultParameterHandler 相同
+    * */
+    private static String countKey(MappedStatement ms, Object parameter, BoundSql boundSql) {
+        StringBuilder key = new StringBuilder(ms.getId()).append('|')
+                .append(boundSql.getSql().replaceAll("\\s+", " ").trim());
+        Configuration configuration = ms.getConfiguration();
+        MetaObject metaObject = null;
+        for (ParameterMapping mapping : boundSql.getParameterMappings()) {
+            String property = mapping.getProperty();
+            Object value;
+            if (boundSql.hasAdditionalParameter(property)) {
+                value = boundSql.getAdditionalParameter(property);
+            } else if (parameter == null) {
+                value = null;
+            } else if (configuration.getTypeHandlerRegistry().hasTypeHandler(parameter.getClass())) {
+                value = parameter;
+            } else {
+                if (metaObject == null) {
+                    metaObject = configuration.newMetaObject(parameter);
+                }
+                value = metaObject.getValue(property);
+            }
+            key.append('|').append(value);
+        }
+        return key.toString();
+    }
+
+    /*
+    * 使用表的统计信息估算总数
+    * 返回null表示无法估算：SQL带有过滤或聚合，或者统计信息为0（新表、统计信息尚未更新）
+    * */
+    private Long estimate(Executor executor, String sql) {
+        String table = plainTableOf(sql);
+        if (table == null) {
+            return null;
+        }
+        try {
+            Connection connection = executor.getTransaction().getConnection();
+            try (PreparedStatement statement = connection.prepareStatement(TABLE_ROWS_SQL)) {
+                statement.setString(1, table);
+                try (ResultSet rs = statement.executeQuery()) {
+                    long rows = rs.next() ? rs.getLong(1) : 0;
+                    return rows > 0 ? rows : null;
+                }
+            }
+        } catch (SQLException e) {
+            log.warn("读取表{}的统计信息失败，改为精确统计", table, e);
+            return null;
+        }
+    }
+
+    /*
+    * SQL是没有过滤、连接、分组、去重的单表查询时返回表名，否则返回null
+    * */
+    private static String plainTableOf(String sql) {
+        Statement statement;
+        try {
+            statement = CCJSqlParserUtil.parse(sql);
+        } catch (JSQLParserException e) {
+            return null;
+        }
+        if (!(statement instanceof Select) || !(((Select) statement).getSelectBody() instanceof PlainSelect)) {
+            return null;
+        }
+        PlainSelect select = (PlainSelect) ((Select) statement).getSelectBody();
+        if (select.getWhere() != null || select.getJoins() != null || select.getGroupBy() != null
+                || select.getDistinct() != null || select.getHaving() != null
+                || !(select.getFromItem() instanceof Table)) {
+            return null;
+        }
+        return ((Table) select.getFromItem()).getName().replace("`", "");
+    }
+}
@@ -0,0 +1,53 @@
+package com.hmall.common.mybatis;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+
+import java.util.List;
+
+/**
+ * 支持多行插入的 Mapper
+ * <p>
+ * ServiceImpl.saveBatch 使用JDBC批处理，每一行仍然是一条 INSERT 语句，
+ * 没有开启 rewriteBatchedStatements 时驱动会逐条发送，N 行就是 N 次往返。
+ * 继承本接口的 Mapper 由 {@link BatchSqlInjector} 注入 insertBatchSomeColumn，
+ * 一条 INSERT ... VALUES (...), (...) 语句插入多行；{@link #insertValues} 再按语句的字节数分批，
+ * 避免单条语句超过 MySQL 的 max_allowed_packet 或者预编译语句的占位符上限。
+ * </p>
+ *
+ * @param <T> 实体类型
+ */
+public interface BatchBaseMapper<T> extends BaseMapper<T> {
+
+    /**
+     * 一条语句插入所有行，由 {@link BatchSqlInjector} 注入，行数过多时使用 {@link #insertValues}
+     *
+     * @param entityList 实体列表，不能为空
+     * @return 插入的行数
+     */
+    int insertBatchSomeColumn(List<T> entityList);
+
+    /**
+     * 按语句大小分批，每批一条多行插入语句
+     *
+     * @param entityList 实体列表
+     * @return 插入的行数
+     */
+    default int insertValues(List<T> entityList) {
+        return insertValues(entityList, InsertChunks.DEFAULT_MAX_BYTES);
+    }
+
+    /**
+     * 按语句大小分批，每批一条多行插入语句
+     *
+     * @param entityList 实体列表
+     * @param maxBytes   每条语句中数据的最大字节数（估算值）
+     * @return 插入的行数
+     */
+    default int insertValues(List<T> entityList, int maxBytes) {
+        int rows = 0;
+        for (List<T> chunk : InsertChunks.split(entityList, maxBytes)) {
+            rows += insertBatchSomeColumn(chunk);
+        }
+        return rows;
+    }
+}
@@ -0,0 +1,30 @@
+package com.hmall.common.mybatis;
+
+import com.baomidou.mybatisplus.core.injector.AbstractMethod;
+import com.baomidou.mybatisplus.core.injector.DefaultSqlInjector;
+import com.baomidou.mybatisplus.extension.injector.methods.InsertBatchSomeColumn;
+
+import java.util.List;
+import java.util.Set;
+
+/*
+* 在 MyBatis-Plus 默认方法的基础上，为继承了 BatchBaseMapper 的 Mapper 注入 insertBatchSomeColumn：
+* 一条 INSERT INTO ... VALUES (...), (...) 语句插入多行
+* 注意：
+*  1. create_time、update_time 没有配置插入填充时不出现在语句中，使用数据库的默认值；
+*     原来逐条插入时这两列为null也不会写入，行为一致
+*  2. 主键为 ASSIGN_ID 时由 MyBatis-Plus 在执行前为每一行生成id；AUTO 时依赖驱动返回的自增主键
+* */
+public class BatchSqlInjector extends DefaultSqlInjector {
+
+    private static final Set<String> DB_DEFAULT_COLUMNS = Set.of("create_time", "update_time");
+
+    @Override
+    public List<AbstractMethod> getMethodList(Class<?> mapperClass) {
+        List<AbstractMethod> methods = super.getMethodList(mapperClass);
+        if (BatchBaseMapper.class.isAssignableFrom(mapperClass)) {
+            methods.add(new InsertBatchSomeColumn(f -> f.isWithInsertFill() || !DB_DEFAULT_COLUMNS.contains(f.getColumn())));
+        }
+        return methods;
+    }
+}
@@ -0,0 +1,110 @@
+package com.hmall.common.mybatis;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.time.temporal.TemporalAccessor;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+/*
+* 把多行插入按语句大小分批
+* 作用：
+*  1. 多行插入的语句大小与行数、每行的数据量成正比，只按行数分批时，大字段的行可能让语句超过 max_allowed_packet
+*  2. 按字段值估算每一行在SQL中的字节数，累计超过 maxBytes 时开始新的一批
+*  3. 每批的占位符数量不超过预编译语句的上限 65535
+* 注意：估算偏大，字符串按每个字符3字节（UTF-8中文）计算
+* */
+public final class InsertChunks {
+
+    /**
+     * 默认每条语句中数据的最大字节数，远小于 MySQL max_allowed_packet 的默认值（4MB/64MB）
+     */
+    public static final int DEFAULT_MAX_BYTES = 512 * 1024;
+    private static final int MAX_PLACEHOLDERS = 65535;
+
+    private static final ClassValue<Field[]> FIELDS = new ClassValue<Field[]>() {
+        @Override
+        protected Field[] computeValue(Class<?> type) {
+            List<Field> fields = new ArrayList<>();
+            for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+                for (Field field : c.getDeclaredFields()) {
+                    if (!Modifier.isStatic(field.getModifiers()) && !Modifier.isTransient(field.getModifiers())) {
+                        field.setAccessible(true);
+                        fields.add(field);
+                    }
+                }
+            }
+            return fields.toArray(new Field[0]);
+        }
+    };
+
+    private InsertChunks() {
+    }
+
+    /**
+     * 分批
+     *
+     * @param rows     实体列表
+     * @param maxBytes 每批数据的最大字节数，单行超过时该行单独一批
+     * @return 每一批都是原列表的视图
+     */
+    public static <T> List<List<T>> split(List<T> rows, int maxBytes) {
+        if (rows == null || rows.isEmpty()) {
+            return Collections.emptyList();
+        }
+        int maxRows = Math.max(1, MAX_PLACEHOLDERS / Math.max(1, FIELDS.get(rows.get(0).getClass()).length));
+        List<List<T>> chunks = new ArrayList<>();
+        int start = 0;
+        long bytes = 0;
+        for (int i = 0; i < rows.size(); i++) {
+            long size = estimate(rows.get(i));
+            if (i > start && (bytes + size > maxBytes || i - start >= maxRows)) {
+                chunks.add(rows.subList(start, i));
+                start = i;
+                bytes = 0;
+            }
+            bytes += size;
+        }
+        chunks.add(rows.subList(start, rows.size()));
+        return chunks;
+    }
+
+    /*
+    * 估算一行在 VALUES 中的字节数：括号、逗号，以及每个字段值的文本长度
+    * */
+    static long estimate(Object row) {
+        long size = 3;
+        for (Field field : FIELDS.get(row.getClass())) {
+            Object value;
+            try {
+                value = field.get(row);
+            } catch (IllegalAccessException e) {
+                value = null;
+            }
+            size += 1 + estimateValue(value);
+        }
+        return size;
+    }
+
+    private static long estimateValue(Object value) {
+        if (value == null) {
+            return 4;
+        }
+        if (value instanceof CharSequence) {
+            // 引号、转义后的长度按每个字符3字节估算
+            return 2 + ((CharSequence) value).length() * 3L;
+        }
+        if (value instanceof Number || value instanceof Boolean) {
+            return 20;
+        }
+        if (value instanceof TemporalAccessor || value instanceof Date) {
+            return 28;
+        }
+        if (value instanceof byte[]) {
+            return 3 + ((byte[]) value).length * 2L;
+        }
+        return 2 + value.toString().length() * 3L;
+    }
+}
@@ -0,0 +1,265 @@
+package com.hmall.common.timer;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * 分层时间轮，按key管理大量到期时间，到期的key批量交给处理器
+ * <p>
+ * 时间按 tick 划分，第0层每个槽位是1个tick，第 n 层每个槽位是 wheelSize^n 个tick，层数按需增加。
+ * 定时任务按到期时间放入能容纳它的最低一层，上层槽位到期时把其中的任务重新放入下层，
+ * 所以新增、取消都是常数时间（哈希表 + 双向链表），与任务数量无关；推进一个tick只处理到期的槽位。
+ * 与 ScheduledThreadPoolExecutor、DelayQueue 相比，不需要维护一个O(log n)的堆，适合几十万到上百万个超时时间。
+ * </p>
+ * 注意：
+ * <ul>
+ *     <li>精度是一个tick，到期时间向上取整到tick，处理器最多晚一个tick被调用</li>
+ *     <li>处理器在时间轮的线程中调用，耗时较长时后面的tick会延后并一次追上，处理器抛出的异常只记录日志</li>
+ *     <li>只保存在内存中，重启后需要由使用方从数据库恢复</li>
+ * </ul>
+ *
+ * @param <K> 定时任务的key，例如订单id
+ */
+@Slf4j
+public class TimingWheel<K> implements AutoCloseable {
+
+    private final long tickMillis;
+    private final int bits;
+    private final int mask;
+    private final Consumer<List<K>> expiredHandler;
+    private final ScheduledExecutorService ticker;
+    // key -> 定时任务，用于按key取消
+    private final Map<K, Node<K>> nodes = new HashMap<>();
+    // 每一层的槽位，每个槽位是一个双向链表的头节点
+    private final List<Node<K>[]> levels = new ArrayList<>();
+    // 放入时已经到期的任务，在下一个tick交给处理器
+    private final Node<K> due = Node.head();
+    private long currentTick;
+
+    /**
+     * @param name           时间轮线程的名称
+     * @param tick           时间精度
+     * @param wheelSize      每一层的槽位数，向上取整为2的幂
+     * @param expiredHandler 到期的key的处理器
+     */
+    public TimingWheel(String name, Duration tick, int wheelSize, Consumer<List<K>> expiredHandler) {
+        if (tick.toMillis() <= 0 || wheelSize < 2) {
+            throw new IllegalArgumentException("tick必须大于0毫秒，wheelSize必须大于1");
+        }
+        this.tickMillis = tick.toMillis();
+        this.bits = 32 - Integer.numberOfLeadingZeros(wheelSize - 1);
+        this.mask = (1 << bits) - 1;
+        this.expiredHandler = expiredHandler;
+        this.currentTick = System.currentTimeMillis() / tickMillis;
+        this.ticker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, name);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * 开始按tick推进
+     */
+    public void start() {
+        ticker.scheduleAtFixedRate(() -> advanceTo(System.currentTimeMillis()), tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 添加或者修改定时任务
+     *
+     * @param key            定时任务的key，已经存在时修改它的到期时间
+     * @param deadlineMillis 到期时间，毫秒时间戳；已经过去的时间在下一个tick到期
+     */
+    public synchronized void schedule(K key, long deadlineMillis) {
+        Node<K> node = nodes.get(key);
+        if (node == null) {
+            node = new Node<>(key);
+            nodes.put(key, node);
+        } else {
+            node.unlink();
+        }
+        // 向上取整，不会早于到期时间触发
+        node.expiration = Math.floorDiv(deadlineMillis + tickMillis - 1, tickMillis);
+        place(node);
+    }
+
+    /**
+     * 取消定时任务
+     *
+     * @return 是否存在该定时任务，已经到期交给处理器的返回false
+     */
+    public synchronized boolean cancel(K key) {
+        Node<K> node = nodes.remove(key);
+        if (node == null) {
+            return false;
+        }
+        node.unlink();
+        return true;
+    }
+
+    /**
+     * 尚未到期的定时任务数量
+     */
+    public synchronized int size() {
+        return nodes.size();
+    }
+
+    /**
+     * 推进到指定时间，把到期的key交给处理器，通常由时间轮线程调用
+     *
+     * @param nowMillis 当前时间，毫秒时间戳
+     */
+    public void advanceTo(long nowMillis) {
+        List<K> expired = new ArrayList<>();
+        synchronized (this) {
+            long nowTick = nowMillis / tickMillis;
+            // 没有任务时直接跳到当前时间
+            if (nodes.isEmpty()) {
+                currentTick = Math.max(currentTick, nowTick);
+                return;
+            }
+            while (currentTick < nowTick) {
+                currentTick++;
+                // 1.上层槽位的时间范围从当前tick开始时，把其中的任务放入下层，先处理高层，下放的任务可能继续下放
+                for (int level = levels.size() - 1; level >= 1; level--) {
+                    if ((currentTick & ((1L << (bits * level)) - 1)) == 0) {
+                        Node<K> bucket = levels.get(level)[(int) ((currentTick >>> (bits * level)) & mask)];
+                        for (Node<K> node = bucket.detachAll(); node != null; ) {
+                            Node<K> next = node.next;
+                            place(node);
+                            node = next;
+                        }
+                    }
+                }
+                // 2.第0层的当前槽位到期
+                if (!levels.isEmpty()) {
+                    due.appendAll(levels.get(0)[(int) (currentTick & mask)]);
+                }
+            }
+            for (Node<K> node = due.detachAll(); node != null; node = node.next) {
+                nodes.remove(node.key);
+                expired.add(node.key);
+            }
+        }
+        // 3.在锁外调用处理器，处理期间可以继续添加、取消任务
+        if (!expired.isEmpty()) {
+            try {
+                expiredHandler.accept(expired);
+            } catch (RuntimeException e) {
+                log.error("处理到期的定时任务失败，共{}个", expired.size(), e);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        ticker.shutdownNow();
+    }
+
+    /*
+    * 放入能容纳到期时间的最低一层：到期时间与当前时间在上一层的同一个槽位中
+    * 这样该槽位在到期之前一定会被推进到，下放或者到期
+    * */
+    private void place(Node<K> node) {
+        if (node.expiration <= currentTick) {
+            due.append(node);
+            return;
+        }
+        int level = 0;
+        while (bits * (level + 1) < Long.SIZE - 1
+                && (node.expiration >>> (bits * (level + 1))) != (currentTick >>> (bits * (level + 1)))) {
+            level++;
+        }
+        level(level)[(int) ((node.expiration >>> (bits * level)) & mask)].append(node);
+    }
+
+    @SuppressWarnings("unchecked")
+    private Node<K>[] level(int level) {
+        while (levels.size() <= level) {
+            Node<K>[] buckets = new Node[mask + 1];
+            for (int i = 0; i < buckets.length; i++) {
+                buckets[i] = Node.head();
+            }
+            levels.add(buckets);
+        }
+        return levels.get(level);
+    }
+
+    /*
+    * 定时任务，同时也用作槽位的头节点（key为null），槽位是以头节点为起点的循环双向链表
+    * */
+    private static final class Node<K> {
+        private final K key;
+        private long expiration;
+        private Node<K> prev;
+        private Node<K> next;
+
+        private Node(K key) {
+            this.key = key;
+        }
+
+        private static <K> Node<K> head() {
+            Node<K> head = new Node<>(null);
+            head.prev = head;
+            head.next = head;
+            return head;
+        }
+
+        private void append(Node<K> node) {
+            node.prev = prev;
+            node.next = this;
+            prev.next = node;
+            prev = node;
+        }
+
+        private void appendAll(Node<K> bucket) {
+            if (bucket.next == bucket) {
+                return;
+            }
+            Node<K> first = bucket.next;
+            Node<K> last = bucket.prev;
+            first.prev = prev;
+            prev.next = first;
+            last.next = this;
+            prev = last;
+            bucket.prev = bucket;
+            bucket.next = bucket;
+        }
+
+        /*
+        * 取出槽位中的全部任务，返回以null结尾的单向链表
+        * */
+        private Node<K> detachAll() {
+            if (next == this) {
+                return null;
+            }
+            Node<K> first = next;
+            prev.next = null;
+            prev = this;
+            next = this;
+            for (Node<K> node = first; node != null; node = node.next) {
+                node.prev = null;
+            }
+            return first;
+        }
+
+        private void unlink() {
+            if (prev != null) {
+                prev.next = next;
+                next.prev = prev;
+                prev = null;
+                next = null;
+            }
+        }
+    }
+}
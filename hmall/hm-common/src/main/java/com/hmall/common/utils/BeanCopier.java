@@ -0,0 +1,227 @@
+package com.hmall.common.utils;
+
+import cn.hutool.core.bean.BeanUtil;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * 按属性名在两个类之间复制属性的复制器，每一对（原类型，目标类型）只在第一次使用时解析一次
+ * <p>
+ * hutool 的 BeanUtil.toBean 每次复制都要查找属性描述、反射调用 getter/setter、经过类型转换器，
+ * 而这些都只与类型有关。本类在第一次使用时通过 {@link LambdaMetafactory} 把 getter、setter 和无参构造
+ * 生成为普通的 Function、BiConsumer、Supplier 对象并缓存，之后的复制只是接口调用，可以被JIT内联。
+ * </p>
+ * 与 hutool 的行为保持一致：
+ * <ul>
+ *     <li>按属性名匹配，setter 可以有返回值（@Accessors(chain = true)），null 值也会复制</li>
+ *     <li>类型不兼容的同名属性（如 Long -> String）使用 hutool 的类型转换</li>
+ *     <li>Map、没有公开无参构造的类、无法生成访问器的情况，整体退回 hutool</li>
+ * </ul>
+ */
+public final class BeanCopier<S, T> {
+
+    private static final ClassValue<Map<Class<?>, BeanCopier<?, ?>>> CACHE = new ClassValue<Map<Class<?>, BeanCopier<?, ?>>>() {
+        @Override
+        protected Map<Class<?>, BeanCopier<?, ?>> computeValue(Class<?> type) {
+            return new ConcurrentHashMap<>();
+        }
+    };
+
+    private final Class<T> targetType;
+    // 目标对象的构造器，为null时退回 hutool
+    private final Supplier<T> constructor;
+    private final Property[] properties;
+
+    private BeanCopier(Class<T> targetType, Supplier<T> constructor, Property[] properties) {
+        this.targetType = targetType;
+        this.constructor = constructor;
+        this.properties = properties;
+    }
+
+    /**
+     * 获取（原类型，目标类型）对应的复制器
+     */
+    @SuppressWarnings("unchecked")
+    public static <S, T> BeanCopier<S, T> of(Class<S> sourceType, Class<T> targetType) {
+        return (BeanCopier<S, T>) CACHE.get(sourceType).computeIfAbsent(targetType, t -> create(sourceType, targetType));
+    }
+
+    /**
+     * 创建目标对象并复制属性
+     *
+     * @param source 原对象，不能为null
+     * @return 目标对象
+     */
+    public T copy(S source) {
+        if (constructor == null) {
+            return BeanUtil.toBean(source, targetType);
+        }
+        T target = constructor.get();
+        for (Property property : properties) {
+            property.copy(source, target);
+        }
+        return target;
+    }
+
+    /**
+     * 批量复制，列表中的元素可以为null
+     */
+    public List<T> copyList(List<? extends S> sources) {
+        List<T> targets = new ArrayList<>(sources.size());
+        for (S source : sources) {
+            targets.add(source == null ? null : copy(source));
+        }
+        return targets;
+    }
+
+    /*
+    * 解析两个类型的同名属性，生成访问器
+    * */
+    private static <S, T> BeanCopier<S, T> create(Class<S> sourceType, Class<T> targetType) {
+        if (Map.class.isAssignableFrom(sourceType) || Map.class.isAssignableFrom(targetType)) {
+            return new BeanCopier<>(targetType, null, null);
+        }
+        try {
+            Supplier<T> constructor = constructorOf(targetType);
+            if (constructor == null) {
+                return new BeanCopier<>(targetType, null, null);
+            }
+            Map<String, Method> getters = getters(sourceType);
+            List<Property> properties = new ArrayList<>();
+            for (Method setter : targetType.getMethods()) {
+                String name = propertyName(setter, "set", 1);
+                Method getter = name == null ? null : getters.get(name);
+                if (getter != null) {
+                    properties.add(new Property(getterOf(getter), setterOf(setter), setter.getParameterTypes()[0],
+                            !wrap(setter.getParameterTypes()[0]).isAssignableFrom(wrap(getter.getReturnType()))));
+                }
+            }
+            return new BeanCopier<>(targetType, constructor, properties.toArray(new Property[0]));
+        } catch (Throwable e) {
+            // 例如类不是public、运行环境不允许定义隐藏类，退回 hutool
+            return new BeanCopier<>(targetType, null, null);
+        }
+    }
+
+    private static Map<String, Method> getters(Class<?> type) {
+        Map<String, Method> getters = new HashMap<>();
+        for (Method method : type.getMethods()) {
+            if (method.getDeclaringClass() == Object.class || method.getReturnType() == void.class) {
+                continue;
+            }
+            String name = propertyName(method, "get", 0);
+            if (name == null && method.getReturnType() == boolean.class) {
+                name = propertyName(method, "is", 0);
+            }
+            if (name != null) {
+                getters.put(name, method);
+            }
+        }
+        return getters;
+    }
+
+    private static String propertyName(Method method, String prefix, int parameterCount) {
+        String name = method.getName();
+        if (Modifier.isStatic(method.getModifiers()) || method.isBridge() || method.getParameterCount() != parameterCount
+                || name.length() <= prefix.length() || !name.startsWith(prefix)) {
+            return null;
+        }
+        return Character.toLowerCase(name.charAt(prefix.length())) + name.substring(prefix.length() + 1);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> Supplier<T> constructorOf(Class<T> type) throws Throwable {
+        if (Modifier.isAbstract(type.getModifiers())) {
+            return null;
+        }
+        Constructor<T> constructor;
+        try {
+            constructor = type.getConstructor();
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+        MethodHandles.Lookup lookup = lookupFor(type);
+        MethodHandle handle = lookup.unreflectConstructor(constructor);
+        CallSite site = LambdaMetafactory.metafactory(lookup, "get", MethodType.methodType(Supplier.class),
+                MethodType.methodType(Object.class), handle, MethodType.methodType(type));
+        return (Supplier<T>) site.getTarget().invoke();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Function<Object, Object> getterOf(Method getter) throws Throwable {
+        MethodHandles.Lookup lookup = lookupFor(getter.getDeclaringClass());
+        MethodHandle handle = lookup.unreflect(getter);
+        CallSite site = LambdaMetafactory.metafactory(lookup, "apply", MethodType.methodType(Function.class),
+                MethodType.methodType(Object.class, Object.class), handle,
+                MethodType.methodType(wrap(getter.getReturnType()), getter.getDeclaringClass()));
+        return (Function<Object, Object>) site.getTarget().invoke();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static BiConsumer<Object, Object> setterOf(Method setter) throws Throwable {
+        MethodHandles.Lookup lookup = lookupFor(setter.getDeclaringClass());
+        MethodHandle handle = lookup.unreflect(setter);
+        // setter 的返回值（链式调用返回this）被丢弃
+        CallSite site = LambdaMetafactory.metafactory(lookup, "accept", MethodType.methodType(BiConsumer.class),
+                MethodType.methodType(void.class, Object.class, Object.class), handle,
+                MethodType.methodType(void.class, setter.getDeclaringClass(), wrap(setter.getParameterTypes()[0])));
+        return (BiConsumer<Object, Object>) site.getTarget().invoke();
+    }
+
+    /*
+    * 使用bean类自己的Lookup，生成的lambda类与bean类位于同一个类加载器，也可以访问非public的bean类
+    * */
+    private static MethodHandles.Lookup lookupFor(Class<?> type) throws IllegalAccessException {
+        return MethodHandles.privateLookupIn(type, MethodHandles.lookup());
+    }
+
+    private static Class<?> wrap(Class<?> type) {
+        return MethodType.methodType(type).wrap().returnType();
+    }
+
+    /*
+    * 一个同名属性的复制
+    * */
+    private static final class Property {
+        private final Function<Object, Object> getter;
+        private final BiConsumer<Object, Object> setter;
+        private final Class<?> targetType;
+        private final boolean primitive;
+        private final boolean convert;
+
+        private Property(Function<Object, Object> getter, BiConsumer<Object, Object> setter, Class<?> targetType, boolean convert) {
+            this.getter = getter;
+            this.setter = setter;
+            this.targetType = targetType;
+            this.primitive = targetType.isPrimitive();
+            this.convert = convert;
+        }
+
+        private void copy(Object source, Object target) {
+            Object value = getter.apply(source);
+            if (value != null && convert) {
+                value = cn.hutool.core.convert.Convert.convertQuietly(targetType, value, null);
+            }
+            // 基本类型的属性无法设置为null，保留默认值
+            if (value == null && primitive) {
+                return;
+            }
+            setter.accept(target, value);
+        }
+    }
+}
@@ -2,11 +2,15 @@ package com.hmall.common.utils;
 
 import cn.hutool.core.bean.BeanUtil;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.stream.Collectors;
 
 /**
  * 继承自 hutool 的BeanUtil，增加了bean转换时自定义转换器的功能
+ * <p>
+ * copyBean、copyList 使用 {@link BeanCopier}，按类型缓存生成的访问器，不再每次反射
+ * </p>
  */
 public class BeanUtils extends BeanUtil {
 
@@ -40,14 +44,24 @@ public class BeanUtils extends BeanUtil {
         if (source == null) {
             return null;
         }
-        return toBean(source, clazz);
+        return copier(source, clazz).copy(source);
     }
 
     public static <R, T> List<T> copyList(List<R> list, Class<T> clazz) {
         if (list == null || list.size() == 0) {
             return CollUtils.emptyList();
         }
-        return copyToList(list, clazz);
+        // 列表中的元素类型通常相同，只查找一次复制器
+        R first = list.get(0);
+        if (first == null) {
+            return copyToList(list, clazz);
+        }
+        BeanCopier<R, T> copier = copier(first, clazz);
+        List<T> result = new ArrayList<>(list.size());
+        for (R r : list) {
+            result.add(r == null ? null : r.getClass() == first.getClass() ? copier.copy(r) : copyBean(r, clazz));
+        }
+        return result;
     }
 
     public static <R, T> List<T> copyList(List<R> list, Class<T> clazz, Convert<R, T> convert) {
@@ -56,4 +70,9 @@ public class BeanUtils extends BeanUtil {
         }
         return list.stream().map(r -> copyBean(r, clazz, convert)).collect(Collectors.toList());
     }
+
+    @SuppressWarnings("unchecked")
+    private static <R, T> BeanCopier<R, T> copier(R source, Class<T> clazz) {
+        return BeanCopier.of((Class<R>) source.getClass(), clazz);
+    }
 }
\ No newline at end of file
@@ -0,0 +1,32 @@
+package com.hmall.common.utils;
+
+import org.springframework.core.task.TaskDecorator;
+
+/**
+ * 把提交任务的线程中的登录用户传递到线程池的工作线程中
+ * <p>
+ * UserContext 基于 ThreadLocal，提交到线程池的任务默认拿不到当前用户，
+ * 任务中通过 Feign 调用其他服务时也就不会带上 user-info 请求头。
+ * 线程池设置本装饰器后，任务执行前设置用户，执行后清除，避免工作线程复用时串号。
+ * </p>
+ */
+public class UserContextTaskDecorator implements TaskDecorator {
+
+    @Override
+    public Runnable decorate(Runnable runnable) {
+        Long userId = UserContext.getUser();
+        return () -> {
+            Long previous = UserContext.getUser();
+            UserContext.setUser(userId);
+            try {
+                runnable.run();
+            } finally {
+                if (previous == null) {
+                    UserContext.removeUser();
+                } else {
+                    UserContext.setUser(previous);
+                }
+            }
+        };
+    }
+}
@@ -0,0 +1,370 @@
+package com.hmall.common.utils;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.io.InterruptedIOException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * 简单的预写日志（WAL），用于在内存中修改数据、异步落库之前，先把修改持久化到本地磁盘
+ * <p>
+ * 日志按段存储，文件名为 {name}-{段内第一条记录的序号}.log，每条记录一行：序号|CRC32|内容。
+ * 调用方把数据落库之后调用 {@link #checkpoint(long)}，被检查点完全覆盖的旧段会被删除。
+ * 进程重启后通过 {@link #readFrom(long)} 读取检查点之后的记录，重放到数据库中。
+ * </p>
+ * 注意：
+ * <ul>
+ *     <li>记录内容不能包含换行符</li>
+ *     <li>进程崩溃时最后一条记录可能只写了一半，读取时遇到CRC校验失败的记录就停止</li>
+ *     <li>每次启动都会新建一个段，不会在可能已经损坏的段尾部继续追加</li>
+ *     <li>刷盘采用组提交：{@link #write(String)} 只写入文件，{@link #sync(long)} 等待刷盘，
+ *     同时等待的多个线程中只有一个调用 force，一次刷盘覆盖期间写入的所有记录</li>
+ * </ul>
+ */
+public class WriteAheadLog implements Closeable {
+
+    private static final String SUFFIX = ".log";
+
+    private final Path dir;
+    private final String name;
+    private final boolean fsync;
+    private final Path checkpointFile;
+    // 段文件：段内第一条记录的序号 -> 文件
+    private final TreeMap<Long, Path> segments = new TreeMap<>();
+    private FileChannel current;
+    private long currentFirstSeq;
+    private long nextSeq;
+    private long checkpoint;
+    // 组提交：已经刷盘的最大序号，以及是否有线程正在刷盘，由 syncLock 保护
+    private final Object syncLock = new Object();
+    private long durableSeq;
+    private boolean syncing;
+
+    /**
+     * 打开或创建预写日志
+     *
+     * @param dir   日志目录
+     * @param name  日志名称，同一个目录下可以有多个不同名称的日志
+     * @param fsync 追加后是否等待刷盘，关闭后性能更好，但机器掉电时可能丢失最近的记录
+     * @throws IOException 目录无法创建或日志无法读取
+     */
+    public WriteAheadLog(Path dir, String name, boolean fsync) throws IOException {
+        this.dir = dir;
+        this.name = name;
+        this.fsync = fsync;
+        this.checkpointFile = dir.resolve(name + ".checkpoint");
+        Files.createDirectories(dir);
+        // 1.读取检查点
+        if (Files.exists(checkpointFile)) {
+            String text = new String(Files.readAllBytes(checkpointFile), StandardCharsets.UTF_8).trim();
+            checkpoint = text.isEmpty() ? 0 : Long.parseLong(text);
+        }
+        // 2.扫描已有的段，找到最大的序号
+        try (Stream<Path> files = Files.list(dir)) {
+            files.forEach(file -> {
+                Long firstSeq = parseFirstSeq(file);
+                if (firstSeq != null) {
+                    segments.put(firstSeq, file);
+                }
+            });
+        }
+        long lastSeq = checkpoint;
+        for (Path segment : segments.values()) {
+            List<Entry> entries = readSegment(segment);
+            if (!entries.isEmpty()) {
+                lastSeq = Math.max(lastSeq, entries.get(entries.size() - 1).getSeq());
+            }
+        }
+        this.nextSeq = lastSeq + 1;
+        this.durableSeq = lastSeq;
+        // 3.新建一个段用于追加
+        openSegment();
+    }
+
+    /**
+     * 追加一条记录并等待刷盘，相当于 {@link #write(String)} 之后调用 {@link #sync(long)}
+     *
+     * @param payload 记录内容，不能包含换行符
+     * @return 记录的序号
+     * @throws IOException 写入失败，此时记录不一定已经持久化，调用方应当放弃本次修改
+     */
+    public long append(String payload) throws IOException {
+        long seq = write(payload);
+        sync(seq);
+        return seq;
+    }
+
+    /**
+     * 写入一条记录，不等待刷盘。调用方可以先释放自己的锁，再调用 {@link #sync(long)} 等待刷盘
+     *
+     * @param payload 记录内容，不能包含换行符
+     * @return 记录的序号
+     * @throws IOException 写入失败
+     */
+    public synchronized long write(String payload) throws IOException {
+        if (payload.indexOf('\n') >= 0 || payload.indexOf('\r') >= 0) {
+            throw new IllegalArgumentException("WAL记录不能包含换行符");
+        }
+        long seq = nextSeq;
+        byte[] line = (seq + "|" + crc(payload) + "|" + payload + "\n").getBytes(StandardCharsets.UTF_8);
+        ByteBuffer buffer = ByteBuffer.wrap(line);
+        while (buffer.hasRemaining()) {
+            current.write(buffer);
+        }
+        nextSeq++;
+        return seq;
+    }
+
+    /**
+     * 等待序号不大于seq的记录都已经刷盘，没有开启fsync时直接返回
+     * <p>
+     * 没有线程在刷盘时，当前线程负责刷盘，一次 force 覆盖此前写入的所有记录；
+     * 否则等待正在进行的刷盘结束，如果仍未覆盖seq，再由其中一个等待的线程发起下一次刷盘。
+     * </p>
+     *
+     * @param seq {@link #write(String)} 返回的序号
+     * @throws IOException 刷盘失败或等待被中断，此时记录不一定已经持久化
+     */
+    public void sync(long seq) throws IOException {
+        if (!fsync) {
+            return;
+        }
+        // 1.已经刷盘或者有其他线程正在刷盘时等待
+        synchronized (syncLock) {
+            while (durableSeq < seq && syncing) {
+                try {
+                    syncLock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("等待WAL刷盘时被中断");
+                }
+            }
+            if (durableSeq >= seq) {
+                return;
+            }
+            syncing = true;
+        }
+        // 2.由当前线程刷盘，覆盖到目前为止写入的所有记录
+        long target;
+        FileChannel channel;
+        synchronized (this) {
+            target = nextSeq - 1;
+            channel = current;
+        }
+        IOException error = null;
+        try {
+            channel.force(false);
+        } catch (ClosedChannelException e) {
+            // 段已经被 roll 或 close 关闭，关闭前已经刷过盘
+        } catch (IOException e) {
+            error = e;
+        }
+        // 3.唤醒等待的线程
+        synchronized (syncLock) {
+            syncing = false;
+            if (error == null) {
+                durableSeq = Math.max(durableSeq, target);
+            }
+            syncLock.notifyAll();
+        }
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    /**
+     * 结束当前段并开启新段，之后追加的记录都写入新段
+     *
+     * @return 已经结束的段中最大的序号，即当前已分配的最大序号
+     * @throws IOException 新段创建失败
+     */
+    public synchronized long roll() throws IOException {
+        long lastSeq = nextSeq - 1;
+        if (lastSeq >= currentFirstSeq) {
+            // 当前段非空才需要切换，关闭前刷盘，返回的序号之前的记录都已经持久化
+            forceAll();
+            current.close();
+            openSegment();
+        }
+        return lastSeq;
+    }
+
+    /**
+     * 记录检查点：序号不大于seq的记录都已经落库，不再需要重放
+     *
+     * @param seq 已落库的最大序号
+     * @throws IOException 检查点写入失败
+     */
+    public synchronized void checkpoint(long seq) throws IOException {
+        if (seq <= checkpoint) {
+            return;
+        }
+        // 1.先写临时文件再原子替换，避免检查点文件只写了一半
+        Path tmp = dir.resolve(name + ".checkpoint.tmp");
+        Files.write(tmp, String.valueOf(seq).getBytes(StandardCharsets.UTF_8));
+        Files.move(tmp, checkpointFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        checkpoint = seq;
+        // 2.删除完全被检查点覆盖的旧段：下一个段的第一个序号减1，就是本段的最大序号
+        List<Long> firstSeqs = new ArrayList<>(segments.keySet());
+        for (int i = 0; i < firstSeqs.size() - 1; i++) {
+            long firstSeq = firstSeqs.get(i);
+            if (firstSeq == currentFirstSeq || firstSeqs.get(i + 1) - 1 > seq) {
+                break;
+            }
+            Files.deleteIfExists(segments.remove(firstSeq));
+        }
+    }
+
+    /**
+     * 读取序号大于afterSeq的所有记录，用于启动时重放
+     *
+     * @param afterSeq 已经落库的最大序号
+     * @return 按序号排列的记录
+     * @throws IOException 日志读取失败
+     */
+    public synchronized List<Entry> readFrom(long afterSeq) throws IOException {
+        List<Entry> result = new ArrayList<>();
+        for (Path segment : segments.values()) {
+            for (Entry entry : readSegment(segment)) {
+                if (entry.getSeq() > afterSeq) {
+                    result.add(entry);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 保证之后分配的序号都大于seq，例如检查点保存在数据库中，而本地日志目录被清空的情况
+     */
+    public synchronized void ensureSeqAfter(long seq) throws IOException {
+        if (nextSeq <= seq) {
+            nextSeq = seq + 1;
+            // 当前段的文件名必须与其中第一条记录的序号一致
+            if (current.size() == 0) {
+                current.close();
+                Files.deleteIfExists(segments.remove(currentFirstSeq));
+                openSegment();
+            } else {
+                roll();
+            }
+        }
+    }
+
+    /**
+     * 本地记录的检查点
+     */
+    public synchronized long getCheckpoint() {
+        return checkpoint;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        forceAll();
+        current.close();
+    }
+
+    /*
+    * 把当前段刷盘，并唤醒等待这些记录的线程，调用时必须持有this的锁
+    * */
+    private void forceAll() throws IOException {
+        if (!fsync) {
+            return;
+        }
+        current.force(false);
+        synchronized (syncLock) {
+            durableSeq = Math.max(durableSeq, nextSeq - 1);
+            syncLock.notifyAll();
+        }
+    }
+
+    private void openSegment() throws IOException {
+        currentFirstSeq = nextSeq;
+        Path file = dir.resolve(name + "-" + currentFirstSeq + SUFFIX);
+        current = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        segments.put(currentFirstSeq, file);
+    }
+
+    private Long parseFirstSeq(Path file) {
+        String fileName = file.getFileName().toString();
+        String prefix = name + "-";
+        if (!fileName.startsWith(prefix) || !fileName.endsWith(SUFFIX)) {
+            return null;
+        }
+        try {
+            return Long.parseLong(fileName.substring(prefix.length(), fileName.length() - SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static List<Entry> readSegment(Path segment) throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(segment, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                Entry entry = parseLine(line);
+                if (entry == null) {
+                    // 只写了一半的记录，之后的内容都不可信
+                    break;
+                }
+                entries.add(entry);
+            }
+        }
+        return entries;
+    }
+
+    private static Entry parseLine(String line) {
+        int first = line.indexOf('|');
+        int second = first < 0 ? -1 : line.indexOf('|', first + 1);
+        if (second < 0) {
+            return null;
+        }
+        try {
+            long seq = Long.parseLong(line.substring(0, first));
+            long crc = Long.parseLong(line.substring(first + 1, second));
+            String payload = line.substring(second + 1);
+            return crc == crc(payload) ? new Entry(seq, payload) : null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static long crc(String payload) {
+        CRC32 crc32 = new CRC32();
+        crc32.update(payload.getBytes(StandardCharsets.UTF_8));
+        return crc32.getValue();
+    }
+
+    /**
+     * 日志中的一条记录
+     */
+    @Data
+    @AllArgsConstructor
+    public static class Entry {
+        /**
+         * 序号，单调递增
+         */
+        private long seq;
+        /**
+         * 记录内容
+         */
+        private String payload;
+    }
+}
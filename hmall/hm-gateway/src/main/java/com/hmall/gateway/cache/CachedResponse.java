@@ -0,0 +1,41 @@
+package com.hmall.gateway.cache;
+
+import lombok.Getter;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+
+import java.util.List;
+
+/*
+* 缓存下来的完整响应：状态码、响应头、响应体
+* */
+@Getter
+public class CachedResponse {
+
+    // 这些响应头与具体的某一次传输有关，不能被缓存后重放
+    private static final List<String> EXCLUDED_HEADERS = List.of(
+            HttpHeaders.CONTENT_LENGTH, HttpHeaders.TRANSFER_ENCODING, HttpHeaders.CONNECTION,
+            HttpHeaders.DATE, HttpHeaders.SET_COOKIE, HttpHeaders.ETAG);
+
+    private final HttpStatus status;
+    private final HttpHeaders headers;
+    private final byte[] body;
+    private final String etag;
+
+    public CachedResponse(HttpStatus status, HttpHeaders headers, byte[] body, String etag) {
+        this.status = status;
+        this.headers = copyHeaders(headers);
+        this.body = body;
+        this.etag = etag;
+    }
+
+    private static HttpHeaders copyHeaders(HttpHeaders source) {
+        HttpHeaders headers = new HttpHeaders();
+        source.forEach((name, values) -> {
+            if (EXCLUDED_HEADERS.stream().noneMatch(name::equalsIgnoreCase)) {
+                headers.put(name, List.copyOf(values));
+            }
+        });
+        return HttpHeaders.readOnlyHttpHeaders(headers);
+    }
+}
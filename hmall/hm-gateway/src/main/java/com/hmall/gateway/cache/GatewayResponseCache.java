@@ -0,0 +1,157 @@
+package com.hmall.gateway.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.hmall.gateway.config.ResponseCacheProperties;
+import com.hmall.gateway.utils.PathPatternTrie;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.cloud.context.scope.refresh.RefreshScopeRefreshedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+* 网关响应缓存
+* 作用：
+*  1. 按 ResponseCacheProperties 中的策略缓存只读接口的响应，例如 GET /items/{id}、GET /search/list
+*  2. 每个策略有独立的过期时间，整个缓存按响应体字节数限制大小
+*  3. 写接口（例如 PUT /items）成功后，按策略整体失效
+* 注意：
+*  1. 缓存的 key 为 "策略id|路径?排序后的查询参数"，同一个策略的缓存可以按前缀一起失效
+*  2. 只有经过网关的写请求才能触发失效，服务之间的 Feign 调用（例如扣减库存）依赖过期时间兜底
+*  3. 多个网关节点的缓存互相独立，同样依赖过期时间兜底
+* */
+@Slf4j
+@Component
+public class GatewayResponseCache {
+
+    private static final String KEY_SEPARATOR = "|";
+
+    private final ResponseCacheProperties properties;
+    private final Cache<String, Entry> cache;
+    private volatile List<CompiledPolicy> policies = List.of();
+
+    public GatewayResponseCache(ResponseCacheProperties properties, ObjectProvider<MeterRegistry> registry) {
+        this.properties = properties;
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(properties.getMaximumBytes())
+                .weigher((String key, Entry entry) -> entry.response.getBody().length + key.length())
+                .expireAfter(new EntryExpiry())
+                .recordStats()
+                .build();
+        registry.ifAvailable(r -> CaffeineCacheMetrics.monitor(r, cache, "gateway.response"));
+    }
+
+    @PostConstruct
+    public void compile() {
+        List<CompiledPolicy> compiled = new ArrayList<>();
+        for (ResponseCacheProperties.Policy policy : properties.getPolicies()) {
+            compiled.add(new CompiledPolicy(policy.getId(), policy.getTtl().toNanos(),
+                    new PathPatternTrie(policy.getPaths()), new PathPatternTrie(policy.getEvictPaths())));
+        }
+        this.policies = compiled;
+        // 策略变化后旧的缓存可能不再适用，直接清空
+        cache.invalidateAll();
+        log.info("网关响应缓存策略已加载：{}条", compiled.size());
+    }
+
+    @EventListener(RefreshScopeRefreshedEvent.class)
+    public void onRefresh() {
+        compile();
+    }
+
+    public boolean isEnabled() {
+        return properties.isEnabled();
+    }
+
+    /**
+     * 查找GET请求路径命中的缓存策略
+     *
+     * @param path 请求路径
+     * @return 命中的策略，未命中时返回null
+     */
+    public CompiledPolicy findPolicy(String path) {
+        for (CompiledPolicy policy : policies) {
+            if (policy.paths.matches(path)) {
+                return policy;
+            }
+        }
+        return null;
+    }
+
+    public String key(CompiledPolicy policy, String pathAndQuery) {
+        return policy.id + KEY_SEPARATOR + pathAndQuery;
+    }
+
+    public CachedResponse get(String key) {
+        Entry entry = cache.getIfPresent(key);
+        return entry == null ? null : entry.response;
+    }
+
+    public void put(CompiledPolicy policy, String key, CachedResponse response) {
+        cache.put(key, new Entry(response, policy.ttlNanos));
+    }
+
+    /**
+     * 写请求成功后，失效所有 evictPaths 命中该路径的策略下的缓存
+     *
+     * @param path 写请求的路径
+     */
+    public void evictByWritePath(String path) {
+        for (CompiledPolicy policy : policies) {
+            if (policy.evictPaths.matches(path)) {
+                String prefix = policy.id + KEY_SEPARATOR;
+                cache.asMap().keySet().removeIf(key -> key.startsWith(prefix));
+                log.debug("写请求{}触发响应缓存失效，策略：{}", path, policy.id);
+            }
+        }
+    }
+
+    public static class CompiledPolicy {
+        private final String id;
+        private final long ttlNanos;
+        private final PathPatternTrie paths;
+        private final PathPatternTrie evictPaths;
+
+        private CompiledPolicy(String id, long ttlNanos, PathPatternTrie paths, PathPatternTrie evictPaths) {
+            this.id = id;
+            this.ttlNanos = ttlNanos;
+            this.paths = paths;
+            this.evictPaths = evictPaths;
+        }
+    }
+
+    private static class Entry {
+        private final CachedResponse response;
+        private final long ttlNanos;
+
+        private Entry(CachedResponse response, long ttlNanos) {
+            this.response = response;
+            this.ttlNanos = ttlNanos;
+        }
+    }
+
+    private static class EntryExpiry implements Expiry<String, Entry> {
+        @Override
+        public long expireAfterCreate(String key, Entry value, long currentTime) {
+            return value.ttlNanos;
+        }
+
+        @Override
+        public long expireAfterUpdate(String key, Entry value, long currentTime, long currentDuration) {
+            return value.ttlNanos;
+        }
+
+        @Override
+        public long expireAfterRead(String key, Entry value, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.hmall.gateway.cache;
+
+import org.reactivestreams.Publisher;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.http.server.reactive.ServerHttpResponseDecorator;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.function.Function;
+
+/*
+* 捕获响应体的装饰器
+* 作用：
+*  1. 把下游服务返回的响应体聚合为完整的 byte[]，交给 handler 处理（例如放入缓存）
+*  2. handler 返回最终要写出的字节，在写出之前还可以修改响应头、状态码（例如设置ETag、改为304）
+* 注意：
+*  1. 只适合响应体不大的接口，响应体会完整地保存在内存中
+* */
+public class ResponseCaptureDecorator extends ServerHttpResponseDecorator {
+
+    private final Function<byte[], byte[]> handler;
+
+    public ResponseCaptureDecorator(ServerHttpResponse delegate, Function<byte[], byte[]> handler) {
+        super(delegate);
+        this.handler = handler;
+    }
+
+    @Override
+    public Mono<Void> writeWith(Publisher<? extends DataBuffer> body) {
+        return DataBufferUtils.join(Flux.from(body))
+                .defaultIfEmpty(bufferFactory().wrap(new byte[0]))
+                .flatMap(joined -> {
+                    byte[] bytes = new byte[joined.readableByteCount()];
+                    joined.read(bytes);
+                    DataBufferUtils.release(joined);
+                    byte[] output = handler.apply(bytes);
+                    if (output.length == 0) {
+                        return getDelegate().setComplete();
+                    }
+                    getDelegate().getHeaders().setContentLength(output.length);
+                    return getDelegate().writeWith(Mono.just(bufferFactory().wrap(output)));
+                });
+    }
+
+    @Override
+    public Mono<Void> writeAndFlushWith(Publisher<? extends Publisher<? extends DataBuffer>> body) {
+        return writeWith(Flux.from(body).flatMapSequential(p -> p));
+    }
+
+    /**
+     * 当前响应的状态码，未设置时视为200
+     */
+    public HttpStatus currentStatus() {
+        HttpStatus status = getDelegate().getStatusCode();
+        return status == null ? HttpStatus.OK : status;
+    }
+}
@@ -0,0 +1,112 @@
+package com.hmall.gateway.cache;
+
+import com.hmall.gateway.config.VerifyProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/*
+* 响应式的token校验
+* 作用：
+*  1. RS256 验签是阻塞的CPU密集操作，在 Netty 事件循环线程中执行时，突发的新会话会拖慢所有请求的IO
+*  2. OFFLOAD 模式下，验签在独立的有界线程池中执行，事件循环线程只负责查缓存
+* 流程：
+*  1. 先查询 VerifiedTokenCache，命中则直接在当前线程返回，已缓存的请求不受验签高峰影响
+*  2. 未命中时，INLINE 模式在当前线程验签；OFFLOAD 模式切换到验签线程池
+*  3. 正在验签和等待验签的任务总数超过 concurrency + queueCapacity 时，直接拒绝（RejectedExecutionException），
+*     由过滤器返回503，形成背压
+* 注意：
+*  1. boundedElastic 的队列上限是每个工作线程各自的，总的等待数可以达到 concurrency * queueCapacity，
+*     所以在切换线程之前用一个信号量限制总数，任务结束、出错或者被取消时归还
+* 指标：
+*  1. gateway.auth.event-loop.blocking：事件循环线程被验签阻塞的时间（INLINE模式）
+*  2. gateway.auth.verify：验签耗时，按mode区分
+*  3. gateway.auth.verify.queue：OFFLOAD模式下任务在队列中等待的时间
+*  4. gateway.auth.verify.rejected：队列已满被拒绝的次数
+* */
+@Component
+public class TokenVerifier implements DisposableBean {
+
+    private final VerifiedTokenCache tokenCache;
+    private final VerifyProperties properties;
+    private final Scheduler scheduler;
+    // 正在验签和等待验签的任务总数
+    private final Semaphore permits;
+    private final Timer blockingTimer;
+    private final Timer inlineTimer;
+    private final Timer offloadTimer;
+    private final Timer queueTimer;
+    private final Counter rejectedCounter;
+
+    public TokenVerifier(VerifiedTokenCache tokenCache, VerifyProperties properties,
+                         ObjectProvider<MeterRegistry> registryProvider) {
+        this.tokenCache = tokenCache;
+        this.properties = properties;
+        this.scheduler = Schedulers.newBoundedElastic(
+                properties.getConcurrency(), properties.getQueueCapacity(), "jwt-verify");
+        this.permits = new Semaphore(properties.getConcurrency() + properties.getQueueCapacity());
+        MeterRegistry registry = registryProvider.getIfAvailable(() -> Metrics.globalRegistry);
+        this.blockingTimer = Timer.builder("gateway.auth.event-loop.blocking")
+                .description("事件循环线程被验签阻塞的时间").register(registry);
+        this.inlineTimer = Timer.builder("gateway.auth.verify").tag("mode", "inline").register(registry);
+        this.offloadTimer = Timer.builder("gateway.auth.verify").tag("mode", "offload").register(registry);
+        this.queueTimer = Timer.builder("gateway.auth.verify.queue")
+                .description("验签任务在队列中等待的时间").register(registry);
+        this.rejectedCounter = Counter.builder("gateway.auth.verify.rejected")
+                .description("验签队列已满被拒绝的次数").register(registry);
+    }
+
+    /**
+     * 校验token，返回用户id
+     *
+     * @param token token
+     * @return 用户id；token无效时以 UnauthorizedException 结束，验签队列已满时以 RejectedExecutionException 结束
+     */
+    public Mono<Long> verify(String token) {
+        // 1.命中缓存，直接返回
+        Long cached = tokenCache.getIfPresent(token);
+        if (cached != null) {
+            return Mono.just(cached);
+        }
+        // 2.INLINE 模式，在当前线程验签
+        if (properties.getMode() == VerifyProperties.Mode.INLINE) {
+            return Mono.fromCallable(() -> {
+                long start = System.nanoTime();
+                try {
+                    return tokenCache.verify(token);
+                } finally {
+                    long elapsed = System.nanoTime() - start;
+                    inlineTimer.record(elapsed, TimeUnit.NANOSECONDS);
+                    blockingTimer.record(elapsed, TimeUnit.NANOSECONDS);
+                }
+            });
+        }
+        // 3.OFFLOAD 模式，占用一个名额后切换到验签线程池
+        return Mono.defer(() -> {
+            if (!permits.tryAcquire()) {
+                return Mono.<Long>error(new RejectedExecutionException("验签队列已满"));
+            }
+            long submitted = System.nanoTime();
+            return Mono.fromCallable(() -> {
+                queueTimer.record(System.nanoTime() - submitted, TimeUnit.NANOSECONDS);
+                return offloadTimer.recordCallable(() -> tokenCache.verify(token));
+            }).subscribeOn(scheduler).doFinally(signal -> permits.release());
+        }).doOnError(RejectedExecutionException.class, e -> rejectedCounter.increment());
+    }
+
+    @Override
+    public void destroy() {
+        scheduler.dispose();
+    }
+}
@@ -0,0 +1,123 @@
+package com.hmall.gateway.cache;
+
+import cn.hutool.crypto.digest.DigestUtil;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.hmall.gateway.config.TokenCacheProperties;
+import com.hmall.gateway.utils.JwtTool;
+import com.hmall.gateway.utils.VerifiedToken;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+
+/*
+* 校验通过的token缓存
+* 作用：
+*  1. JwtTool.parseToken 每次都要做 RS256 验签，是网关中最耗CPU的操作
+*  2. 同一个会话的请求会重复携带同一个token，验签一次之后就可以直接复用结果
+* 注意：
+*  1. key 是 token 的 SHA-256 摘要，避免在内存中保存完整的token
+*  2. 每个条目在 token 自身的 exp 时刻过期，过期的 token 不会因为缓存而继续有效
+*  3. 只缓存校验通过的结果，无效token每次都会重新校验并抛出异常
+* */
+@Component
+public class VerifiedTokenCache {
+
+    private final JwtTool jwtTool;
+    private final TokenCacheProperties properties;
+    private final Cache<String, VerifiedToken> cache;
+
+    public VerifiedTokenCache(JwtTool jwtTool, TokenCacheProperties properties, ObjectProvider<MeterRegistry> registry) {
+        this.jwtTool = jwtTool;
+        this.properties = properties;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(properties.getMaximumSize())
+                .expireAfter(new TokenExpiry())
+                .recordStats()
+                .build();
+        // 暴露命中率等指标：cache.gets{cache=gateway.token,result=hit/miss}
+        registry.ifAvailable(r -> CaffeineCacheMetrics.monitor(r, cache, "gateway.token"));
+    }
+
+    /**
+     * 解析token，命中缓存时跳过验签
+     *
+     * @param token token
+     * @return 用户id
+     */
+    public Long parseToken(String token) {
+        Long userId = getIfPresent(token);
+        return userId != null ? userId : verify(token);
+    }
+
+    /**
+     * 只查询缓存，不做验签
+     *
+     * @param token token
+     * @return 缓存中的用户id，未命中时返回null
+     */
+    public Long getIfPresent(String token) {
+        if (!properties.isEnabled() || token == null) {
+            return null;
+        }
+        VerifiedToken verified = cache.getIfPresent(DigestUtil.sha256Hex(token));
+        if (verified == null || isExpired(verified)) {
+            return null;
+        }
+        return verified.getUserId();
+    }
+
+    /**
+     * 验签并把结果放入缓存，这是一个CPU密集的操作
+     *
+     * @param token token
+     * @return 用户id
+     */
+    public Long verify(String token) {
+        VerifiedToken verified = jwtTool.parseVerifiedToken(token);
+        if (properties.isEnabled()) {
+            cache.put(DigestUtil.sha256Hex(token), verified);
+        }
+        return verified.getUserId();
+    }
+
+    /**
+     * 清空缓存，例如轮换密钥后需要让旧token重新验签
+     */
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    private static boolean isExpired(VerifiedToken token) {
+        // Caffeine 的过期清理是惰性的，读取时再按 exp 兜底判断一次
+        return token.getExpiresAt() != null && token.getExpiresAt() <= System.currentTimeMillis();
+    }
+
+    /*
+    * 按 token 的 exp 计算每个条目的存活时间
+    * */
+    private class TokenExpiry implements Expiry<String, VerifiedToken> {
+        @Override
+        public long expireAfterCreate(String key, VerifiedToken value, long currentTime) {
+            if (value.getExpiresAt() == null) {
+                return properties.getDefaultTtl().toNanos();
+            }
+            long ttlMillis = value.getExpiresAt() - System.currentTimeMillis();
+            return TimeUnit.MILLISECONDS.toNanos(Math.max(ttlMillis, 0));
+        }
+
+        @Override
+        public long expireAfterUpdate(String key, VerifiedToken value, long currentTime, long currentDuration) {
+            return expireAfterCreate(key, value, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(String key, VerifiedToken value, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
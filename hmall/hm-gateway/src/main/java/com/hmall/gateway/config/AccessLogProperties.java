@@ -0,0 +1,23 @@
+package com.hmall.gateway.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.cloud.context.config.annotation.RefreshScope;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+@Data
+@Component
+@RefreshScope
+@ConfigurationProperties(prefix = "hm.gateway.access-log")
+public class AccessLogProperties {
+    /**
+     * 单条请求日志的采样率，0 表示不打印单条请求日志，1 表示每个请求都打印
+     */
+    private double sampleRate = 0.01;
+    /**
+     * 汇总日志的输出周期，仅在启动时读取
+     */
+    private Duration summaryInterval = Duration.ofMinutes(1);
+}
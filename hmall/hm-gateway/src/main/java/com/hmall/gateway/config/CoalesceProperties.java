@@ -0,0 +1,34 @@
+package com.hmall.gateway.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.cloud.context.config.annotation.RefreshScope;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+@Data
+@Component
+@RefreshScope
+@ConfigurationProperties(prefix = "hm.gateway.coalesce")
+public class CoalesceProperties {
+    /**
+     * 是否合并相同的并发GET请求
+     */
+    private boolean enabled = true;
+    /**
+     * 需要合并的GET请求路径，Ant风格
+     */
+    private List<String> paths = new ArrayList<>();
+    /**
+     * 参与区分请求的请求头，这些请求头不同的请求不会被合并
+     * 默认不包含 authorization 等区分用户的请求头，否则每个用户的请求都不同，秒杀时几乎无法合并
+     */
+    private List<String> varyHeaders = new ArrayList<>(List.of("accept", "accept-encoding"));
+    /**
+     * 等待合并结果的最长时间，超时后自行转发请求
+     */
+    private Duration maxWait = Duration.ofSeconds(2);
+}
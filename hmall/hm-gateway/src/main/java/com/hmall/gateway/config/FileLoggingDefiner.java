@@ -0,0 +1,20 @@
+package com.hmall.gateway.config;
+
+import ch.qos.logback.core.PropertyDefinerBase;
+import org.springframework.boot.logging.LoggingSystemProperties;
+import org.springframework.util.StringUtils;
+
+/*
+* logback-spring.xml 中的 FILE_LOGGING 变量：是否输出日志文件
+* 作用：
+*  1. 配置了 logging.file.name 或 logging.file.path 时，Spring Boot 在加载 logback 配置之前设置系统属性 LOG_FILE
+*  2. 没有设置时返回 off，logback-spring.xml 不引入文件appender，不会在临时目录中创建日志文件
+* 注意：没有引入 janino，logback 配置中不能使用 <if>，所以用变量选择要引入的配置片段
+* */
+public class FileLoggingDefiner extends PropertyDefinerBase {
+
+    @Override
+    public String getPropertyValue() {
+        return StringUtils.hasText(System.getProperty(LoggingSystemProperties.LOG_FILE)) ? "on" : "off";
+    }
+}
@@ -0,0 +1,73 @@
+package com.hmall.gateway.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.cloud.context.config.annotation.RefreshScope;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+@Data
+@Component
+@RefreshScope
+@ConfigurationProperties(prefix = "hm.gateway.rate-limit")
+public class RateLimitProperties {
+    /**
+     * 是否启用限流
+     */
+    private boolean enabled = true;
+    /**
+     * 限流模式：LOCAL 每个网关节点独立限流；CLUSTER_SHARE 按网关节点数量平分配置的速率
+     */
+    private Mode mode = Mode.LOCAL;
+    /**
+     * CLUSTER_SHARE 模式下，从注册中心刷新网关节点数量的周期，仅在启动时读取
+     */
+    private Duration clusterRefreshInterval = Duration.ofSeconds(10);
+    /**
+     * 最多保存的令牌桶数量，仅在启动时读取
+     */
+    private long maximumBuckets = 100_000;
+    /**
+     * 令牌桶空闲多久之后被回收，仅在启动时读取
+     */
+    private Duration bucketIdleTimeout = Duration.ofMinutes(10);
+    /**
+     * 限流规则，按顺序匹配，请求只受第一个命中的规则限制
+     */
+    private List<Rule> rules = new ArrayList<>();
+
+    @Data
+    public static class Rule {
+        /**
+         * 规则id
+         */
+        private String id;
+        /**
+         * 受限的请求路径，Ant风格
+         */
+        private List<String> paths = new ArrayList<>();
+        /**
+         * 令牌桶容量，即允许的突发请求数
+         */
+        private int capacity = 20;
+        /**
+         * 每秒补充的令牌数
+         */
+        private double refillPerSecond = 10;
+        /**
+         * 令牌桶的维度：USER 按登录用户，未登录时按IP；IP 按客户端IP
+         */
+        private KeyBy keyBy = KeyBy.USER;
+    }
+
+    public enum Mode {
+        LOCAL, CLUSTER_SHARE
+    }
+
+    public enum KeyBy {
+        USER, IP
+    }
+}
@@ -0,0 +1,49 @@
+package com.hmall.gateway.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.cloud.context.config.annotation.RefreshScope;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+@Data
+@Component
+@RefreshScope
+@ConfigurationProperties(prefix = "hm.gateway.response-cache")
+public class ResponseCacheProperties {
+    /**
+     * 是否启用网关响应缓存
+     */
+    private boolean enabled = true;
+    /**
+     * 缓存的最大字节数（按响应体大小计算），仅在启动时读取
+     */
+    private long maximumBytes = 64 * 1024 * 1024;
+    /**
+     * 缓存策略，按顺序匹配，命中第一个策略的GET请求会被缓存
+     */
+    private List<Policy> policies = new ArrayList<>();
+
+    @Data
+    public static class Policy {
+        /**
+         * 策略id，同一个策略的缓存会被一起失效
+         */
+        private String id;
+        /**
+         * 需要缓存的GET请求路径，Ant风格
+         */
+        private List<String> paths = new ArrayList<>();
+        /**
+         * 缓存时长
+         */
+        private Duration ttl = Duration.ofSeconds(30);
+        /**
+         * 非GET请求命中这些路径并成功后，失效本策略下的所有缓存，Ant风格
+         */
+        private List<String> evictPaths = new ArrayList<>();
+    }
+}
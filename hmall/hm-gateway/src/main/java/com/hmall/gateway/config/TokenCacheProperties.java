@@ -0,0 +1,27 @@
+package com.hmall.gateway.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.cloud.context.config.annotation.RefreshScope;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+@Data
+@Component
+@RefreshScope
+@ConfigurationProperties(prefix = "hm.auth.token-cache")
+public class TokenCacheProperties {
+    /**
+     * 是否缓存校验通过的token
+     */
+    private boolean enabled = true;
+    /**
+     * 缓存的最大token数量，仅在启动时读取
+     */
+    private long maximumSize = 100_000;
+    /**
+     * token中没有exp时的缓存时长
+     */
+    private Duration defaultTtl = Duration.ofMinutes(10);
+}
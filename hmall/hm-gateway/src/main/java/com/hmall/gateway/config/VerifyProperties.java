@@ -0,0 +1,29 @@
+package com.hmall.gateway.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.cloud.context.config.annotation.RefreshScope;
+import org.springframework.stereotype.Component;
+
+@Data
+@Component
+@RefreshScope
+@ConfigurationProperties(prefix = "hm.auth.verify")
+public class VerifyProperties {
+    /**
+     * 验签模式：INLINE 在 Netty 事件循环线程中验签，OFFLOAD 在独立的有界线程池中验签
+     */
+    private Mode mode = Mode.OFFLOAD;
+    /**
+     * 验签线程数，即同时进行验签的最大数量，仅在启动时读取
+     */
+    private int concurrency = Runtime.getRuntime().availableProcessors();
+    /**
+     * 等待验签的最大任务数（所有验签线程合计），正在验签和等待验签的任务超过 concurrency + queueCapacity 后直接返回503，仅在启动时读取
+     */
+    private int queueCapacity = 1000;
+
+    public enum Mode {
+        INLINE, OFFLOAD
+    }
+}
@@ -1,8 +1,8 @@
 package com.hmall.gateway.filter;
 
 import com.hmall.common.exception.UnauthorizedException;
-import com.hmall.gateway.config.AuthProperties;
-import com.hmall.gateway.utils.JwtTool;
+import com.hmall.gateway.cache.TokenVerifier;
+import com.hmall.gateway.utils.AuthPathMatcher;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.cloud.gateway.filter.GatewayFilterChain;
@@ -12,20 +12,32 @@ import org.springframework.http.HttpStatus;
 import org.springframework.http.server.reactive.ServerHttpRequest;
 import org.springframework.http.server.reactive.ServerHttpResponse;
 import org.springframework.stereotype.Component;
-import org.springframework.util.AntPathMatcher;
 import org.springframework.web.server.ServerWebExchange;
 import reactor.core.publisher.Mono;
 
+import java.util.concurrent.RejectedExecutionException;
+
 
 @Slf4j
 @Component
 @RequiredArgsConstructor
 public class AuthGlobalFilter implements GlobalFilter, Ordered {
 
-    private final AuthProperties authProperties;
-    private final JwtTool jwtTool;
-    // 用于判断path是否属于命中某个范围
-    private final AntPathMatcher pathMatcher = new AntPathMatcher();
+    /*
+    * 鉴权结果在 exchange 中的属性名
+    * 注意：
+    *  1. 请求日志不再由本过滤器逐条打印，而是由 AccessLogGlobalFilter 读取该属性后汇总、采样输出
+    * */
+    public static final String AUTH_OUTCOME_ATTR = AuthGlobalFilter.class.getName() + ".outcome";
+    /*
+    * 鉴权通过后，用户id在 exchange 中的属性名，供限流等后续过滤器使用
+    * */
+    public static final String USER_ID_ATTR = AuthGlobalFilter.class.getName() + ".userId";
+
+    // 预编译的白名单匹配器
+    private final AuthPathMatcher authPathMatcher;
+    // 带缓存的token校验，同一个token只需要验签一次，验签可在独立线程池中执行
+    private final TokenVerifier tokenVerifier;
 
     /*
     * 控制过滤器的执行顺序，数值越小，优先级越高
@@ -60,55 +72,65 @@ public class AuthGlobalFilter implements GlobalFilter, Ordered {
         String path = exchange.getRequest().getPath().toString();
         if (isExcludedPath(path)) {
             // 2.1 如果在白名单内，直接放行
+            exchange.getAttributes().put(AUTH_OUTCOME_ATTR, AuthOutcome.WHITELISTED);
             return chain.filter(exchange);
         }
         // 2.2 如果不在白名单内，进行下一步
-        log.info("请求路径{}不在白名单中，进行鉴权", path);
         // 3. 判断token是否存在
         String token = exchange.getRequest().getHeaders().getFirst("authorization");
         if (token == null || token.isEmpty()) {
             // 3.1 如果token不存在，返回权限不足的响应，401
-            log.warn("请求路径{}未携带token，拒绝访问", path);
-            ServerHttpResponse response = exchange.getResponse();
-            response.setStatusCode(HttpStatus.UNAUTHORIZED);
-            return response.setComplete();
+            log.debug("请求路径{}未携带token，拒绝访问", path);
+            return reject(exchange, HttpStatus.UNAUTHORIZED, AuthOutcome.MISSING_TOKEN);
         }
         // 3.2 如果存在，进行下一步
-        log.info("请求路径{}携带token，开始验证token有效性", path);
         // 4. 验证token的有效性
         /*
         * 注意：
-        *  1. 这里的parseToken方法会抛出异常，如果token无效，但是并不能被全局异常捕获。
+        *  1. token无效时，verify会以 UnauthorizedException 结束，但是并不能被全局异常捕获。
         *  2. 因为GlobalFilter是在WebFlux的响应式编程模型下运行的,而不是在传统的Servlet模型下运行的
-        *  3. 需要手动捕获异常，如果有异常则手动返回401响应
+        *  3. 需要手动处理异常，如果有异常则手动返回401响应
+        *  4. 验签可能被切换到独立的线程池中执行，线程池排队已满时以 RejectedExecutionException 结束，返回503
         * */
-        Long userId = null;
-        try {
-            userId = jwtTool.parseToken(token);
-        } catch (UnauthorizedException uex) {
-            log.warn("请求路径{}携带无效token，拒绝访问", path);
-            ServerHttpResponse response = exchange.getResponse();
-            response.setStatusCode(HttpStatus.UNAUTHORIZED);
-            return response.setComplete();
-        }
-        // 5. token有效，存储用户信息到请求头中，放行请求
-        log.info("请求路径{}携带有效token，存储用户信息并且放行", path);
-        ServerHttpRequest newRequest = exchange.getRequest().mutate()
-                .header("user-info", String.valueOf(userId))
-                .build();
-        ServerWebExchange newExchange = exchange.mutate().request(newRequest).build();
-        return chain.filter(newExchange);
+        return tokenVerifier.verify(token)
+                .onErrorResume(UnauthorizedException.class, uex -> {
+                    log.debug("请求路径{}携带无效token，拒绝访问", path);
+                    return reject(exchange, HttpStatus.UNAUTHORIZED, AuthOutcome.INVALID_TOKEN).then(Mono.empty());
+                })
+                .onErrorResume(RejectedExecutionException.class, rex -> {
+                    log.debug("请求路径{}验签排队已满，拒绝访问", path);
+                    return reject(exchange, HttpStatus.SERVICE_UNAVAILABLE, AuthOutcome.OVERLOADED).then(Mono.empty());
+                })
+                .flatMap(userId -> {
+                    // 5. token有效，存储用户信息到请求头中，放行请求
+                    exchange.getAttributes().put(AUTH_OUTCOME_ATTR, AuthOutcome.AUTHENTICATED);
+                    exchange.getAttributes().put(USER_ID_ATTR, userId);
+                    ServerHttpRequest newRequest = exchange.getRequest().mutate()
+                            .header("user-info", String.valueOf(userId))
+                            .build();
+                    ServerWebExchange newExchange = exchange.mutate().request(newRequest).build();
+                    return chain.filter(newExchange);
+                });
+    }
+
+    /*
+    * 记录鉴权结果，并返回指定状态码的空响应
+    * */
+    private Mono<Void> reject(ServerWebExchange exchange, HttpStatus status, AuthOutcome outcome) {
+        exchange.getAttributes().put(AUTH_OUTCOME_ATTR, outcome);
+        ServerHttpResponse response = exchange.getResponse();
+        response.setStatusCode(status);
+        return response.setComplete();
     }
 
     /*
     * 判断是否属于白名单路径的内部方法
     * */
     private boolean isExcludedPath(String path) {
-        // stream anyMatch 用于判断路径是否匹配白名单中的任意一个路径，如果 AntPathMatcher 判断match，则返回true
-        boolean isExcludedPath = authProperties.getExcludePaths().stream()
-                .anyMatch(excludePath -> pathMatcher.match(excludePath, path));
+        // 白名单已预编译为前缀树，匹配耗时与白名单数量无关
+        boolean isExcludedPath = authPathMatcher.isExcluded(path);
         if (isExcludedPath) {
-            log.info("请求路径{}在白名单中，放行", path);
+            log.debug("请求路径{}在白名单中，放行", path);
         }
         return isExcludedPath;
     }
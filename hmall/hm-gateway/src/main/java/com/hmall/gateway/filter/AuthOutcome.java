@@ -0,0 +1,19 @@
+package com.hmall.gateway.filter;
+
+/*
+* 网关鉴权结果，由 AuthGlobalFilter 写入 exchange 属性，供访问日志汇总使用
+* */
+public enum AuthOutcome {
+    // 白名单路径，直接放行
+    WHITELISTED,
+    // 未携带token
+    MISSING_TOKEN,
+    // token无效或已过期
+    INVALID_TOKEN,
+    // 验签排队已满
+    OVERLOADED,
+    // 鉴权通过
+    AUTHENTICATED,
+    // 没有记录鉴权结果，例如请求在鉴权过滤器之前就已结束
+    UNKNOWN
+}
@@ -0,0 +1,73 @@
+package com.hmall.gateway.filter;
+
+import com.hmall.gateway.config.RateLimitProperties;
+import com.hmall.gateway.utils.RateLimiter;
+import lombok.RequiredArgsConstructor;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.GlobalFilter;
+import org.springframework.core.Ordered;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+import java.net.InetSocketAddress;
+import java.util.concurrent.TimeUnit;
+
+/*
+* 网关限流过滤器
+* 流程：
+*  1. 查找请求路径命中的限流规则，未命中直接放行
+*  2. 按规则的 keyBy 确定限流对象：登录用户id（来自 AuthGlobalFilter），未登录时使用客户端IP
+*  3. 令牌桶中没有令牌时，返回429，并通过 Retry-After 告知客户端需要等待的秒数
+* 注意：
+*  1. 顺序在 AuthGlobalFilter 之后，才能拿到用户id
+*  2. 用户id从 exchange 属性中读取，而不是请求头，避免白名单路径上客户端伪造 user-info 绕过限流
+* */
+@Component
+@RequiredArgsConstructor
+public class RateLimitGlobalFilter implements GlobalFilter, Ordered {
+
+    private final RateLimiter rateLimiter;
+
+    @Override
+    public int getOrder() {
+        return -95;
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+        if (!rateLimiter.isEnabled()) {
+            return chain.filter(exchange);
+        }
+        // 1.查找限流规则
+        RateLimitProperties.Rule rule = rateLimiter.findRule(exchange.getRequest().getPath().value());
+        if (rule == null) {
+            return chain.filter(exchange);
+        }
+        // 2.尝试获取令牌
+        long waitNanos = rateLimiter.tryAcquire(rule, subjectOf(exchange, rule));
+        if (waitNanos == 0) {
+            return chain.filter(exchange);
+        }
+        // 3.被限流，返回429
+        ServerHttpResponse response = exchange.getResponse();
+        response.setStatusCode(HttpStatus.TOO_MANY_REQUESTS);
+        long retryAfterSeconds = Math.max(1, (waitNanos + TimeUnit.SECONDS.toNanos(1) - 1) / TimeUnit.SECONDS.toNanos(1));
+        response.getHeaders().set(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds));
+        return response.setComplete();
+    }
+
+    private String subjectOf(ServerWebExchange exchange, RateLimitProperties.Rule rule) {
+        if (rule.getKeyBy() == RateLimitProperties.KeyBy.USER) {
+            Long userId = exchange.getAttribute(AuthGlobalFilter.USER_ID_ATTR);
+            if (userId != null) {
+                return "u" + userId;
+            }
+        }
+        InetSocketAddress remote = exchange.getRequest().getRemoteAddress();
+        return "ip" + (remote == null || remote.getAddress() == null ? "unknown" : remote.getAddress().getHostAddress());
+    }
+}
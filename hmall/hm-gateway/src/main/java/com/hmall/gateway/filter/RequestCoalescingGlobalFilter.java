@@ -0,0 +1,160 @@
+package com.hmall.gateway.filter;
+
+import com.hmall.gateway.cache.CachedResponse;
+import com.hmall.gateway.cache.ResponseCaptureDecorator;
+import com.hmall.gateway.config.CoalesceProperties;
+import com.hmall.gateway.utils.PathPatternTrie;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.cloud.context.scope.refresh.RefreshScopeRefreshedEvent;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.GlobalFilter;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import javax.annotation.PostConstruct;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+* 相同并发GET请求合并（single-flight）
+* 作用：
+*  1. 秒杀时大量用户同时请求同一个 GET /items/{id}，每个请求都会被转发到 item-service 和 MySQL
+*  2. 本过滤器把 路径+查询参数+varyHeaders 完全相同的并发请求合并为一次下游调用，结果分发给所有等待者
+* 流程：
+*  1. 第一个到达的请求成为 leader，正常转发，并捕获完整的响应
+*  2. leader 完成之前到达的相同请求成为 follower，等待 leader 的响应并原样写出
+*  3. follower 等待超过 maxWait，或者 leader 异常结束没有产生响应时，follower 自行转发请求
+* 指标：
+*  1. gateway.coalesce.requests{role=leader/follower}：合并的请求数量，follower 即被合并掉的请求
+*  2. gateway.coalesce.fallbacks：follower 等待超时或 leader 失败后自行转发的次数
+* 注意：
+*  1. 顺序在 ResponseCacheGlobalFilter 之后，只有缓存未命中的请求才需要合并
+*  2. varyHeaders 默认不区分用户，paths 只能配置与用户无关的接口；响应因用户而不同的接口不要合并，
+*     或者在 varyHeaders 中加上 authorization
+* */
+@Slf4j
+@Component
+public class RequestCoalescingGlobalFilter implements GlobalFilter, Ordered {
+
+    public static final String COALESCED_HEADER = "X-Gateway-Coalesced";
+
+    private final CoalesceProperties properties;
+    private final Map<String, Sinks.One<CachedResponse>> inflight = new ConcurrentHashMap<>();
+    private final Counter leaderCounter;
+    private final Counter followerCounter;
+    private final Counter fallbackCounter;
+    private volatile PathPatternTrie paths;
+
+    public RequestCoalescingGlobalFilter(CoalesceProperties properties, ObjectProvider<MeterRegistry> registryProvider) {
+        this.properties = properties;
+        MeterRegistry registry = registryProvider.getIfAvailable(() -> Metrics.globalRegistry);
+        this.leaderCounter = Counter.builder("gateway.coalesce.requests").tag("role", "leader").register(registry);
+        this.followerCounter = Counter.builder("gateway.coalesce.requests").tag("role", "follower").register(registry);
+        this.fallbackCounter = Counter.builder("gateway.coalesce.fallbacks").register(registry);
+    }
+
+    @PostConstruct
+    @EventListener(RefreshScopeRefreshedEvent.class)
+    public void compile() {
+        this.paths = new PathPatternTrie(properties.getPaths());
+    }
+
+    @Override
+    public int getOrder() {
+        return -80;
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+        ServerHttpRequest request = exchange.getRequest();
+        if (!properties.isEnabled() || request.getMethod() != HttpMethod.GET
+                || !paths.matches(request.getPath().value())) {
+            return chain.filter(exchange);
+        }
+        String key = keyOf(request);
+        Sinks.One<CachedResponse> sink = Sinks.one();
+        Sinks.One<CachedResponse> existing = inflight.putIfAbsent(key, sink);
+        if (existing == null) {
+            return lead(exchange, chain, key, sink);
+        }
+        return follow(exchange, chain, existing);
+    }
+
+    /*
+    * leader：转发请求，捕获响应后分发给所有 follower
+    * */
+    private Mono<Void> lead(ServerWebExchange exchange, GatewayFilterChain chain,
+                            String key, Sinks.One<CachedResponse> sink) {
+        leaderCounter.increment();
+        ServerHttpResponse response = exchange.getResponse();
+        ResponseCaptureDecorator decorator = new ResponseCaptureDecorator(response, body -> {
+            // 先移除，之后到达的请求重新发起下游调用，不会拿到旧的结果
+            inflight.remove(key, sink);
+            HttpStatus status = response.getStatusCode() == null ? HttpStatus.OK : response.getStatusCode();
+            sink.tryEmitValue(new CachedResponse(status, response.getHeaders(), body, null));
+            return body;
+        });
+        return chain.filter(exchange.mutate().response(decorator).build())
+                .doFinally(signal -> {
+                    // leader 没有写出响应体（异常、取消等），通知 follower 自行转发
+                    inflight.remove(key, sink);
+                    sink.tryEmitEmpty();
+                });
+    }
+
+    /*
+    * follower：等待 leader 的响应，超时或 leader 失败时自行转发
+    * */
+    private Mono<Void> follow(ServerWebExchange exchange, GatewayFilterChain chain,
+                              Sinks.One<CachedResponse> leader) {
+        followerCounter.increment();
+        return leader.asMono()
+                .timeout(properties.getMaxWait())
+                .map(Optional::of)
+                .defaultIfEmpty(Optional.empty())
+                .onErrorReturn(Optional.empty())
+                .flatMap(shared -> {
+                    if (shared.isEmpty()) {
+                        fallbackCounter.increment();
+                        return chain.filter(exchange);
+                    }
+                    return write(exchange.getResponse(), shared.get());
+                });
+    }
+
+    private Mono<Void> write(ServerHttpResponse response, CachedResponse shared) {
+        HttpHeaders headers = response.getHeaders();
+        headers.putAll(shared.getHeaders());
+        headers.set(COALESCED_HEADER, "true");
+        headers.setContentLength(shared.getBody().length);
+        response.setStatusCode(shared.getStatus());
+        return response.writeWith(Mono.just(response.bufferFactory().wrap(shared.getBody())));
+    }
+
+    private String keyOf(ServerHttpRequest request) {
+        StringBuilder key = new StringBuilder(request.getURI().getRawPath());
+        String query = request.getURI().getRawQuery();
+        if (query != null) {
+            key.append('?').append(query);
+        }
+        HttpHeaders headers = request.getHeaders();
+        for (String name : properties.getVaryHeaders()) {
+            key.append('\n').append(name).append('=').append(headers.getOrEmpty(name));
+        }
+        return key.toString();
+    }
+}
@@ -0,0 +1,148 @@
+package com.hmall.gateway.filter;
+
+import cn.hutool.crypto.digest.DigestUtil;
+import com.hmall.gateway.cache.CachedResponse;
+import com.hmall.gateway.cache.GatewayResponseCache;
+import com.hmall.gateway.cache.ResponseCaptureDecorator;
+import lombok.RequiredArgsConstructor;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.GlobalFilter;
+import org.springframework.core.Ordered;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeMap;
+
+/*
+* 网关响应缓存过滤器
+* 流程：
+*  1. GET请求命中缓存策略时，按 路径+排序后的查询参数 查询缓存
+*    1.1 命中且 If-None-Match 与缓存的 ETag 一致，返回304
+*    1.2 命中，直接返回缓存的响应
+*    1.3 未命中，转发请求，捕获200响应放入缓存，并附带 ETag
+*  2. POST/PUT/PATCH/DELETE 请求命中策略的 evictPaths 时，在请求成功后失效对应策略的缓存
+*  3. HEAD、OPTIONS 等其他请求不读缓存也不失效缓存，直接转发
+* 注意：
+*  1. 顺序在 AuthGlobalFilter 之后，需要登录的路径不会绕过鉴权直接读到缓存
+*  2. 顺序必须小于 NettyWriteResponseFilter（-1），响应装饰器才能生效
+* */
+@Component
+@RequiredArgsConstructor
+public class ResponseCacheGlobalFilter implements GlobalFilter, Ordered {
+
+    public static final String CACHE_STATUS_HEADER = "X-Gateway-Cache";
+
+    private static final Set<HttpMethod> WRITE_METHODS =
+            EnumSet.of(HttpMethod.POST, HttpMethod.PUT, HttpMethod.PATCH, HttpMethod.DELETE);
+
+    private final GatewayResponseCache responseCache;
+
+    @Override
+    public int getOrder() {
+        return -90;
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+        if (!responseCache.isEnabled()) {
+            return chain.filter(exchange);
+        }
+        ServerHttpRequest request = exchange.getRequest();
+        String path = request.getPath().value();
+        // 1.写请求，成功后失效缓存
+        if (WRITE_METHODS.contains(request.getMethod())) {
+            return chain.filter(exchange).doOnSuccess(v -> {
+                HttpStatus status = exchange.getResponse().getStatusCode();
+                if (status == null || status.is2xxSuccessful()) {
+                    responseCache.evictByWritePath(path);
+                }
+            });
+        }
+        if (request.getMethod() != HttpMethod.GET) {
+            return chain.filter(exchange);
+        }
+        // 2.GET请求，判断是否命中缓存策略
+        GatewayResponseCache.CompiledPolicy policy = responseCache.findPolicy(path);
+        if (policy == null) {
+            return chain.filter(exchange);
+        }
+        String key = responseCache.key(policy, path + "?" + normalizeQuery(request.getQueryParams()));
+        List<String> ifNoneMatch = request.getHeaders().getIfNoneMatch();
+        // 3.命中缓存
+        CachedResponse cached = responseCache.get(key);
+        if (cached != null) {
+            return writeCached(exchange.getResponse(), cached, ifNoneMatch);
+        }
+        // 4.未命中，转发请求并捕获响应
+        ServerHttpResponse response = exchange.getResponse();
+        ResponseCaptureDecorator decorator = new ResponseCaptureDecorator(response, body -> {
+            response.getHeaders().set(CACHE_STATUS_HEADER, "MISS");
+            if (response.getStatusCode() != null && response.getStatusCode() != HttpStatus.OK) {
+                return body;
+            }
+            String etag = etagOf(body);
+            responseCache.put(policy, key, new CachedResponse(HttpStatus.OK, response.getHeaders(), body, etag));
+            response.getHeaders().setETag(etag);
+            if (etagMatches(ifNoneMatch, etag)) {
+                response.setStatusCode(HttpStatus.NOT_MODIFIED);
+                return new byte[0];
+            }
+            return body;
+        });
+        return chain.filter(exchange.mutate().response(decorator).build());
+    }
+
+    private Mono<Void> writeCached(ServerHttpResponse response, CachedResponse cached, List<String> ifNoneMatch) {
+        HttpHeaders headers = response.getHeaders();
+        headers.putAll(cached.getHeaders());
+        headers.setETag(cached.getEtag());
+        headers.set(CACHE_STATUS_HEADER, "HIT");
+        if (etagMatches(ifNoneMatch, cached.getEtag())) {
+            response.setStatusCode(HttpStatus.NOT_MODIFIED);
+            return response.setComplete();
+        }
+        response.setStatusCode(cached.getStatus());
+        headers.setContentLength(cached.getBody().length);
+        return response.writeWith(Mono.just(response.bufferFactory().wrap(cached.getBody())));
+    }
+
+    /*
+    * 查询参数排序后拼接，参数顺序不同的相同请求共用一份缓存
+    * */
+    private static String normalizeQuery(MultiValueMap<String, String> queryParams) {
+        StringBuilder sb = new StringBuilder();
+        new TreeMap<>(queryParams).forEach((name, values) -> {
+            for (String value : values) {
+                if (sb.length() > 0) {
+                    sb.append('&');
+                }
+                sb.append(name).append('=').append(value);
+            }
+        });
+        return sb.toString();
+    }
+
+    private static String etagOf(byte[] body) {
+        return "\"" + DigestUtil.md5Hex(body) + "\"";
+    }
+
+    private static boolean etagMatches(List<String> ifNoneMatch, String etag) {
+        for (String candidate : ifNoneMatch) {
+            String value = candidate.startsWith("W/") ? candidate.substring(2) : candidate;
+            if (value.equals(etag) || "*".equals(value)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
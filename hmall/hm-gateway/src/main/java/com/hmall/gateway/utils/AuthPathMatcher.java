@@ -0,0 +1,83 @@
+package com.hmall.gateway.utils;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.hmall.gateway.config.AuthProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cloud.context.scope.refresh.RefreshScopeRefreshedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+
+/*
+* 网关白名单匹配器
+* 作用：
+*  1. 把 AuthProperties 中的 excludePaths、includePaths 预编译为 PathPatternTrie，匹配耗时只与路径长度有关
+*  2. 用一个小的 LRU 缓存最近的路径判定结果，热点路径直接命中
+*  3. Nacos 配置刷新后（@RefreshScope 刷新完成事件）重新编译，编译结果与一个新的 LRU 一起整体替换，
+*     刷新前开始的判定只会写入旧的 LRU，不会在刷新后留下按旧配置得到的结果
+* 判定规则（与 SpringMVC 拦截器的 include/exclude 语义一致）：
+*  1. 命中 excludePaths 的路径放行
+*  2. 配置了 includePaths 时，只有命中 includePaths 的路径需要鉴权
+* */
+@Slf4j
+@Component
+public class AuthPathMatcher {
+
+    private static final int DECISION_CACHE_SIZE = 1024;
+
+    private final AuthProperties authProperties;
+    // 编译结果与判定缓存整体替换，读取时无需加锁
+    private volatile Compiled compiled;
+
+    public AuthPathMatcher(AuthProperties authProperties) {
+        this.authProperties = authProperties;
+    }
+
+    @PostConstruct
+    public void compile() {
+        Compiled newCompiled = new Compiled(
+                new PathPatternTrie(authProperties.getExcludePaths()),
+                new PathPatternTrie(authProperties.getIncludePaths()));
+        this.compiled = newCompiled;
+        log.info("白名单已编译，excludePaths：{}条，includePaths：{}条",
+                newCompiled.excludes.size(), newCompiled.includes.size());
+    }
+
+    @EventListener(RefreshScopeRefreshedEvent.class)
+    public void onRefresh() {
+        compile();
+    }
+
+    /**
+     * 判断路径是否属于白名单（无需鉴权）
+     *
+     * @param path 请求路径
+     * @return 是否放行
+     */
+    public boolean isExcluded(String path) {
+        Compiled current = this.compiled;
+        return current.decisions.get(path, current::isExcluded);
+    }
+
+    private static class Compiled {
+        private final PathPatternTrie excludes;
+        private final PathPatternTrie includes;
+        private final Cache<String, Boolean> decisions = Caffeine.newBuilder()
+                .maximumSize(DECISION_CACHE_SIZE)
+                .build();
+
+        private Compiled(PathPatternTrie excludes, PathPatternTrie includes) {
+            this.excludes = excludes;
+            this.includes = includes;
+        }
+
+        private Boolean isExcluded(String path) {
+            if (excludes.matches(path)) {
+                return true;
+            }
+            return !includes.isEmpty() && !includes.matches(path);
+        }
+    }
+}
@@ -25,6 +25,16 @@ public class JwtTool {
      * @return 解析刷新token得到的用户信息
      */
     public Long parseToken(String token) {
+        return parseVerifiedToken(token).getUserId();
+    }
+
+    /**
+     * 解析token，同时返回token的过期时间，供网关缓存校验结果使用
+     *
+     * @param token token
+     * @return 校验通过的token信息
+     */
+    public VerifiedToken parseVerifiedToken(String token) {
         // 1.校验token是否为空
         if (token == null) {
             throw new UnauthorizedException("未登录");
@@ -55,11 +65,16 @@ public class JwtTool {
         }
 
         // 5.数据解析
+        Long userId;
         try {
-           return Long.valueOf(userPayload.toString());
+            userId = Long.valueOf(userPayload.toString());
         } catch (RuntimeException e) {
             // 数据格式有误
             throw new UnauthorizedException("无效的token");
         }
+        // 6.读取过期时间，exp的单位是秒
+        Object exp = jwt.getPayload(JWT.EXPIRES_AT);
+        Long expiresAt = exp instanceof Number ? ((Number) exp).longValue() * 1000 : null;
+        return new VerifiedToken(userId, expiresAt);
     }
 }
\ No newline at end of file
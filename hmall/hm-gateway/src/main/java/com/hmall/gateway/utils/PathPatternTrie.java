@@ -0,0 +1,238 @@
+package com.hmall.gateway.utils;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/*
+* 预编译的 Ant 风格路径匹配前缀树
+* 作用：
+*  1. AntPathMatcher 每次匹配都要重新解析 pattern，且需要逐个 pattern 尝试，耗时随 pattern 数量线性增长
+*  2. 本类在构建时把所有 pattern 按 "/" 拆分为路径段，合并成一棵前缀树，匹配时只需沿着请求路径的各个段向下走
+* 支持的语法（与 AntPathMatcher 保持一致）：
+*  1. 普通路径段：/users/login
+*  2. 段内通配符：* 匹配0个或多个字符，? 匹配一个字符，{name} 或 {name:regex} 匹配路径变量
+*  3. 跨段通配符：** 匹配0个或多个路径段
+* 注意：
+*  1. 构建完成后本类只读，可以被多个线程同时使用
+*  2. 纯字面量的路径段通过 HashMap 查找，只有含通配符的段才会用正则匹配
+*  3. 末尾 "/" 的规则与 AntPathMatcher 相同：路径在 ** 之前走完时 pattern 与路径的末尾 "/" 需要对应，
+*     但 /items/* 可以匹配 /items/；路径在 ** 处还有剩余的段时不区分末尾 "/"，例如 /a/** 后接 /c 的 pattern 可以匹配 /a/x/c/
+* */
+public class PathPatternTrie {
+
+    private static final String DOUBLE_WILDCARD = "**";
+    private static final Pattern VARIABLE_PATTERN = Pattern.compile("\\{([^/]+?)}");
+
+    private final Node root = new Node();
+    private final int size;
+
+    public PathPatternTrie(Collection<String> patterns) {
+        int count = 0;
+        if (patterns != null) {
+            for (String pattern : patterns) {
+                if (pattern == null || pattern.isBlank()) {
+                    continue;
+                }
+                insert(pattern.trim());
+                count++;
+            }
+        }
+        this.size = count;
+    }
+
+    /**
+     * 判断路径是否匹配任意一个 pattern
+     *
+     * @param path 请求路径
+     * @return 是否匹配
+     */
+    public boolean matches(String path) {
+        if (size == 0 || path == null) {
+            return false;
+        }
+        return match(root, tokenize(path), 0, path.endsWith("/"), false);
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private void insert(String pattern) {
+        Node node = root;
+        for (String segment : tokenize(pattern)) {
+            node = node.child(segment);
+        }
+        // 与 AntPathMatcher 一致：pattern 与路径的末尾 "/" 需要对应
+        if (pattern.endsWith("/")) {
+            node.terminalWithSlash = true;
+        } else {
+            node.terminal = true;
+        }
+    }
+
+    /*
+    * afterDoubleWildcard：是否已经由 ** 吞掉过路径段（包括0个），此后不再区分路径末尾的 "/"
+    * */
+    private static boolean match(Node node, String[] segments, int index, boolean trailingSlash,
+                                 boolean afterDoubleWildcard) {
+        if (index == segments.length) {
+            if (afterDoubleWildcard) {
+                return node.terminal || node.terminalWithSlash || matchesEmptyRemainder(node);
+            }
+            return (trailingSlash ? node.terminalWithSlash : node.terminal)
+                    || matchesEmptyRemainder(node)
+                    || trailingSlash && matchesSingleWildcard(node);
+        }
+        String segment = segments[index];
+        // 1.字面量路径段
+        Node literal = node.literals.get(segment);
+        if (literal != null && match(literal, segments, index + 1, trailingSlash, afterDoubleWildcard)) {
+            return true;
+        }
+        // 2.段内通配符
+        for (WildcardChild child : node.wildcards) {
+            if (child.pattern.matcher(segment).matches()
+                    && match(child.node, segments, index + 1, trailingSlash, afterDoubleWildcard)) {
+                return true;
+            }
+        }
+        // 3.跨段通配符，依次尝试让 ** 吞掉 0..n 个路径段
+        if (node.doubleWildcard != null) {
+            for (int i = index; i <= segments.length; i++) {
+                if (match(node.doubleWildcard, segments, i, trailingSlash, true)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /*
+    * 路径已经走完，剩余的 pattern 只由 ** 组成时也算匹配，例如 /items/** 可以匹配 /items
+    * */
+    private static boolean matchesEmptyRemainder(Node node) {
+        Node current = node.doubleWildcard;
+        while (current != null) {
+            if (current.terminal || current.terminalWithSlash) {
+                return true;
+            }
+            current = current.doubleWildcard;
+        }
+        return false;
+    }
+
+    /*
+    * 路径以 "/" 结尾且已经走完，剩余的 pattern 只有一个 * 时也算匹配，例如 /items/* 可以匹配 /items/
+    * */
+    private static boolean matchesSingleWildcard(Node node) {
+        for (WildcardChild child : node.wildcards) {
+            if ("*".equals(child.source)) {
+                return child.node.terminal || child.node.terminalWithSlash;
+            }
+        }
+        return false;
+    }
+
+    private static String[] tokenize(String path) {
+        List<String> segments = new ArrayList<>();
+        int start = 0;
+        for (int i = 0; i <= path.length(); i++) {
+            if (i == path.length() || path.charAt(i) == '/') {
+                if (i > start) {
+                    segments.add(path.substring(start, i));
+                }
+                start = i + 1;
+            }
+        }
+        return segments.toArray(new String[0]);
+    }
+
+    private static boolean isWildcardSegment(String segment) {
+        return segment.indexOf('*') >= 0 || segment.indexOf('?') >= 0 || segment.indexOf('{') >= 0;
+    }
+
+    /*
+    * 把段内通配符转换为正则：* -> [^/]*，? -> [^/]，{name} -> [^/]*，{name:regex} -> (regex)
+    * */
+    private static Pattern compileSegment(String segment) {
+        StringBuilder regex = new StringBuilder();
+        Matcher matcher = VARIABLE_PATTERN.matcher(segment);
+        int end = 0;
+        while (matcher.find()) {
+            appendWildcards(regex, segment.substring(end, matcher.start()));
+            String variable = matcher.group(1);
+            int colon = variable.indexOf(':');
+            regex.append(colon < 0 ? "[^/]*" : "(" + variable.substring(colon + 1) + ")");
+            end = matcher.end();
+        }
+        appendWildcards(regex, segment.substring(end));
+        return Pattern.compile(regex.toString());
+    }
+
+    private static void appendWildcards(StringBuilder regex, String text) {
+        StringBuilder literal = new StringBuilder();
+        for (char c : text.toCharArray()) {
+            if (c == '*' || c == '?') {
+                if (literal.length() > 0) {
+                    regex.append(Pattern.quote(literal.toString()));
+                    literal.setLength(0);
+                }
+                regex.append(c == '*' ? "[^/]*" : "[^/]");
+            } else {
+                literal.append(c);
+            }
+        }
+        if (literal.length() > 0) {
+            regex.append(Pattern.quote(literal.toString()));
+        }
+    }
+
+    private static class Node {
+        private final Map<String, Node> literals = new HashMap<>();
+        private final List<WildcardChild> wildcards = new ArrayList<>();
+        private Node doubleWildcard;
+        private boolean terminal;
+        private boolean terminalWithSlash;
+
+        private Node child(String segment) {
+            if (DOUBLE_WILDCARD.equals(segment)) {
+                if (doubleWildcard == null) {
+                    doubleWildcard = new Node();
+                }
+                return doubleWildcard;
+            }
+            if (!isWildcardSegment(segment)) {
+                return literals.computeIfAbsent(segment, k -> new Node());
+            }
+            for (WildcardChild child : wildcards) {
+                if (child.source.equals(segment)) {
+                    return child.node;
+                }
+            }
+            WildcardChild child = new WildcardChild(segment, compileSegment(segment), new Node());
+            wildcards.add(child);
+            return child.node;
+        }
+    }
+
+    private static class WildcardChild {
+        private final String source;
+        private final Pattern pattern;
+        private final Node node;
+
+        private WildcardChild(String source, Pattern pattern, Node node) {
+            this.source = source;
+            this.pattern = pattern;
+            this.node = node;
+        }
+    }
+}
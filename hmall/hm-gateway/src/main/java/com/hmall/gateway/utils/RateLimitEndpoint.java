@@ -0,0 +1,31 @@
+package com.hmall.gateway.utils;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/*
+* 限流状态端点：GET /actuator/ratelimit
+* 返回当前的网关节点数量，以及拒绝次数最多的令牌桶
+* */
+@Component
+@Endpoint(id = "ratelimit")
+@RequiredArgsConstructor
+public class RateLimitEndpoint {
+
+    private static final int TOP_BUCKETS = 100;
+
+    private final RateLimiter rateLimiter;
+
+    @ReadOperation
+    public Map<String, Object> rateLimit() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("clusterSize", rateLimiter.getClusterSize());
+        result.put("topRejectedBuckets", rateLimiter.topRejectedBuckets(TOP_BUCKETS));
+        return result;
+    }
+}
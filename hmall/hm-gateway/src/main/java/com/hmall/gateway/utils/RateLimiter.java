@@ -0,0 +1,172 @@
+package com.hmall.gateway.utils;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.hmall.gateway.config.RateLimitProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cloud.client.discovery.DiscoveryClient;
+import org.springframework.cloud.context.scope.refresh.RefreshScopeRefreshedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/*
+* 网关限流器
+* 作用：
+*  1. 按 RateLimitProperties 中的规则，为每个 规则+用户（或IP）维护一个无锁令牌桶
+*  2. 空闲的令牌桶会被回收，令牌桶总数有上限，避免大量不同的IP撑爆内存
+* 集群模式：
+*  1. LOCAL：每个网关节点独立限流，整个集群的实际速率为 配置速率 * 节点数
+*  2. CLUSTER_SHARE：定期从 Nacos 查询网关节点数量，每个节点只使用 配置速率 / 节点数
+*  3. CLUSTER_SHARE 模式不需要额外的共享存储，前提是负载均衡把同一用户的请求大致均匀地分摊到各个节点
+* 指标：
+*  1. gateway.rate-limit.rejected{rule}：按规则统计的拒绝次数
+*  2. 每个令牌桶自己的拒绝次数可以通过 /actuator/ratelimit 查看
+* */
+@Slf4j
+@Component
+public class RateLimiter {
+
+    private final RateLimitProperties properties;
+    private final DiscoveryClient discoveryClient;
+    private final String serviceId;
+    private final MeterRegistry registry;
+    private final Cache<String, TokenBucket> buckets;
+    private final Map<String, Counter> rejectedCounters = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService clusterExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "rate-limit-cluster");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private volatile List<CompiledRule> rules = List.of();
+    private volatile int clusterSize = 1;
+
+    public RateLimiter(RateLimitProperties properties, DiscoveryClient discoveryClient,
+                       @Value("${spring.application.name}") String serviceId,
+                       ObjectProvider<MeterRegistry> registryProvider) {
+        this.properties = properties;
+        this.discoveryClient = discoveryClient;
+        this.serviceId = serviceId;
+        this.registry = registryProvider.getIfAvailable(() -> Metrics.globalRegistry);
+        this.buckets = Caffeine.newBuilder()
+                .maximumSize(properties.getMaximumBuckets())
+                .expireAfterAccess(properties.getBucketIdleTimeout())
+                .build();
+        long interval = properties.getClusterRefreshInterval().toMillis();
+        clusterExecutor.scheduleWithFixedDelay(this::refreshClusterSize, 0, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @PostConstruct
+    @EventListener(RefreshScopeRefreshedEvent.class)
+    public void compile() {
+        List<CompiledRule> compiled = new ArrayList<>();
+        for (RateLimitProperties.Rule rule : properties.getRules()) {
+            compiled.add(new CompiledRule(rule, new PathPatternTrie(rule.getPaths())));
+        }
+        this.rules = compiled;
+        log.info("网关限流规则已加载：{}条", compiled.size());
+    }
+
+    public boolean isEnabled() {
+        return properties.isEnabled();
+    }
+
+    /**
+     * 查找请求路径命中的限流规则
+     *
+     * @param path 请求路径
+     * @return 命中的规则，未命中时返回null
+     */
+    public RateLimitProperties.Rule findRule(String path) {
+        for (CompiledRule rule : rules) {
+            if (rule.paths.matches(path)) {
+                return rule.rule;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 尝试通过限流
+     *
+     * @param rule    命中的规则
+     * @param subject 限流对象，用户id或IP
+     * @return 0 表示通过；大于0表示被拒绝，值为建议的等待纳秒数
+     */
+    public long tryAcquire(RateLimitProperties.Rule rule, String subject) {
+        TokenBucket bucket = buckets.get(rule.getId() + ":" + subject, k -> new TokenBucket());
+        int share = properties.getMode() == RateLimitProperties.Mode.CLUSTER_SHARE ? clusterSize : 1;
+        int capacity = Math.max(1, rule.getCapacity() / share);
+        double refillPerSecond = rule.getRefillPerSecond() / share;
+        long waitNanos = bucket.tryAcquire(System.nanoTime(), capacity, refillPerSecond);
+        if (waitNanos > 0) {
+            rejectedCounters.computeIfAbsent(rule.getId(), id -> Counter.builder("gateway.rate-limit.rejected")
+                    .tag("rule", id).register(registry)).increment();
+        }
+        return waitNanos;
+    }
+
+    /**
+     * 拒绝次数最多的令牌桶
+     *
+     * @param limit 返回的数量
+     * @return 令牌桶key -> 拒绝次数
+     */
+    public Map<String, Long> topRejectedBuckets(int limit) {
+        Map<String, Long> top = new LinkedHashMap<>();
+        buckets.asMap().entrySet().stream()
+                .filter(e -> e.getValue().rejectedCount() > 0)
+                .sorted(Comparator.comparingLong((Map.Entry<String, TokenBucket> e) -> e.getValue().rejectedCount()).reversed())
+                .limit(limit)
+                .forEach(e -> top.put(e.getKey(), e.getValue().rejectedCount()));
+        return top;
+    }
+
+    public int getClusterSize() {
+        return clusterSize;
+    }
+
+    private void refreshClusterSize() {
+        if (properties.getMode() != RateLimitProperties.Mode.CLUSTER_SHARE) {
+            return;
+        }
+        try {
+            int size = discoveryClient.getInstances(serviceId).size();
+            clusterSize = Math.max(size, 1);
+        } catch (RuntimeException e) {
+            // 注册中心不可用时保持上一次的节点数量
+            log.warn("刷新网关节点数量失败，继续使用{}个节点计算限流速率", clusterSize, e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        clusterExecutor.shutdown();
+    }
+
+    private static class CompiledRule {
+        private final RateLimitProperties.Rule rule;
+        private final PathPatternTrie paths;
+
+        private CompiledRule(RateLimitProperties.Rule rule, PathPatternTrie paths) {
+            this.rule = rule;
+            this.paths = paths;
+        }
+    }
+}
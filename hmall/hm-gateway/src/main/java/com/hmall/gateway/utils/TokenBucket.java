@@ -0,0 +1,53 @@
+package com.hmall.gateway.utils;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+* 无锁令牌桶
+* 原理（GCRA，通用信元速率算法，与令牌桶等价）：
+*  1. 只保存一个值 tat（theoretical arrival time），表示按恒定速率补充令牌时，桶"刚好被取空"的时刻
+*  2. 每次请求消耗一个令牌，tat 向后推移一个补充间隔 interval
+*  3. 当 now < tat - burst 时，说明桶中已经没有令牌，拒绝请求，需要等待 tat - burst - now
+*  4. 其中 burst = (capacity - 1) * interval，即桶满时可以一次性通过 capacity 个请求
+* 注意：
+*  1. tat 通过 AtomicLong 的 CAS 更新，不需要加锁
+*  2. 速率和容量作为参数传入，配置刷新后立即生效，无需重建令牌桶
+* */
+public class TokenBucket {
+
+    private final AtomicLong tat = new AtomicLong(Long.MIN_VALUE);
+    private final LongAdder rejected = new LongAdder();
+
+    /**
+     * 尝试获取一个令牌
+     *
+     * @param nowNanos        当前时间，System.nanoTime()
+     * @param capacity        桶容量
+     * @param refillPerSecond 每秒补充的令牌数
+     * @return 0 表示获取成功；大于0表示被拒绝，值为需要等待的纳秒数
+     */
+    public long tryAcquire(long nowNanos, int capacity, double refillPerSecond) {
+        long interval = (long) (1_000_000_000L / refillPerSecond);
+        long burst = (Math.max(capacity, 1) - 1) * interval;
+        while (true) {
+            long current = tat.get();
+            long base = current == Long.MIN_VALUE ? nowNanos : Math.max(current, nowNanos);
+            long allowAt = base - burst;
+            if (nowNanos < allowAt) {
+                rejected.increment();
+                return allowAt - nowNanos;
+            }
+            if (tat.compareAndSet(current, base + interval)) {
+                return 0;
+            }
+        }
+    }
+
+    /**
+     * 本令牌桶累计拒绝的请求数
+     */
+    public long rejectedCount() {
+        return rejected.sum();
+    }
+}
@@ -0,0 +1,16 @@
+package com.hmall.gateway.utils;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/*
+* 校验通过的token信息
+*  1. userId：token中携带的用户id
+*  2. expiresAt：token的过期时间（毫秒时间戳），token中没有exp时为null
+* */
+@Data
+@AllArgsConstructor
+public class VerifiedToken {
+    private Long userId;
+    private Long expiresAt;
+}
@@ -29,6 +29,13 @@ public class ItemClientFallback implements FallbackFactory<ItemClient> {
                 // 这里可以选择抛出一个自定义异常，或者进行其他的降级处理
                 throw new RuntimeException(cause);
             }
+
+            @Override
+            public void restoreStock(List<OrderDetailDTO> items) {
+                log.error("调用item-service服务归还库存失败：", cause);
+                // 归还失败不能当作成功，由调用方决定是否重试
+                throw new RuntimeException(cause);
+            }
         };
     }
 }
@@ -0,0 +1,111 @@
+package com.hmall.item.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.hmall.common.utils.CollUtils;
+import com.hmall.item.api.dto.ItemDTO;
+import com.hmall.item.config.ItemCacheProperties;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+/*
+* 商品静态属性本地缓存
+* 作用：
+*  1. queryItemByIds 会被购物车列表、下单等接口频繁调用，每次都查询数据库并拷贝对象
+*  2. 缓存 id -> ItemDTO，批量查询时只有未命中的id才会查询数据库
+* 注意：
+*  1. 只缓存名称、图片、价格等静态属性，stock 和 sold 为null，实时库存由 ItemStockTable 提供
+*  2. 商品的修改、删除都会经过 ItemServiceImpl，由它在写数据库之后失效对应的缓存，扣减库存不影响本缓存
+*  3. 其他实例的修改无法通知到本实例，只能依靠 ttl 过期
+*  4. 返回的是缓存中的对象本身，调用方不能修改
+* */
+@Component
+public class ItemCache {
+
+    private final ItemCacheProperties properties;
+    private final Cache<Long, ItemDTO> cache;
+
+    public ItemCache(ItemCacheProperties properties, ObjectProvider<MeterRegistry> registry) {
+        this.properties = properties;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(properties.getMaximumSize())
+                .expireAfterWrite(properties.getTtl())
+                .recordStats()
+                .build();
+        // 暴露命中率等指标：cache.gets{cache=item.static,result=hit/miss}
+        registry.ifAvailable(r -> CaffeineCacheMetrics.monitor(r, cache, "item.static"));
+    }
+
+    /**
+     * 根据id批量查询商品，只有未命中的id才会交给loader加载
+     *
+     * @param ids    商品id
+     * @param loader 从数据库批量加载商品的函数，不存在的商品不会出现在结果中
+     * @return 商品列表，按ids的顺序排列，不存在的商品被忽略
+     */
+    public List<ItemDTO> getAll(Collection<Long> ids, Function<Set<Long>, List<ItemDTO>> loader) {
+        if (CollUtils.isEmpty(ids)) {
+            return CollUtils.emptyList();
+        }
+        if (!properties.isEnabled()) {
+            return loader.apply(new LinkedHashSet<>(ids));
+        }
+        // 1.批量查询，未命中的id一次性交给loader
+        Map<Long, ItemDTO> found = cache.getAll(new LinkedHashSet<>(ids), missing -> {
+            Set<Long> missingIds = new LinkedHashSet<>();
+            missing.forEach(missingIds::add);
+            List<ItemDTO> loaded = loader.apply(missingIds);
+            return CollUtils.isEmpty(loaded) ? Map.of() : toMap(loaded);
+        });
+        // 2.按请求的顺序返回
+        List<ItemDTO> result = new ArrayList<>(found.size());
+        for (Long id : new LinkedHashSet<>(ids)) {
+            ItemDTO item = found.get(id);
+            if (item != null) {
+                result.add(item);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 失效指定商品的缓存
+     *
+     * @param ids 商品id
+     */
+    public void invalidate(Collection<Long> ids) {
+        if (CollUtils.isNotEmpty(ids)) {
+            cache.invalidateAll(ids);
+        }
+    }
+
+    /**
+     * 失效指定商品的缓存
+     *
+     * @param id 商品id
+     */
+    public void invalidate(Long id) {
+        if (id != null) {
+            cache.invalidate(id);
+        }
+    }
+
+    private static Map<Long, ItemDTO> toMap(List<ItemDTO> items) {
+        Map<Long, ItemDTO> map = new HashMap<>(items.size() * 2);
+        for (ItemDTO item : items) {
+            map.put(item.getId(), item);
+        }
+        return map;
+    }
+}
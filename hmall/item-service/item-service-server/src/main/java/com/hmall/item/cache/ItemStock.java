@@ -0,0 +1,34 @@
+package com.hmall.item.cache;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+* 单个商品的实时库存和销量
+* 注意：
+*  1. 库存在扣减成功之后原地更新，不需要重新加载或替换缓存条目
+* */
+public class ItemStock {
+
+    private final AtomicInteger stock;
+    private final AtomicInteger sold;
+
+    public ItemStock(Integer stock, Integer sold) {
+        this.stock = new AtomicInteger(stock == null ? 0 : stock);
+        this.sold = new AtomicInteger(sold == null ? 0 : sold);
+    }
+
+    public int getStock() {
+        return stock.get();
+    }
+
+    public int getSold() {
+        return sold.get();
+    }
+
+    /**
+     * 库存变化，delta为负数表示扣减
+     */
+    public void addStock(int delta) {
+        stock.addAndGet(delta);
+    }
+}
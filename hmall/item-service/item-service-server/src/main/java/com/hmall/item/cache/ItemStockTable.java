@@ -0,0 +1,104 @@
+package com.hmall.item.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.hmall.common.utils.CollUtils;
+import com.hmall.item.config.ItemCacheProperties;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+/*
+* 商品实时库存表
+* 作用：
+*  1. 库存、销量变化频繁，与名称、图片等静态属性分开缓存，静态属性就可以长期缓存
+*  2. 本实例扣减库存成功后，直接在表中原地扣减，与数据库中的扣减结果保持一致
+* 注意：
+*  1. 其他实例扣减的库存无法通知到本实例，条目在 stockTtl 之后过期，重新从数据库加载
+*  2. 条目加载和扣减并发时可能加载到扣减前的库存，同样在 stockTtl 之后修正
+* */
+@Component
+public class ItemStockTable {
+
+    private final ItemCacheProperties properties;
+    private final Cache<Long, ItemStock> cache;
+
+    public ItemStockTable(ItemCacheProperties properties, ObjectProvider<MeterRegistry> registry) {
+        this.properties = properties;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(properties.getMaximumSize())
+                .expireAfterWrite(properties.getStockTtl())
+                .recordStats()
+                .build();
+        // 暴露命中率等指标：cache.gets{cache=item.stock,result=hit/miss}
+        registry.ifAvailable(r -> CaffeineCacheMetrics.monitor(r, cache, "item.stock"));
+    }
+
+    /**
+     * 批量查询库存，只有未命中的id才会交给loader加载
+     *
+     * @param ids    商品id
+     * @param loader 从数据库批量加载库存的函数
+     * @return 商品id -> 库存，不存在的商品不会出现在结果中
+     */
+    public Map<Long, ItemStock> getAll(Collection<Long> ids, Function<Set<Long>, Map<Long, ItemStock>> loader) {
+        if (CollUtils.isEmpty(ids)) {
+            return CollUtils.emptyMap();
+        }
+        if (!properties.isEnabled()) {
+            return loader.apply(new LinkedHashSet<>(ids));
+        }
+        return cache.getAll(ids, missing -> {
+            Set<Long> missingIds = new LinkedHashSet<>();
+            missing.forEach(missingIds::add);
+            return loader.apply(missingIds);
+        });
+    }
+
+    /**
+     * 在不覆盖已有条目的前提下放入库存，用于查询完整商品信息时顺便预热
+     */
+    public void putIfAbsent(Long id, Integer stock, Integer sold) {
+        if (properties.isEnabled() && id != null) {
+            cache.asMap().putIfAbsent(id, new ItemStock(stock, sold));
+        }
+    }
+
+    /**
+     * 数据库中的库存变化成功后，同步更新已缓存的库存
+     *
+     * @param id    商品id
+     * @param delta 库存变化量，负数表示扣减
+     */
+    public void addStock(Long id, int delta) {
+        ItemStock stock = cache.getIfPresent(id);
+        if (stock != null) {
+            stock.addStock(delta);
+        }
+    }
+
+    /**
+     * 失效指定商品的库存，下次查询时从数据库加载
+     */
+    public void invalidate(Collection<Long> ids) {
+        if (CollUtils.isNotEmpty(ids)) {
+            cache.invalidateAll(ids);
+        }
+    }
+
+    /**
+     * 失效指定商品的库存，下次查询时从数据库加载
+     */
+    public void invalidate(Long id) {
+        if (id != null) {
+            cache.invalidate(id);
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package com.hmall.item.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.cloud.context.config.annotation.RefreshScope;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+@Data
+@Component
+@RefreshScope
+@ConfigurationProperties(prefix = "hm.item.cache")
+public class ItemCacheProperties {
+    /**
+     * 是否启用商品本地缓存
+     */
+    private boolean enabled = true;
+    /**
+     * 缓存的最大商品数量，仅在启动时读取
+     */
+    private long maximumSize = 10_000;
+    /**
+     * 商品静态属性写入缓存后的存活时间，多实例部署时其他实例的修改最晚在该时间后可见，仅在启动时读取
+     */
+    private Duration ttl = Duration.ofMinutes(30);
+    /**
+     * 商品库存写入缓存后的存活时间，多实例部署时其他实例扣减的库存最晚在该时间后可见，仅在启动时读取
+     */
+    private Duration stockTtl = Duration.ofSeconds(5);
+}
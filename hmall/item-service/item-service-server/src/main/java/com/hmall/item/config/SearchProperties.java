@@ -0,0 +1,36 @@
+package com.hmall.item.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.cloud.context.config.annotation.RefreshScope;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Data
+@Component
+@RefreshScope
+@ConfigurationProperties(prefix = "hm.item.search")
+public class SearchProperties {
+    /**
+     * 是否使用内存搜索索引，关闭或索引尚未构建完成时直接查询数据库
+     */
+    private boolean enabled = true;
+    /**
+     * 启动时构建索引，每次从数据库读取的商品数量
+     */
+    private int buildBatchSize = 1000;
+    /**
+     * 已删除的文档数超过存活文档数的该比例时，重新构建索引以回收内存
+     */
+    private double rebuildDeletedRatio = 0.5;
+    /**
+     * 分面统计中价格区间的边界，单位：分，相邻两个边界组成一个区间，最后一个边界以上为一个区间
+     */
+    private List<Integer> priceRanges = new ArrayList<>(List.of(0, 10000, 50000, 100000, 300000, 500000));
+    /**
+     * 分面统计中品牌、分类最多返回的数量
+     */
+    private int facetSize = 20;
+}
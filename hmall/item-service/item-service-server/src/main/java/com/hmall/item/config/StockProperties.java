@@ -0,0 +1,56 @@
+package com.hmall.item.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/*
+* 库存扣减相关配置，都只在启动时读取
+* */
+@Data
+@Component
+@ConfigurationProperties(prefix = "hm.item.stock")
+public class StockProperties {
+    /**
+     * 库存扣减模式：db 每次扣减直接更新数据库；memory 在内存中预占库存，异步批量落库
+     */
+    private Mode mode = Mode.DB;
+    /**
+     * memory 模式下，内存中的库存变化落库的周期
+     */
+    private Duration flushInterval = Duration.ofMillis(200);
+    /**
+     * memory 模式下，预写日志的目录，每个实例必须使用独立的目录
+     */
+    private String walDir = "data/item-stock-wal";
+    /**
+     * memory 模式下，每次写预写日志后是否强制刷盘
+     */
+    private boolean walFsync = true;
+    /**
+     * memory 模式下，当前实例的唯一标识，用于在数据库中保存已落库的日志序号，必须配置且与 walDir 一一对应
+     */
+    private String nodeId;
+    /**
+     * memory 模式下的库存计数器：single 每个商品一个计数器；striped 库存拆分到多个子桶，适合超热门商品
+     */
+    private CounterType counter = CounterType.SINGLE;
+    /**
+     * striped 计数器的子桶数量
+     */
+    private int stripes = Runtime.getRuntime().availableProcessors();
+    /**
+     * 库存不少于该值的商品才使用 striped 计数器，库存太少时拆分没有意义
+     */
+    private int stripedMinStock = 1000;
+
+    public enum Mode {
+        DB, MEMORY
+    }
+
+    public enum CounterType {
+        SINGLE, STRIPED
+    }
+}
@@ -1,7 +1,7 @@
 package com.hmall.item.controller;
 
 
-import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
+import com.baomidou.mybatisplus.core.toolkit.Wrappers;
 import com.hmall.common.domain.PageDTO;
 import com.hmall.common.domain.PageQuery;
 import com.hmall.common.domain.dto.OrderDetailDTO;
@@ -29,10 +29,8 @@ public class ItemController {
     @ApiOperation("分页查询商品")
     @GetMapping("/page")
     public PageDTO<ItemDTO> queryItemByPage(PageQuery query) {
-        // 1.分页查询
-        Page<Item> result = itemService.page(query.toMpPage("update_time", false));
-        // 2.封装并返回
-        return PageDTO.of(result, ItemDTO.class);
+        // 分页查询，支持普通分页和游标分页
+        return itemService.queryItemPage(Wrappers.lambdaQuery(), query);
     }
 
     @ApiOperation("根据id批量查询商品")
@@ -44,7 +42,7 @@ public class ItemController {
     @ApiOperation("根据id查询商品")
     @GetMapping("{id}")
     public ItemDTO queryItemById(@PathVariable("id") Long id) {
-        return BeanUtils.copyBean(itemService.getById(id), ItemDTO.class);
+        return itemService.queryItemById(id);
     }
 
     @ApiOperation("新增商品")
@@ -83,4 +81,10 @@ public class ItemController {
     public void deductStock(@RequestBody List<OrderDetailDTO> items){
         itemService.deductStock(items);
     }
+
+    @ApiOperation("批量归还库存")
+    @PutMapping("/stock/restore")
+    public void restoreStock(@RequestBody List<OrderDetailDTO> items){
+        itemService.restoreStock(items);
+    }
 }
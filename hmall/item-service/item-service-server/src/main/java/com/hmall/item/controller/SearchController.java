@@ -2,10 +2,11 @@ package com.hmall.item.controller;
 
 
 import cn.hutool.core.util.StrUtil;
-import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
+import com.baomidou.mybatisplus.core.toolkit.Wrappers;
 import com.hmall.common.domain.PageDTO;
 import com.hmall.item.domain.po.Item;
 import com.hmall.item.domain.query.ItemPageQuery;
+import com.hmall.item.domain.vo.ItemSearchVO;
 import com.hmall.item.api.dto.ItemDTO;
 import com.hmall.item.service.IItemService;
 import io.swagger.annotations.Api;
@@ -26,15 +27,40 @@ public class SearchController {
     @ApiOperation("搜索商品")
     @GetMapping("/list")
     public PageDTO<ItemDTO> search(ItemPageQuery query) {
-        // 分页查询
-        Page<Item> result = itemService.lambdaQuery()
+        // 1.优先使用内存中的搜索索引
+        ItemSearchVO result = itemService.searchByIndex(query, false);
+        if (result != null) {
+            PageDTO<ItemDTO> page = new PageDTO<>(result.getTotal(), result.getPages(), result.getList());
+            page.setNextCursor(result.getNextCursor());
+            return page;
+        }
+        // 2.索引不可用，分页查询数据库
+        return searchByDb(query);
+    }
+
+    @ApiOperation("搜索商品，同时返回品牌、分类、价格区间的分面统计")
+    @GetMapping("/facets")
+    public ItemSearchVO searchWithFacets(ItemPageQuery query) {
+        // 1.搜索和分面统计在索引的同一次遍历中完成
+        ItemSearchVO result = itemService.searchByIndex(query, true);
+        if (result != null) {
+            return result;
+        }
+        // 2.索引不可用，只返回分页结果，不做分面统计
+        PageDTO<ItemDTO> page = searchByDb(query);
+        ItemSearchVO vo = new ItemSearchVO(page.getTotal(), page.getPages(), page.getList(), null);
+        vo.setNextCursor(page.getNextCursor());
+        return vo;
+    }
+
+    private PageDTO<ItemDTO> searchByDb(ItemPageQuery query) {
+        // 分页查询，支持普通分页和游标分页
+        return itemService.queryItemPage(Wrappers.<Item>lambdaQuery()
                 .like(StrUtil.isNotBlank(query.getKey()), Item::getName, query.getKey())
                 .eq(StrUtil.isNotBlank(query.getBrand()), Item::getBrand, query.getBrand())
                 .eq(StrUtil.isNotBlank(query.getCategory()), Item::getCategory, query.getCategory())
                 .eq(Item::getStatus, 1)
-                .between(query.getMaxPrice() != null, Item::getPrice, query.getMinPrice(), query.getMaxPrice())
-                .page(query.toMpPage("update_time", false));
-        // 封装并返回
-        return PageDTO.of(result, ItemDTO.class);
+                .ge(query.getMinPrice() != null, Item::getPrice, query.getMinPrice())
+                .le(query.getMaxPrice() != null, Item::getPrice, query.getMaxPrice()), query);
     }
 }
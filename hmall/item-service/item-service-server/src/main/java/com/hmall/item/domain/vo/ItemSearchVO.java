@@ -0,0 +1,31 @@
+package com.hmall.item.domain.vo;
+
+import com.hmall.common.domain.PageDTO;
+import com.hmall.item.api.dto.ItemDTO;
+import com.hmall.item.search.SearchFacets;
+import io.swagger.annotations.ApiModel;
+import io.swagger.annotations.ApiModelProperty;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * <p>
+ * 带分面统计的商品搜索结果，分页字段与 PageDTO 相同
+ * </p>
+ */
+@Data
+@NoArgsConstructor
+@EqualsAndHashCode(callSuper = true)
+@ApiModel(description = "商品搜索结果")
+public class ItemSearchVO extends PageDTO<ItemDTO> {
+    @ApiModelProperty("分面统计，搜索索引不可用时为null")
+    private SearchFacets facets;
+
+    public ItemSearchVO(Long total, Long pages, List<ItemDTO> list, SearchFacets facets) {
+        super(total, pages, list);
+        this.facets = facets;
+    }
+}
@@ -12,6 +12,15 @@ import org.apache.ibatis.annotations.Update;
  */
 public interface ItemMapper extends BaseMapper<Item> {
 
-    @Update("UPDATE item SET stock = stock - #{num} WHERE id = #{itemId}")
-    void updateStock(OrderDetailDTO orderDetail);
+    /*
+    * 库存充足时才扣减，返回0表示库存不足或商品不存在
+    * */
+    @Update("UPDATE item SET stock = stock - #{num} WHERE id = #{itemId} AND stock >= #{num}")
+    int deductStockIfEnough(OrderDetailDTO orderDetail);
+
+    /*
+    * 归还库存，例如下单失败后的补偿
+    * */
+    @Update("UPDATE item SET stock = stock + #{num} WHERE id = #{itemId}")
+    int restoreStock(OrderDetailDTO orderDetail);
 }
@@ -0,0 +1,29 @@
+package com.hmall.item.mapper;
+
+import org.apache.ibatis.annotations.Insert;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.annotations.Update;
+
+/**
+ * <p>
+ * 库存预写日志检查点 Mapper 接口
+ * 检查点与库存变化在同一个事务中保存，重启时据此判断哪些日志已经落库
+ * </p>
+ */
+public interface StockCheckpointMapper {
+
+    @Update("CREATE TABLE IF NOT EXISTS item_stock_checkpoint (" +
+            "node_id VARCHAR(64) NOT NULL PRIMARY KEY, " +
+            "seq BIGINT NOT NULL, " +
+            "update_time DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP" +
+            ") COMMENT '库存预写日志检查点'")
+    void createTableIfAbsent();
+
+    @Select("SELECT seq FROM item_stock_checkpoint WHERE node_id = #{nodeId}")
+    Long getSeq(@Param("nodeId") String nodeId);
+
+    @Insert("INSERT INTO item_stock_checkpoint (node_id, seq) VALUES (#{nodeId}, #{seq}) " +
+            "ON DUPLICATE KEY UPDATE seq = GREATEST(seq, VALUES(seq))")
+    void saveSeq(@Param("nodeId") String nodeId, @Param("seq") long seq);
+}
@@ -0,0 +1,68 @@
+package com.hmall.item.search;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/*
+* 搜索时的分面计数器，每次搜索新建一个
+* */
+class FacetCounter {
+
+    // 价格区间的边界，升序：[b0, b1)、[b1, b2)、...、[bn, +∞)
+    private final int[] priceBounds;
+    private final int[] priceCounts;
+    private int[] brandCounts = new int[0];
+    private int[] categoryCounts = new int[0];
+
+    FacetCounter(int[] priceBounds) {
+        this.priceBounds = priceBounds;
+        this.priceCounts = new int[priceBounds.length];
+    }
+
+    void prepare(int brandSize, int categorySize) {
+        brandCounts = new int[brandSize];
+        categoryCounts = new int[categorySize];
+    }
+
+    /*
+    * 统计一个文档：每个分面只受其他分面条件的限制
+    * */
+    void count(boolean brandOk, boolean categoryOk, boolean priceOk, int brandOrd, int categoryOrd, int price) {
+        if (categoryOk && priceOk && brandOrd >= 0) {
+            brandCounts[brandOrd]++;
+        }
+        if (brandOk && priceOk && categoryOrd >= 0) {
+            categoryCounts[categoryOrd]++;
+        }
+        if (brandOk && categoryOk) {
+            int range = rangeOf(price);
+            if (range >= 0) {
+                priceCounts[range]++;
+            }
+        }
+    }
+
+    int[] getBrandCounts() {
+        return brandCounts;
+    }
+
+    int[] getCategoryCounts() {
+        return categoryCounts;
+    }
+
+    List<SearchFacets.PriceRange> priceRanges() {
+        List<SearchFacets.PriceRange> ranges = new ArrayList<>(priceBounds.length);
+        for (int i = 0; i < priceBounds.length; i++) {
+            Integer max = i + 1 < priceBounds.length ? priceBounds[i + 1] : null;
+            ranges.add(new SearchFacets.PriceRange(priceBounds[i], max, priceCounts[i]));
+        }
+        return ranges;
+    }
+
+    private int rangeOf(int price) {
+        int index = Arrays.binarySearch(priceBounds, price);
+        // 未命中边界时返回 -(插入点) - 1，所在区间为插入点的前一个
+        return index >= 0 ? index : -index - 2;
+    }
+}
@@ -0,0 +1,405 @@
+package com.hmall.item.search;
+
+import com.hmall.item.domain.po.Item;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/*
+* 商品搜索索引的数据，不是线程安全的，由 ItemSearchIndex 加锁访问
+* 结构：
+*  1. 每个商品对应一个从0开始递增的文档号（docId），商品更新时旧文档标记为删除，再追加一个新文档
+*  2. 倒排索引：名称中的每个字符（unigram）和每两个相邻字符（bigram）-> 包含它的文档号列表，文档号天然有序
+*  3. 列存储（doc values）：按文档号存放名称、品牌、分类、价格、状态、排序字段，过滤和排序时直接按下标读取
+*  4. liveDocs：未删除的文档
+* */
+class ItemIndexData {
+
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final ZoneId ZONE = ZoneId.systemDefault();
+
+    // 倒排索引
+    private final Map<String, IntList> postings = new HashMap<>();
+    // 商品id -> 文档号
+    private final Map<Long, Integer> docOfItem = new HashMap<>();
+    // 品牌、分类的字典，列中只存字典序号
+    private final Dictionary brands = new Dictionary();
+    private final Dictionary categories = new Dictionary();
+    private final BitSet liveDocs = new BitSet();
+
+    // 列存储
+    private long[] itemIds = new long[INITIAL_CAPACITY];
+    private String[] names = new String[INITIAL_CAPACITY];
+    private int[] brandOrds = new int[INITIAL_CAPACITY];
+    private int[] categoryOrds = new int[INITIAL_CAPACITY];
+    private int[] prices = new int[INITIAL_CAPACITY];
+    private int[] statuses = new int[INITIAL_CAPACITY];
+    private int[] solds = new int[INITIAL_CAPACITY];
+    private int[] commentCounts = new int[INITIAL_CAPACITY];
+    private long[] updateTimes = new long[INITIAL_CAPACITY];
+    private int maxDoc;
+
+    /**
+     * 新增或更新商品：旧文档标记为删除，追加新文档
+     */
+    void upsert(Item item) {
+        delete(item.getId());
+        int doc = maxDoc++;
+        ensureCapacity(maxDoc);
+        String name = normalize(item.getName());
+        itemIds[doc] = item.getId();
+        names[doc] = name;
+        brandOrds[doc] = brands.ordOf(item.getBrand());
+        categoryOrds[doc] = categories.ordOf(item.getCategory());
+        prices[doc] = valueOf(item.getPrice());
+        statuses[doc] = valueOf(item.getStatus());
+        solds[doc] = valueOf(item.getSold());
+        commentCounts[doc] = valueOf(item.getCommentCount());
+        updateTimes[doc] = item.getUpdateTime() == null ? 0 : item.getUpdateTime().atZone(ZONE).toInstant().toEpochMilli();
+        for (String token : tokenize(name)) {
+            postings.computeIfAbsent(token, k -> new IntList()).addIfAbsentLast(doc);
+        }
+        docOfItem.put(item.getId(), doc);
+        liveDocs.set(doc);
+    }
+
+    /**
+     * 删除商品，只标记删除，倒排索引中的旧文档号在查询时被 liveDocs 过滤
+     */
+    void delete(Long itemId) {
+        Integer doc = docOfItem.remove(itemId);
+        if (doc != null) {
+            liveDocs.clear(doc);
+        }
+    }
+
+    int liveCount() {
+        return docOfItem.size();
+    }
+
+    int deletedCount() {
+        return maxDoc - docOfItem.size();
+    }
+
+    /**
+     * 找出满足条件的所有文档
+     *
+     * @param query 查询条件
+     * @return 满足条件的文档号集合
+     */
+    BitSet match(SearchQuery query) {
+        return match(query, null);
+    }
+
+    /**
+     * 找出满足条件的所有文档，同时统计分面
+     * 分面统计的规则：
+     *  1. 品牌的数量只受品牌以外的条件限制，这样选中一个品牌之后，其他品牌的数量仍然可见，分类、价格区间同理
+     *  2. 所有条件都在同一次遍历中判断，不需要为每个分面单独查询
+     *
+     * @param query  查询条件
+     * @param facets 分面计数器，为null时不统计
+     * @return 满足条件的文档号集合
+     */
+    BitSet match(SearchQuery query, FacetCounter facets) {
+        // 1.关键字：先用倒排索引求出候选文档，再校验名称中确实包含关键字，与 LIKE '%key%' 的结果一致
+        BitSet candidates;
+        String key = normalize(query.getKey());
+        if (key.isEmpty()) {
+            candidates = (BitSet) liveDocs.clone();
+        } else {
+            candidates = candidates(key);
+            candidates.and(liveDocs);
+        }
+        // 2.其他条件：按列过滤，不存在的品牌、分类用-2表示，任何文档都不满足
+        int brand = query.getBrand() == null ? -1 : brands.find(query.getBrand());
+        int category = query.getCategory() == null ? -1 : categories.find(query.getCategory());
+        if (query.getBrand() != null && brand < 0) {
+            brand = -2;
+        }
+        if (query.getCategory() != null && category < 0) {
+            category = -2;
+        }
+        if (facets != null) {
+            facets.prepare(brands.size(), categories.size());
+        }
+        BitSet result = new BitSet();
+        for (int doc = candidates.nextSetBit(0); doc >= 0; doc = candidates.nextSetBit(doc + 1)) {
+            if ((!key.isEmpty() && !names[doc].contains(key))
+                    || (query.getStatus() != null && statuses[doc] != query.getStatus())) {
+                continue;
+            }
+            boolean brandOk = brand == -1 || brandOrds[doc] == brand;
+            boolean categoryOk = category == -1 || categoryOrds[doc] == category;
+            boolean priceOk = (query.getMinPrice() == null || prices[doc] >= query.getMinPrice())
+                    && (query.getMaxPrice() == null || prices[doc] <= query.getMaxPrice());
+            if (brandOk && categoryOk && priceOk) {
+                result.set(doc);
+            }
+            if (facets != null) {
+                facets.count(brandOk, categoryOk, priceOk, brandOrds[doc], categoryOrds[doc], prices[doc]);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 把分面计数转换为结果，品牌、分类按数量降序排列
+     *
+     * @param facets 分面计数器
+     * @param size   品牌、分类最多返回的数量
+     * @return 分面统计结果
+     */
+    SearchFacets toFacets(FacetCounter facets, int size) {
+        return new SearchFacets(
+                brands.top(facets.getBrandCounts(), size),
+                categories.top(facets.getCategoryCounts(), size),
+                facets.priceRanges());
+    }
+
+    /**
+     * 对文档排序并取出一页
+     *
+     * @param docs     满足条件的文档
+     * @param sortBy   排序字段
+     * @param asc      是否升序
+     * @param from     跳过的数量
+     * @param pageSize 每页数量
+     * @return 当前页的商品id
+     */
+    List<Long> page(BitSet docs, SortField sortBy, boolean asc, int from, int pageSize) {
+        int limit = from + pageSize;
+        if (from >= docs.cardinality() || pageSize <= 0) {
+            return new ArrayList<>();
+        }
+        // 1.只保留前 from + pageSize 个文档：堆顶是当前保留的文档中排在最后的一个
+        PriorityQueue<Integer> heap = new PriorityQueue<>(limit, (a, b) -> compare(b, a, sortBy, asc));
+        for (int doc = docs.nextSetBit(0); doc >= 0; doc = docs.nextSetBit(doc + 1)) {
+            if (heap.size() < limit) {
+                heap.offer(doc);
+            } else if (compare(doc, heap.peek(), sortBy, asc) < 0) {
+                heap.poll();
+                heap.offer(doc);
+            }
+        }
+        // 2.按顺序排列，截取当前页
+        Integer[] sorted = heap.toArray(new Integer[0]);
+        Arrays.sort(sorted, (a, b) -> compare(a, b, sortBy, asc));
+        List<Long> ids = new ArrayList<>(pageSize);
+        for (int i = from; i < sorted.length; i++) {
+            ids.add(itemIds[sorted[i]]);
+        }
+        return ids;
+    }
+
+    /**
+     * 游标分页：按更新时间、商品id降序，返回排在游标之后的一页商品id
+     *
+     * @param docs      满足条件的文档
+     * @param afterTime 游标中的更新时间，为null时从第一页开始
+     * @param afterId   游标中的商品id
+     * @param pageSize  每页数量
+     * @return 当前页的商品id
+     */
+    List<Long> pageAfter(BitSet docs, LocalDateTime afterTime, Long afterId, int pageSize) {
+        if (afterTime == null) {
+            return page(docs, SortField.UPDATE_TIME, false, 0, pageSize);
+        }
+        // 只保留 (更新时间, id) 小于游标的文档，堆的大小始终只有一页
+        long time = afterTime.atZone(ZONE).toInstant().toEpochMilli();
+        BitSet after = new BitSet(maxDoc);
+        for (int doc = docs.nextSetBit(0); doc >= 0; doc = docs.nextSetBit(doc + 1)) {
+            if (updateTimes[doc] < time || (updateTimes[doc] == time && itemIds[doc] < afterId)) {
+                after.set(doc);
+            }
+        }
+        return page(after, SortField.UPDATE_TIME, false, 0, pageSize);
+    }
+
+    /**
+     * 商品的更新时间，用于生成下一页的游标
+     */
+    LocalDateTime updateTimeOf(Long itemId) {
+        Integer doc = docOfItem.get(itemId);
+        return doc == null ? null : LocalDateTime.ofInstant(Instant.ofEpochMilli(updateTimes[doc]), ZONE);
+    }
+
+    /*
+    * 比较两个文档的排序先后，排序字段相同时按商品id排序（方向与排序字段一致），保证翻页时顺序稳定，
+    * 并且按更新时间降序时与游标分页的 update_time DESC, id DESC 顺序相同
+    * */
+    private int compare(int a, int b, SortField sortBy, boolean asc) {
+        int c;
+        switch (sortBy) {
+            case PRICE:
+                c = Integer.compare(prices[a], prices[b]);
+                break;
+            case SOLD:
+                c = Integer.compare(solds[a], solds[b]);
+                break;
+            case COMMENT_COUNT:
+                c = Integer.compare(commentCounts[a], commentCounts[b]);
+                break;
+            case UPDATE_TIME:
+                c = Long.compare(updateTimes[a], updateTimes[b]);
+                break;
+            default:
+                c = 0;
+        }
+        if (c == 0) {
+            c = Long.compare(itemIds[a], itemIds[b]);
+        }
+        return asc ? c : -c;
+    }
+
+    /*
+    * 关键字的候选文档：关键字所有bigram的文档列表的交集，只有一个字符时使用unigram
+    * */
+    private BitSet candidates(String key) {
+        List<String> tokens = key.length() == 1 ? List.of(key) : bigrams(key);
+        // 从最短的文档列表开始求交集
+        List<IntList> lists = new ArrayList<>(tokens.size());
+        for (String token : tokens) {
+            IntList list = postings.get(token);
+            if (list == null) {
+                return new BitSet();
+            }
+            lists.add(list);
+        }
+        lists.sort((a, b) -> Integer.compare(a.size, b.size));
+        BitSet result = lists.get(0).toBitSet();
+        for (int i = 1; i < lists.size() && !result.isEmpty(); i++) {
+            result.and(lists.get(i).toBitSet());
+        }
+        return result;
+    }
+
+    /*
+    * 名称分词：每个字符和每两个相邻字符，中文没有空格分隔，bigram 可以覆盖任意长度的连续子串
+    * */
+    static List<String> tokenize(String name) {
+        List<String> tokens = new ArrayList<>(name.length() * 2);
+        for (int i = 0; i < name.length(); i++) {
+            tokens.add(name.substring(i, i + 1));
+        }
+        tokens.addAll(bigrams(name));
+        return tokens;
+    }
+
+    private static List<String> bigrams(String text) {
+        List<String> tokens = new ArrayList<>(Math.max(text.length() - 1, 0));
+        for (int i = 0; i + 1 < text.length(); i++) {
+            tokens.add(text.substring(i, i + 2));
+        }
+        return tokens;
+    }
+
+    /*
+    * 与 MySQL 默认的排序规则一样忽略大小写
+    * */
+    static String normalize(String text) {
+        return text == null ? "" : text.toLowerCase();
+    }
+
+    private static int valueOf(Integer value) {
+        return value == null ? 0 : value;
+    }
+
+    private void ensureCapacity(int size) {
+        if (size <= itemIds.length) {
+            return;
+        }
+        int capacity = Math.max(size, itemIds.length * 2);
+        itemIds = Arrays.copyOf(itemIds, capacity);
+        names = Arrays.copyOf(names, capacity);
+        brandOrds = Arrays.copyOf(brandOrds, capacity);
+        categoryOrds = Arrays.copyOf(categoryOrds, capacity);
+        prices = Arrays.copyOf(prices, capacity);
+        statuses = Arrays.copyOf(statuses, capacity);
+        solds = Arrays.copyOf(solds, capacity);
+        commentCounts = Arrays.copyOf(commentCounts, capacity);
+        updateTimes = Arrays.copyOf(updateTimes, capacity);
+    }
+
+    /*
+    * 递增的int列表
+    * */
+    private static class IntList {
+        private int[] values = new int[4];
+        private int size;
+
+        void addIfAbsentLast(int value) {
+            // 同一个文档中重复出现的词只记录一次
+            if (size > 0 && values[size - 1] == value) {
+                return;
+            }
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        BitSet toBitSet() {
+            BitSet bits = new BitSet();
+            for (int i = 0; i < size; i++) {
+                bits.set(values[i]);
+            }
+            return bits;
+        }
+    }
+
+    /*
+    * 字符串字典，忽略大小写的字符串 -> 序号，保留第一次出现时的原始写法
+    * */
+    private static class Dictionary {
+        private final Map<String, Integer> ords = new HashMap<>();
+        private final List<String> values = new ArrayList<>();
+
+        int ordOf(String value) {
+            if (value == null) {
+                return -1;
+            }
+            return ords.computeIfAbsent(normalize(value), v -> {
+                values.add(value);
+                return values.size() - 1;
+            });
+        }
+
+        int find(String value) {
+            Integer ord = ords.get(normalize(value));
+            return ord == null ? -1 : ord;
+        }
+
+        int size() {
+            return values.size();
+        }
+
+        /*
+        * 数量最多的前size个值，数量为0的值不返回
+        * */
+        Map<String, Integer> top(int[] counts, int size) {
+            List<Integer> ordsByCount = new ArrayList<>();
+            for (int ord = 0; ord < counts.length; ord++) {
+                if (counts[ord] > 0) {
+                    ordsByCount.add(ord);
+                }
+            }
+            ordsByCount.sort((a, b) -> Integer.compare(counts[b], counts[a]));
+            Map<String, Integer> result = new LinkedHashMap<>();
+            for (int i = 0; i < ordsByCount.size() && i < size; i++) {
+                int ord = ordsByCount.get(i);
+                result.put(values.get(ord), counts[ord]);
+            }
+            return result;
+        }
+    }
+}
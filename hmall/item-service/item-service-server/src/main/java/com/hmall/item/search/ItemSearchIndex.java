@@ -0,0 +1,232 @@
+package com.hmall.item.search;
+
+import com.baomidou.mybatisplus.core.toolkit.Wrappers;
+import com.hmall.common.domain.PageCursor;
+import com.hmall.item.config.SearchProperties;
+import com.hmall.item.domain.po.Item;
+import com.hmall.item.mapper.ItemMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/*
+* 内存中的商品搜索索引
+* 作用：
+*  1. 搜索接口原来对 item.name 执行 LIKE '%key%' 并按 update_time 排序，每次都是全表扫描
+*  2. 启动后从 item 表构建倒排索引和列存储，搜索、过滤、排序、分页都在内存中完成，只有当前页的商品再按id查询详情
+* 更新：
+*  1. 商品新增、修改、删除后，ItemServiceImpl 调用 refresh 从数据库重新读取该商品并更新索引
+*  2. 构建期间发生的更新会被记录下来，构建完成后再重新读取一次，不会丢失
+*  3. 已删除的文档过多时在后台重新构建
+* 注意：
+*  1. 索引尚未构建完成时 isReady 返回false，调用方应当查询数据库
+*  2. 多实例部署时，其他实例的修改不会通知到本实例，直到下一次重新构建
+* */
+@Slf4j
+@Component
+public class ItemSearchIndex {
+
+    private final ItemMapper itemMapper;
+    private final SearchProperties properties;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final ExecutorService builder = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "item-search-index-builder");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicBoolean building = new AtomicBoolean();
+    // 构建期间被修改过的商品
+    private final Set<Long> changedWhileBuilding = ConcurrentHashMap.newKeySet();
+    private volatile ItemIndexData data;
+
+    public ItemSearchIndex(ItemMapper itemMapper, SearchProperties properties) {
+        this.itemMapper = itemMapper;
+        this.properties = properties;
+    }
+
+    /**
+     * 应用启动完成后在后台构建索引，不阻塞启动
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        rebuildAsync();
+    }
+
+    /**
+     * 索引是否可用
+     */
+    public boolean isReady() {
+        return properties.isEnabled() && data != null;
+    }
+
+    /**
+     * 搜索商品
+     *
+     * @param query      查询条件
+     * @param sortBy     排序字段
+     * @param asc        是否升序
+     * @param from       跳过的数量
+     * @param pageSize   每页数量
+     * @param withFacets 是否同时统计品牌、分类、价格区间的分面
+     * @return 总数、当前页的商品id和分面统计
+     */
+    public SearchResult search(SearchQuery query, SortField sortBy, boolean asc, int from, int pageSize, boolean withFacets) {
+        FacetCounter facets = withFacets ? new FacetCounter(priceBounds()) : null;
+        lock.readLock().lock();
+        try {
+            BitSet docs = data.match(query, facets);
+            return new SearchResult(docs.cardinality(), data.page(docs, sortBy, asc, from, pageSize),
+                    facets == null ? null : data.toFacets(facets, properties.getFacetSize()));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 游标分页搜索商品，按更新时间、商品id降序
+     *
+     * @param query      查询条件
+     * @param after      上一页的游标，为null时返回第一页
+     * @param pageSize   每页数量
+     * @param withFacets 是否同时统计品牌、分类、价格区间的分面
+     * @return 总数、当前页的商品id、分面统计和下一页的游标
+     */
+    public SearchResult searchAfter(SearchQuery query, PageCursor after, int pageSize, boolean withFacets) {
+        FacetCounter facets = withFacets ? new FacetCounter(priceBounds()) : null;
+        lock.readLock().lock();
+        try {
+            BitSet docs = data.match(query, facets);
+            List<Long> itemIds = after == null
+                    ? data.pageAfter(docs, null, null, pageSize)
+                    : data.pageAfter(docs, after.getUpdateTime(), after.getId(), pageSize);
+            // 不足一页说明已经没有下一页
+            PageCursor nextCursor = null;
+            if (pageSize > 0 && itemIds.size() == pageSize) {
+                Long lastId = itemIds.get(itemIds.size() - 1);
+                nextCursor = new PageCursor(data.updateTimeOf(lastId), lastId);
+            }
+            return new SearchResult(docs.cardinality(), itemIds,
+                    facets == null ? null : data.toFacets(facets, properties.getFacetSize()), nextCursor);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private int[] priceBounds() {
+        return properties.getPriceRanges().stream().mapToInt(Integer::intValue).sorted().distinct().toArray();
+    }
+
+    /**
+     * 从数据库重新读取商品并更新索引，商品不存在时从索引中删除
+     *
+     * @param itemId 商品id
+     */
+    public void refresh(Long itemId) {
+        if (itemId == null) {
+            return;
+        }
+        if (building.get()) {
+            changedWhileBuilding.add(itemId);
+        }
+        if (data == null) {
+            return;
+        }
+        Item item = itemMapper.selectById(itemId);
+        boolean tooManyDeleted;
+        lock.writeLock().lock();
+        try {
+            // 在锁内读取 data，保证更新不会落在即将被替换的旧索引上
+            apply(data, itemId, item);
+            tooManyDeleted = data.deletedCount() > data.liveCount() * properties.getRebuildDeletedRatio();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        if (tooManyDeleted) {
+            rebuildAsync();
+        }
+    }
+
+    /**
+     * 在后台重新构建索引，已经在构建时忽略
+     */
+    public void rebuildAsync() {
+        if (!building.compareAndSet(false, true)) {
+            return;
+        }
+        builder.execute(() -> {
+            try {
+                rebuild();
+            } catch (Exception e) {
+                log.error("商品搜索索引构建失败", e);
+            } finally {
+                building.set(false);
+            }
+        });
+    }
+
+    private void replayChanges(ItemIndexData target) {
+        for (Long itemId : changedWhileBuilding) {
+            changedWhileBuilding.remove(itemId);
+            apply(target, itemId, itemMapper.selectById(itemId));
+        }
+    }
+
+    private static void apply(ItemIndexData target, Long itemId, Item item) {
+        if (item == null) {
+            target.delete(itemId);
+        } else {
+            target.upsert(item);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        builder.shutdownNow();
+    }
+
+    /*
+    * 按id分批读取全部商品构建新索引，然后替换旧索引
+    * */
+    private void rebuild() {
+        long start = System.currentTimeMillis();
+        changedWhileBuilding.clear();
+        ItemIndexData fresh = new ItemIndexData();
+        long lastId = 0;
+        while (true) {
+            List<Item> items = itemMapper.selectList(Wrappers.<Item>lambdaQuery()
+                    .select(Item::getId, Item::getName, Item::getBrand, Item::getCategory, Item::getPrice,
+                            Item::getStatus, Item::getSold, Item::getCommentCount, Item::getUpdateTime)
+                    .gt(Item::getId, lastId)
+                    .orderByAsc(Item::getId)
+                    .last("LIMIT " + properties.getBuildBatchSize()));
+            for (Item item : items) {
+                fresh.upsert(item);
+            }
+            if (items.size() < properties.getBuildBatchSize()) {
+                break;
+            }
+            lastId = items.get(items.size() - 1).getId();
+        }
+        // 重新读取构建期间被修改过的商品，最后一批在写锁内处理，然后替换
+        replayChanges(fresh);
+        lock.writeLock().lock();
+        try {
+            replayChanges(fresh);
+            data = fresh;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        log.info("商品搜索索引构建完成，商品数量：{}，耗时：{}ms", fresh.liveCount(), System.currentTimeMillis() - start);
+    }
+}
@@ -0,0 +1,39 @@
+package com.hmall.item.search;
+
+import io.swagger.annotations.ApiModel;
+import io.swagger.annotations.ApiModelProperty;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+import java.util.Map;
+
+/*
+* 搜索结果的分面统计
+* */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@ApiModel(description = "搜索分面统计")
+public class SearchFacets {
+    @ApiModelProperty("品牌 -> 商品数量，按数量降序")
+    private Map<String, Integer> brands;
+    @ApiModelProperty("分类 -> 商品数量，按数量降序")
+    private Map<String, Integer> categories;
+    @ApiModelProperty("价格区间的商品数量")
+    private List<PriceRange> prices;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    @ApiModel(description = "价格区间")
+    public static class PriceRange {
+        @ApiModelProperty("最低价格（分，含）")
+        private Integer min;
+        @ApiModelProperty("最高价格（分，不含），为null表示不限")
+        private Integer max;
+        @ApiModelProperty("商品数量")
+        private Integer count;
+    }
+}
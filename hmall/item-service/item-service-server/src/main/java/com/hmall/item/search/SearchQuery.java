@@ -0,0 +1,36 @@
+package com.hmall.item.search;
+
+import lombok.Data;
+import lombok.experimental.Accessors;
+
+/*
+* 搜索索引的查询条件，字段为null表示不过滤
+* */
+@Data
+@Accessors(chain = true)
+public class SearchQuery {
+    /**
+     * 名称中包含的关键字
+     */
+    private String key;
+    /**
+     * 品牌
+     */
+    private String brand;
+    /**
+     * 分类
+     */
+    private String category;
+    /**
+     * 最低价格（含）
+     */
+    private Integer minPrice;
+    /**
+     * 最高价格（含）
+     */
+    private Integer maxPrice;
+    /**
+     * 商品状态
+     */
+    private Integer status;
+}
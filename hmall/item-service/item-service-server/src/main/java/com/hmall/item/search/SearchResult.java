@@ -0,0 +1,37 @@
+package com.hmall.item.search;
+
+import com.hmall.common.domain.PageCursor;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/*
+* 搜索索引的查询结果
+* */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SearchResult {
+    /**
+     * 满足条件的商品总数
+     */
+    private long total;
+    /**
+     * 当前页的商品id，已排好序
+     */
+    private List<Long> itemIds;
+    /**
+     * 分面统计，不需要时为null
+     */
+    private SearchFacets facets;
+    /**
+     * 游标分页时下一页的游标，没有下一页或不是游标分页时为null
+     */
+    private PageCursor nextCursor;
+
+    public SearchResult(long total, List<Long> itemIds, SearchFacets facets) {
+        this(total, itemIds, facets, null);
+    }
+}
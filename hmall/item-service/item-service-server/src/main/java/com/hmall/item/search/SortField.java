@@ -0,0 +1,32 @@
+package com.hmall.item.search;
+
+/*
+* 搜索索引支持的排序字段
+* */
+public enum SortField {
+    UPDATE_TIME("update_time"),
+    PRICE("price"),
+    SOLD("sold"),
+    COMMENT_COUNT("comment_count");
+
+    private final String column;
+
+    SortField(String column) {
+        this.column = column;
+    }
+
+    /**
+     * 根据数据库列名查找排序字段
+     *
+     * @param column 列名，例如 update_time，也可以是驼峰形式的 updateTime
+     * @return 排序字段，不支持的列返回null
+     */
+    public static SortField ofColumn(String column) {
+        for (SortField field : values()) {
+            if (field.column.equalsIgnoreCase(column) || field.column.replace("_", "").equalsIgnoreCase(column)) {
+                return field;
+            }
+        }
+        return null;
+    }
+}
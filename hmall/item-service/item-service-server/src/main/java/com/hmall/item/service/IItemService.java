@@ -1,9 +1,14 @@
 package com.hmall.item.service;
 
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
 import com.baomidou.mybatisplus.extension.service.IService;
+import com.hmall.common.domain.PageDTO;
+import com.hmall.common.domain.PageQuery;
 import com.hmall.common.domain.dto.OrderDetailDTO;
 import com.hmall.item.api.dto.ItemDTO;
 import com.hmall.item.domain.po.Item;
+import com.hmall.item.domain.query.ItemPageQuery;
+import com.hmall.item.domain.vo.ItemSearchVO;
 
 
 import java.util.Collection;
@@ -18,5 +23,13 @@ public interface IItemService extends IService<Item> {
 
     void deductStock(List<OrderDetailDTO> items);
 
+    void restoreStock(List<OrderDetailDTO> items);
+
     List<ItemDTO> queryItemByIds(Collection<Long> ids);
+
+    ItemDTO queryItemById(Long id);
+
+    ItemSearchVO searchByIndex(ItemPageQuery query, boolean withFacets);
+
+    PageDTO<ItemDTO> queryItemPage(LambdaQueryWrapper<Item> wrapper, PageQuery query);
 }
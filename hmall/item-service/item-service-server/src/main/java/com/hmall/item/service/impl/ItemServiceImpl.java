@@ -1,18 +1,45 @@
 package com.hmall.item.service.impl;
 
+import cn.hutool.core.util.BooleanUtil;
+import cn.hutool.core.util.StrUtil;
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.hmall.common.domain.PageCursor;
+import com.hmall.common.domain.PageDTO;
+import com.hmall.common.domain.PageQuery;
 import com.hmall.common.domain.dto.OrderDetailDTO;
 import com.hmall.common.exception.BizIllegalException;
 import com.hmall.common.utils.BeanUtils;
+import com.hmall.common.utils.CollUtils;
 
 import com.hmall.item.api.dto.ItemDTO;
+import com.hmall.item.cache.ItemCache;
+import com.hmall.item.cache.ItemStock;
+import com.hmall.item.cache.ItemStockTable;
 import com.hmall.item.domain.po.Item;
+import com.hmall.item.domain.query.ItemPageQuery;
+import com.hmall.item.domain.vo.ItemSearchVO;
 import com.hmall.item.mapper.ItemMapper;
+import com.hmall.item.search.ItemSearchIndex;
+import com.hmall.item.search.SearchQuery;
+import com.hmall.item.search.SearchResult;
+import com.hmall.item.search.SortField;
 import com.hmall.item.service.IItemService;
+import com.hmall.item.stock.ItemStockWriter;
+import com.hmall.item.stock.StockReservationEngine;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.stereotype.Service;
 
+import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 /**
  * <p>
@@ -20,24 +47,260 @@ import java.util.List;
  * </p>
  */
 @Service
+@RequiredArgsConstructor
 public class ItemServiceImpl extends ServiceImpl<ItemMapper, Item> implements IItemService {
 
+    // 商品静态属性缓存
+    private final ItemCache itemCache;
+    // 商品实时库存表
+    private final ItemStockTable itemStockTable;
+    // db 模式下的库存批量写入
+    private final ItemStockWriter itemStockWriter;
+    // memory 模式下的库存预占引擎，db 模式下不存在
+    private final ObjectProvider<StockReservationEngine> reservationEngine;
+    // 内存搜索索引
+    private final ItemSearchIndex itemSearchIndex;
+
+    /*
+    * 扣减库存
+    * 模式：
+    *  1. db：在一个事务中批量执行带库存校验的扣减语句，任意商品库存不足时全部回滚
+    *  2. memory：由 StockReservationEngine 在内存中预占库存，异步批量落库
+    * 扣减成功后同步扣减 ItemStockTable 中的库存
+    * */
     @Override
     public void deductStock(List<OrderDetailDTO> items) {
-        String sqlStatement = "com.hmall.item.mapper.ItemMapper.updateStock";
-        boolean r = false;
+        StockReservationEngine engine = reservationEngine.getIfAvailable();
         try {
-            r = executeBatch(items, (sqlSession, entity) -> sqlSession.update(sqlStatement, entity));
+            if (engine != null) {
+                engine.reserve(items);
+            } else {
+                itemStockWriter.deductAll(items);
+            }
+        } catch (BizIllegalException e) {
+            throw e;
         } catch (Exception e) {
+            // 扣减失败时无法确定数据库中的库存，让这些商品的库存重新加载
+            itemStockTable.invalidate(items.stream().map(OrderDetailDTO::getItemId).collect(Collectors.toList()));
             throw new BizIllegalException("更新库存异常，可能是库存不足!", e);
         }
-        if (!r) {
-            throw new BizIllegalException("库存不足！");
+        // 扣减成功，同步扣减内存中的库存
+        for (OrderDetailDTO item : items) {
+            itemStockTable.addStock(item.getItemId(), -item.getNum());
         }
     }
 
+    /*
+    * 归还库存，与 deductStock 使用相同的模式
+    * 归还成功后同步增加 ItemStockTable 中的库存
+    * */
+    @Override
+    public void restoreStock(List<OrderDetailDTO> items) {
+        StockReservationEngine engine = reservationEngine.getIfAvailable();
+        try {
+            if (engine != null) {
+                engine.release(items);
+            } else {
+                itemStockWriter.restoreAll(items);
+            }
+        } catch (BizIllegalException e) {
+            throw e;
+        } catch (Exception e) {
+            itemStockTable.invalidate(items.stream().map(OrderDetailDTO::getItemId).collect(Collectors.toList()));
+            throw new BizIllegalException("归还库存异常!", e);
+        }
+        for (OrderDetailDTO item : items) {
+            itemStockTable.addStock(item.getItemId(), item.getNum());
+        }
+    }
+
+    /*
+    * 根据id批量查询商品
+    * 流程：
+    *  1. 从静态属性缓存中查询商品，只有未命中的id才查询数据库
+    *  2. 从实时库存表中查询库存，只有未命中的id才查询数据库（只查询 id、stock、sold 三列）
+    *  3. 把库存叠加到静态属性的副本上返回，缓存中的对象不会被修改
+    * */
     @Override
     public List<ItemDTO> queryItemByIds(Collection<Long> ids) {
-        return BeanUtils.copyList(listByIds(ids), ItemDTO.class);
+        // 1.查询静态属性
+        List<ItemDTO> items = itemCache.getAll(ids, this::loadStaticItems);
+        if (CollUtils.isEmpty(items)) {
+            return CollUtils.emptyList();
+        }
+        // 2.查询实时库存
+        Map<Long, ItemStock> stocks = itemStockTable.getAll(
+                items.stream().map(ItemDTO::getId).collect(Collectors.toList()), this::loadStocks);
+        // 3.叠加库存
+        List<ItemDTO> result = new ArrayList<>(items.size());
+        for (ItemDTO item : items) {
+            ItemStock stock = stocks.get(item.getId());
+            if (stock != null) {
+                result.add(withStock(item, stock));
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public ItemDTO queryItemById(Long id) {
+        List<ItemDTO> items = queryItemByIds(CollUtils.singletonList(id));
+        return CollUtils.isEmpty(items) ? null : items.get(0);
+    }
+
+    /*
+    * 使用内存索引搜索商品
+    * 流程：
+    *  1. 在索引中完成关键字匹配、过滤、排序和分页，得到总数和当前页的商品id
+    *  2. 需要分面统计时，在同一次遍历中统计品牌、分类、价格区间的数量
+    *  3. 当前页的商品详情通过 queryItemByIds 查询，走商品缓存
+    * 返回null表示索引不可用（未启用、构建中或不支持的排序字段），调用方应当查询数据库
+    * */
+    @Override
+    public ItemSearchVO searchByIndex(ItemPageQuery query, boolean withFacets) {
+        // 1.与数据库查询相同的默认排序：未指定排序字段时按更新时间降序，游标分页固定按更新时间降序
+        boolean defaultSort = query.useCursor() || StrUtil.isBlank(query.getSortBy());
+        SortField sortField = SortField.ofColumn(defaultSort ? "update_time" : query.getSortBy());
+        if (!itemSearchIndex.isReady() || sortField == null) {
+            return null;
+        }
+        boolean asc = !defaultSort && BooleanUtil.isTrue(query.getIsAsc());
+        // 2.搜索，最低价、最高价各自独立生效，与数据库查询一致
+        SearchQuery searchQuery = new SearchQuery()
+                .setKey(StrUtil.isBlank(query.getKey()) ? null : query.getKey())
+                .setBrand(StrUtil.isBlank(query.getBrand()) ? null : query.getBrand())
+                .setCategory(StrUtil.isBlank(query.getCategory()) ? null : query.getCategory())
+                .setMinPrice(query.getMinPrice())
+                .setMaxPrice(query.getMaxPrice())
+                .setStatus(1);
+        SearchResult result = query.useCursor()
+                ? itemSearchIndex.searchAfter(searchQuery, PageCursor.decode(query.getCursor()), query.getPageSize(), withFacets)
+                : itemSearchIndex.search(searchQuery, sortField, asc, query.from(), query.getPageSize(), withFacets);
+        // 3.查询当前页的商品详情，索引中总数是现成的，不需要额外开销
+        long pages = (result.getTotal() + query.getPageSize() - 1) / query.getPageSize();
+        ItemSearchVO vo = new ItemSearchVO(result.getTotal(), pages, queryItemByIds(result.getItemIds()), result.getFacets());
+        vo.setNextCursor(result.getNextCursor() == null ? null : result.getNextCursor().encode());
+        return vo;
+    }
+
+    /*
+    * 分页查询数据库中的商品
+    * 1. 普通分页：按 PageQuery 的页码和排序方式，默认按更新时间降序，withTotal=false 时不执行COUNT
+    * 2. 游标分页：按 update_time、id 降序，条件 (update_time, id) < 游标，只读取一页数据，
+    *    翻到多深都不需要扫描并丢弃前面的行；只有第一页按需统计总数，之后的页统计的只是剩余数量，没有意义
+    * */
+    @Override
+    public PageDTO<ItemDTO> queryItemPage(LambdaQueryWrapper<Item> wrapper, PageQuery query) {
+        // 1.普通分页
+        if (!query.useCursor()) {
+            return PageDTO.of(page(query.toMpPage("update_time", false), wrapper), ItemDTO.class);
+        }
+        // 2.游标分页，从游标之后开始读取
+        PageCursor after = PageCursor.decode(query.getCursor());
+        if (after != null) {
+            wrapper.and(w -> w.lt(Item::getUpdateTime, after.getUpdateTime())
+                    .or(o -> o.eq(Item::getUpdateTime, after.getUpdateTime()).lt(Item::getId, after.getId())));
+        }
+        wrapper.orderByDesc(Item::getUpdateTime).orderByDesc(Item::getId);
+        Page<Item> page = page(new Page<>(1, query.getPageSize(), after == null && query.needTotal()), wrapper);
+        // 3.满一页时，用最后一条数据生成下一页的游标
+        PageDTO<ItemDTO> result = PageDTO.of(page, ItemDTO.class);
+        List<Item> records = page.getRecords();
+        if (records.size() == query.getPageSize()) {
+            Item last = records.get(records.size() - 1);
+            result.setNextCursor(new PageCursor(last.getUpdateTime(), last.getId()).encode());
+        }
+        return result;
+    }
+
+    /*
+    * 新增商品后加入搜索索引
+    * */
+    @Override
+    public boolean save(Item entity) {
+        boolean saved = super.save(entity);
+        itemSearchIndex.refresh(entity.getId());
+        return saved;
+    }
+
+    /*
+    * 更新商品（包括修改状态）后失效缓存并更新搜索索引，修改了库存或销量时同时失效库存
+    * */
+    @Override
+    public boolean updateById(Item entity) {
+        boolean updated = super.updateById(entity);
+        itemCache.invalidate(entity.getId());
+        itemSearchIndex.refresh(entity.getId());
+        if (entity.getStock() != null || entity.getSold() != null) {
+            itemStockTable.invalidate(entity.getId());
+            // 后台修改了库存，内存中预占的库存以数据库为准
+            reservationEngine.ifAvailable(engine -> engine.reload(entity.getId()));
+        }
+        return updated;
+    }
+
+    /*
+    * 删除商品后失效缓存，并从搜索索引中删除
+    * */
+    @Override
+    public boolean removeById(Serializable id) {
+        boolean removed = super.removeById(id);
+        if (id instanceof Long) {
+            itemCache.invalidate((Long) id);
+            itemStockTable.invalidate((Long) id);
+            itemSearchIndex.refresh((Long) id);
+        }
+        return removed;
+    }
+
+    /*
+    * 从数据库加载商品的静态属性，顺便预热库存表
+    * */
+    private List<ItemDTO> loadStaticItems(Set<Long> ids) {
+        List<Item> items = listByIds(ids);
+        List<ItemDTO> result = new ArrayList<>(items.size());
+        for (Item item : items) {
+            itemStockTable.putIfAbsent(item.getId(), item.getStock(), item.getSold());
+            ItemDTO dto = BeanUtils.copyBean(item, ItemDTO.class);
+            dto.setStock(null);
+            dto.setSold(null);
+            result.add(dto);
+        }
+        return result;
+    }
+
+    /*
+    * 从数据库加载商品的库存，只查询需要的列
+    * */
+    private Map<Long, ItemStock> loadStocks(Set<Long> ids) {
+        List<Item> items = lambdaQuery()
+                .select(Item::getId, Item::getStock, Item::getSold)
+                .in(Item::getId, ids)
+                .list();
+        Map<Long, ItemStock> result = new HashMap<>(items.size() * 2);
+        for (Item item : items) {
+            result.put(item.getId(), new ItemStock(item.getStock(), item.getSold()));
+        }
+        return result;
+    }
+
+    /*
+    * 复制静态属性并填充库存，不修改缓存中的对象
+    * */
+    private static ItemDTO withStock(ItemDTO item, ItemStock stock) {
+        ItemDTO dto = new ItemDTO();
+        dto.setId(item.getId());
+        dto.setName(item.getName());
+        dto.setPrice(item.getPrice());
+        dto.setImage(item.getImage());
+        dto.setCategory(item.getCategory());
+        dto.setBrand(item.getBrand());
+        dto.setSpec(item.getSpec());
+        dto.setCommentCount(item.getCommentCount());
+        dto.setIsAD(item.getIsAD());
+        dto.setStatus(item.getStatus());
+        dto.setStock(stock.getStock());
+        dto.setSold(stock.getSold());
+        return dto;
     }
 }
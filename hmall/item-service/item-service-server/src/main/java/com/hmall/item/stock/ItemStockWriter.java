@@ -0,0 +1,116 @@
+package com.hmall.item.stock;
+
+import com.hmall.common.domain.dto.OrderDetailDTO;
+import com.hmall.common.exception.BizIllegalException;
+import com.hmall.item.mapper.ItemMapper;
+import com.hmall.item.mapper.StockCheckpointMapper;
+import lombok.RequiredArgsConstructor;
+import org.apache.ibatis.executor.BatchResult;
+import org.apache.ibatis.session.ExecutorType;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Consumer;
+
+/*
+* 库存批量写入
+* 作用：
+*  1. 使用 MyBatis 的 BATCH 执行器，一次往返执行多条带库存校验的扣减语句
+*  2. 读取每条语句的影响行数，找出库存不足的商品
+* 注意：
+*  1. 如果 JDBC 开启了 rewriteBatchedStatements，驱动可能返回 SUCCESS_NO_INFO，此时无法区分单条语句的结果，按成功处理
+* */
+@Component
+@RequiredArgsConstructor
+public class ItemStockWriter {
+
+    private final SqlSessionFactory sqlSessionFactory;
+    private final TransactionTemplate transactionTemplate;
+    private final StockCheckpointMapper stockCheckpointMapper;
+
+    /**
+     * 在一个事务中扣减所有商品的库存，任意商品库存不足时全部回滚
+     *
+     * @param items 商品id和扣减数量
+     * @throws BizIllegalException 库存不足
+     */
+    public void deductAll(List<OrderDetailDTO> items) {
+        transactionTemplate.executeWithoutResult(status -> {
+            List<Long> insufficient = executeDeduct(items);
+            if (!insufficient.isEmpty()) {
+                status.setRollbackOnly();
+                throw new BizIllegalException("库存不足！");
+            }
+        });
+    }
+
+    /**
+     * 在一个事务中归还所有商品的库存
+     *
+     * @param items 商品id和归还数量
+     */
+    public void restoreAll(List<OrderDetailDTO> items) {
+        transactionTemplate.executeWithoutResult(status -> {
+            try (SqlSession session = sqlSessionFactory.openSession(ExecutorType.BATCH)) {
+                ItemMapper mapper = session.getMapper(ItemMapper.class);
+                for (OrderDetailDTO item : items) {
+                    mapper.restoreStock(item);
+                }
+                session.flushStatements();
+            }
+        });
+    }
+
+    /**
+     * 把内存中累计的库存变化落库，并在同一个事务中保存预写日志的检查点
+     *
+     * @param items          商品id和累计扣减数量
+     * @param nodeId         当前实例的唯一标识
+     * @param seq            本次落库覆盖的最大日志序号
+     * @param onInsufficient 有商品库存不足时在事务提交前回调，参数是这些商品的id，抛出异常时事务回滚
+     * @return 数据库中库存不足、没有扣减成功的商品id
+     */
+    public List<Long> flush(Collection<OrderDetailDTO> items, String nodeId, long seq, Consumer<List<Long>> onInsufficient) {
+        return transactionTemplate.execute(status -> {
+            List<Long> insufficient = executeDeduct(items);
+            if (!insufficient.isEmpty()) {
+                onInsufficient.accept(insufficient);
+            }
+            stockCheckpointMapper.saveSeq(nodeId, seq);
+            return insufficient;
+        });
+    }
+
+    private List<Long> executeDeduct(Collection<OrderDetailDTO> items) {
+        List<OrderDetailDTO> list = new ArrayList<>(items);
+        List<Long> insufficient = new ArrayList<>();
+        if (list.isEmpty()) {
+            return insufficient;
+        }
+        // 在Spring事务中打开的session会复用事务的连接，由事务统一提交或回滚
+        try (SqlSession session = sqlSessionFactory.openSession(ExecutorType.BATCH)) {
+            ItemMapper mapper = session.getMapper(ItemMapper.class);
+            for (OrderDetailDTO item : list) {
+                mapper.deductStockIfEnough(item);
+            }
+            int index = 0;
+            for (BatchResult result : session.flushStatements()) {
+                for (int count : result.getUpdateCounts()) {
+                    if (count == 0) {
+                        insufficient.add(list.get(index).getItemId());
+                    } else if (count != Statement.SUCCESS_NO_INFO && count < 0) {
+                        throw new BizIllegalException("更新库存异常!");
+                    }
+                    index++;
+                }
+            }
+        }
+        return insufficient;
+    }
+}
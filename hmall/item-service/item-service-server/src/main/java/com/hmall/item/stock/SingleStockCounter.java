@@ -0,0 +1,38 @@
+package com.hmall.item.stock;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+* 单值库存计数器，所有请求在同一个 AtomicInteger 上 CAS
+* */
+public class SingleStockCounter implements StockCounter {
+
+    private final AtomicInteger stock;
+
+    public SingleStockCounter(int stock) {
+        this.stock = new AtomicInteger(stock);
+    }
+
+    @Override
+    public boolean tryDeduct(int num, int hint) {
+        while (true) {
+            int current = stock.get();
+            if (current < num) {
+                return false;
+            }
+            if (stock.compareAndSet(current, current - num)) {
+                return true;
+            }
+        }
+    }
+
+    @Override
+    public void add(int num, int hint) {
+        stock.addAndGet(num);
+    }
+
+    @Override
+    public int get() {
+        return stock.get();
+    }
+}
@@ -0,0 +1,32 @@
+package com.hmall.item.stock;
+
+/*
+* 单个商品的内存库存计数器
+* 注意：
+*  1. 所有实现都必须保证不超卖：tryDeduct 成功的数量之和不超过初始库存加上 add 的数量
+*  2. hint 用于把并发请求分散到不同的子桶上，同一个用户的请求最好使用相同的hint
+* */
+public interface StockCounter {
+
+    /**
+     * 尝试扣减库存
+     *
+     * @param num  扣减数量
+     * @param hint 分散请求的提示值，例如用户id的哈希
+     * @return 库存充足、扣减成功时返回true
+     */
+    boolean tryDeduct(int num, int hint);
+
+    /**
+     * 增加库存，例如回滚已扣减的库存
+     *
+     * @param num  增加的数量
+     * @param hint 分散请求的提示值
+     */
+    void add(int num, int hint);
+
+    /**
+     * 当前的可用库存
+     */
+    int get();
+}
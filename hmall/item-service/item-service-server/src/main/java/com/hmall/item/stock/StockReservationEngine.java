@@ -0,0 +1,474 @@
+package com.hmall.item.stock;
+
+import cn.hutool.core.util.StrUtil;
+import com.baomidou.mybatisplus.core.toolkit.Wrappers;
+import com.hmall.common.domain.dto.OrderDetailDTO;
+import com.hmall.common.exception.BizIllegalException;
+import com.hmall.common.utils.CollUtils;
+import com.hmall.common.utils.UserContext;
+import com.hmall.common.utils.WriteAheadLog;
+import com.hmall.item.config.StockProperties;
+import com.hmall.item.domain.po.Item;
+import com.hmall.item.mapper.ItemMapper;
+import com.hmall.item.mapper.StockCheckpointMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Collectors;
+
+/*
+* 内存库存预占引擎，hm.item.stock.mode=memory 时启用
+* 作用：
+*  1. 秒杀时大量请求扣减同一个商品，直接更新数据库会在同一行的行锁上排队
+*  2. 在内存中用 CAS 预占库存，库存不足时直接拒绝，不访问数据库
+*  3. 预占成功的库存变化先写预写日志，再由后台线程按商品聚合后批量落库
+* 流程：
+*  1. reserve：按商品id排序后逐个在 StockCounter 上扣减，任意商品不足时回滚已扣减的部分（全部成功或全部失败）
+*  2. 扣减成功后写预写日志并累加到待落库的变化中，释放读锁后等待日志刷盘，刷盘成功才算预占成功
+*  3. flush：定期取出待落库的变化，在一个事务中批量更新数据库并保存日志序号，然后记录本地检查点
+*  4. 启动时：读取数据库中保存的序号，重放之后的日志并立即落库，然后才开始接受请求
+* 注意：
+*  1. 商品的内存库存在第一次扣减时从数据库加载，之后以内存为准，多个实例不能同时以 memory 模式扣减同一批商品；
+*     nodeId 必须配置，检查点按 nodeId 保存，与 walDir 中的日志一一对应
+*  2. 落库语句带有 stock >= num 的校验，数据库中库存被外部修改导致不足时，已经确认的预占不能丢弃：
+*     在落库事务提交前把这部分扣减量写成一条补记日志，提交后放回待落库的变化中，下个周期继续重试，
+*     同时以数据库为准重新加载内存库存（扣除这部分欠量），补充库存之前不再接受该商品的预占
+*  3. 补记日志带有所属落库的序号，重放时只有该序号已经保存到数据库中（落库事务已提交）才生效，否则原始日志仍在重放范围内
+*  4. 写日志和累加变化持有读锁，落库前切换日志段并取出变化时持有写锁，保证取出的变化与日志序号一一对应；
+*     切换日志段时会先刷盘，等待刷盘不持有读锁，并发的预占由日志的组提交合并为一次刷盘
+* */
+@Slf4j
+@Component
+@ConditionalOnProperty(prefix = "hm.item.stock", name = "mode", havingValue = "memory")
+public class StockReservationEngine {
+
+    // 补记日志的前缀，格式：carry:所属落库的序号;商品id:数量,商品id:数量
+    private static final String CARRY_PREFIX = "carry:";
+
+    private final StockProperties properties;
+    private final ItemMapper itemMapper;
+    private final StockCheckpointMapper stockCheckpointMapper;
+    private final ItemStockWriter itemStockWriter;
+    // 商品id -> 内存中的可用库存
+    private final Map<Long, StockCounter> available = new ConcurrentHashMap<>();
+    // 商品id -> 已预占、尚未落库的扣减量
+    // 热门商品的并发请求都会累加同一个值，使用 LongAdder 避免竞争；取出时持有写锁，没有并发累加
+    private final Map<Long, LongAdder> pending = new ConcurrentHashMap<>();
+    private final ReentrantReadWriteLock pendingLock = new ReentrantReadWriteLock();
+    // 同一时刻只有一个线程落库或重新加载库存
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private final ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "item-stock-flusher");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Counter rejectedCounter;
+    private final Timer flushTimer;
+    private WriteAheadLog wal;
+
+    public StockReservationEngine(StockProperties properties, ItemMapper itemMapper,
+                                  StockCheckpointMapper stockCheckpointMapper, ItemStockWriter itemStockWriter,
+                                  ObjectProvider<MeterRegistry> registryProvider) {
+        this.properties = properties;
+        this.itemMapper = itemMapper;
+        this.stockCheckpointMapper = stockCheckpointMapper;
+        this.itemStockWriter = itemStockWriter;
+        MeterRegistry registry = registryProvider.getIfAvailable(() -> Metrics.globalRegistry);
+        this.rejectedCounter = Counter.builder("item.stock.reservations.rejected").register(registry);
+        this.flushTimer = Timer.builder("item.stock.flush").register(registry);
+    }
+
+    @PostConstruct
+    public void start() throws IOException {
+        if (StrUtil.isBlank(properties.getNodeId())) {
+            throw new IllegalStateException("库存 memory 模式必须配置 hm.item.stock.node-id");
+        }
+        // 1.打开预写日志，序号从数据库中保存的检查点之后开始
+        stockCheckpointMapper.createTableIfAbsent();
+        Long dbSeq = stockCheckpointMapper.getSeq(properties.getNodeId());
+        long flushedSeq = dbSeq == null ? 0 : dbSeq;
+        wal = new WriteAheadLog(Paths.get(properties.getWalDir()), "stock", properties.isWalFsync());
+        wal.ensureSeqAfter(flushedSeq);
+        // 2.重放已预占、尚未落库的日志
+        List<WriteAheadLog.Entry> entries = wal.readFrom(flushedSeq);
+        if (!entries.isEmpty()) {
+            Map<Long, Integer> deltas = new TreeMap<>();
+            for (WriteAheadLog.Entry entry : entries) {
+                String payload = entry.getPayload();
+                if (payload.startsWith(CARRY_PREFIX)) {
+                    int separator = payload.indexOf(';');
+                    if (Long.parseLong(payload.substring(CARRY_PREFIX.length(), separator)) > flushedSeq) {
+                        // 所属的落库事务没有提交，其中的扣减量仍包含在被重放的原始日志中
+                        continue;
+                    }
+                    payload = payload.substring(separator + 1);
+                }
+                decode(payload).forEach((id, num) -> deltas.merge(id, num, Integer::sum));
+            }
+            long seq = wal.roll();
+            Map<Long, Integer> carried = new TreeMap<>();
+            List<Long> insufficient = itemStockWriter.flush(toDetails(deltas), properties.getNodeId(), seq,
+                    ids -> carry(ids, deltas, seq, carried));
+            wal.checkpoint(seq);
+            log.info("重放库存预写日志{}条，涉及商品{}个", entries.size(), deltas.size());
+            if (!insufficient.isEmpty()) {
+                // 商品第一次加载时会从数据库库存中扣除这部分欠量
+                carried.forEach((id, num) -> pending.computeIfAbsent(id, k -> new LongAdder()).add(num));
+                log.error("重放库存预写日志时以下商品库存不足，扣减量保留到下次落库：{}", carried);
+            }
+        } else {
+            wal.checkpoint(wal.roll());
+        }
+        // 3.开始定期落库
+        long interval = properties.getFlushInterval().toMillis();
+        flusher.scheduleWithFixedDelay(this::flushQuietly, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 预占库存，全部商品都预占成功才返回
+     *
+     * @param items 商品id和扣减数量
+     * @throws BizIllegalException 商品不存在、库存不足或日志写入失败
+     */
+    public void reserve(List<OrderDetailDTO> items) {
+        // 1.按商品id聚合并排序
+        Map<Long, Integer> deltas = new TreeMap<>();
+        for (OrderDetailDTO item : items) {
+            if (item.getItemId() == null || item.getNum() == null || item.getNum() <= 0) {
+                throw new BizIllegalException("扣减的商品或数量不合法！");
+            }
+            deltas.merge(item.getItemId(), item.getNum(), Integer::sum);
+        }
+        if (deltas.isEmpty()) {
+            return;
+        }
+        // 2.加载尚未在内存中的商品库存
+        loadMissing(deltas.keySet());
+        int hint = hint();
+        long seq;
+        pendingLock.readLock().lock();
+        try {
+            // 3.逐个 CAS 扣减，失败时回滚
+            List<Map.Entry<Long, Integer>> reserved = new ArrayList<>(deltas.size());
+            for (Map.Entry<Long, Integer> delta : deltas.entrySet()) {
+                StockCounter stock = available.get(delta.getKey());
+                if (stock == null) {
+                    // 加载之后商品被删除
+                    rollback(reserved, hint);
+                    throw new BizIllegalException("商品不存在！");
+                }
+                if (!stock.tryDeduct(delta.getValue(), hint)) {
+                    rollback(reserved, hint);
+                    rejectedCounter.increment();
+                    throw new BizIllegalException("库存不足！");
+                }
+                reserved.add(delta);
+            }
+            // 4.写预写日志，写入失败时回滚
+            try {
+                seq = wal.write(encode(deltas));
+            } catch (IOException e) {
+                rollback(reserved, hint);
+                throw new BizIllegalException("扣减库存异常！", e);
+            }
+            // 5.累加到待落库的变化
+            deltas.forEach((id, num) -> pending.computeIfAbsent(id, k -> new LongAdder()).add(num));
+        } finally {
+            pendingLock.readLock().unlock();
+        }
+        // 6.不持有锁等待刷盘，失败时回滚内存库存和待落库的变化
+        try {
+            wal.sync(seq);
+        } catch (IOException e) {
+            undo(deltas, hint);
+            throw new BizIllegalException("扣减库存异常！", e);
+        }
+    }
+
+    /**
+     * 归还已预占的库存，例如下单失败后的补偿
+     * 归还量以负的扣减量写入日志和待落库的变化，落库时与扣减合并
+     *
+     * @param items 商品id和归还数量
+     * @throws BizIllegalException 商品不存在或日志写入失败
+     */
+    public void release(List<OrderDetailDTO> items) {
+        // 1.按商品id聚合
+        Map<Long, Integer> deltas = new TreeMap<>();
+        for (OrderDetailDTO item : items) {
+            if (item.getItemId() == null || item.getNum() == null || item.getNum() <= 0) {
+                throw new BizIllegalException("归还的商品或数量不合法！");
+            }
+            deltas.merge(item.getItemId(), -item.getNum(), Integer::sum);
+        }
+        if (deltas.isEmpty()) {
+            return;
+        }
+        // 2.加载尚未在内存中的商品库存，之后的归还直接加到内存库存上
+        loadMissing(deltas.keySet());
+        int hint = hint();
+        long seq;
+        pendingLock.readLock().lock();
+        try {
+            // 3.先写日志，写入成功后再归还，归还不会失败
+            try {
+                seq = wal.write(encode(deltas));
+            } catch (IOException e) {
+                throw new BizIllegalException("归还库存异常！", e);
+            }
+            deltas.forEach((id, num) -> {
+                StockCounter stock = available.get(id);
+                if (stock != null) {
+                    stock.add(-num, hint);
+                }
+                pending.computeIfAbsent(id, k -> new LongAdder()).add(num);
+            });
+        } finally {
+            pendingLock.readLock().unlock();
+        }
+        // 4.不持有锁等待刷盘，失败时撤销归还
+        try {
+            wal.sync(seq);
+        } catch (IOException e) {
+            undo(deltas, hint);
+            throw new BizIllegalException("归还库存异常！", e);
+        }
+    }
+
+    /**
+     * 以数据库为准重新加载商品的内存库存，例如后台修改了商品库存之后
+     *
+     * @param id 商品id
+     */
+    public void reload(Long id) {
+        flushLock.lock();
+        try {
+            if (!available.containsKey(id)) {
+                return;
+            }
+            pendingLock.writeLock().lock();
+            try {
+                Item item = itemMapper.selectById(id);
+                if (item == null) {
+                    // 商品已经被删除，没能落库的扣减量无处可写，只能记录下来人工处理
+                    available.remove(id);
+                    LongAdder dropped = pending.remove(id);
+                    if (dropped != null && dropped.sum() != 0) {
+                        log.error("商品{}已被删除，丢弃未落库的扣减量{}", id, dropped.sum());
+                    }
+                    return;
+                }
+                // 尚未落库的扣减量还要从数据库的库存中减去
+                int stock = item.getStock() == null ? 0 : item.getStock();
+                available.put(id, newCounter(stock - unflushed(id)));
+            } finally {
+                pendingLock.writeLock().unlock();
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * 立即把待落库的变化写入数据库
+     */
+    public void flush() throws IOException {
+        flushLock.lock();
+        try {
+            // 1.切换日志段（同时刷盘），再取出待落库的变化，取出的变化恰好对应序号不大于seq的日志
+            Map<Long, Integer> drained = new TreeMap<>();
+            long seq;
+            pendingLock.writeLock().lock();
+            try {
+                seq = wal.roll();
+                pending.forEach((id, num) -> {
+                    int value = (int) num.sumThenReset();
+                    if (value != 0) {
+                        drained.put(id, value);
+                    }
+                });
+            } finally {
+                pendingLock.writeLock().unlock();
+            }
+            if (drained.isEmpty()) {
+                wal.checkpoint(seq);
+                return;
+            }
+            // 2.批量落库，库存不足的扣减量在提交前写补记日志；失败时把变化放回去，下次重试，日志不做检查点
+            List<Long> insufficient;
+            Map<Long, Integer> carried = new TreeMap<>();
+            long start = System.nanoTime();
+            try {
+                insufficient = itemStockWriter.flush(toDetails(drained), properties.getNodeId(), seq,
+                        ids -> carry(ids, drained, seq, carried));
+            } catch (RuntimeException e) {
+                drained.forEach((id, num) -> pending.computeIfAbsent(id, k -> new LongAdder()).add(num));
+                throw e;
+            } finally {
+                flushTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            }
+            // 3.没能落库的扣减量放回待落库的变化，由补记日志保证持久化
+            carried.forEach((id, num) -> pending.computeIfAbsent(id, k -> new LongAdder()).add(num));
+            // 4.记录本地检查点，删除已落库的日志段
+            wal.checkpoint(seq);
+            // 5.数据库中库存不足，说明库存被外部修改过，以数据库为准重新加载，可用库存中扣除欠量
+            if (!insufficient.isEmpty()) {
+                log.error("以下商品数据库库存不足，内存预占的库存未能落库，保留到下次落库并重新加载库存：{}", carried);
+                insufficient.forEach(this::reload);
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() throws IOException {
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(properties.getFlushInterval().toMillis() * 10, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            flush();
+        } finally {
+            wal.close();
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (Exception e) {
+            log.error("库存落库失败，将在下个周期重试", e);
+        }
+    }
+
+    private void loadMissing(Set<Long> ids) {
+        List<Long> missing = ids.stream().filter(id -> !available.containsKey(id)).collect(Collectors.toList());
+        if (missing.isEmpty()) {
+            return;
+        }
+        List<Item> items = itemMapper.selectList(Wrappers.<Item>lambdaQuery()
+                .select(Item::getId, Item::getStock)
+                .in(Item::getId, missing));
+        for (Item item : items) {
+            int stock = item.getStock() == null ? 0 : item.getStock();
+            available.putIfAbsent(item.getId(), newCounter(stock - unflushed(item.getId())));
+        }
+        if (items.size() < missing.size()) {
+            throw new BizIllegalException("商品不存在！");
+        }
+    }
+
+    private void rollback(List<Map.Entry<Long, Integer>> reserved, int hint) {
+        for (Map.Entry<Long, Integer> delta : reserved) {
+            available.get(delta.getKey()).add(delta.getValue(), hint);
+        }
+    }
+
+    /*
+    * 日志刷盘失败时撤销已经生效的扣减或归还，与写日志一样持有读锁，避免与重新加载交错
+    * */
+    private void undo(Map<Long, Integer> deltas, int hint) {
+        pendingLock.readLock().lock();
+        try {
+            deltas.forEach((id, num) -> {
+                StockCounter stock = available.get(id);
+                if (stock != null) {
+                    stock.add(num, hint);
+                }
+                pending.computeIfAbsent(id, k -> new LongAdder()).add(-num);
+            });
+        } finally {
+            pendingLock.readLock().unlock();
+        }
+    }
+
+    /*
+    * 在落库事务提交前，把库存不足、没能落库的扣减量写成补记日志，写入失败时事务回滚
+    * */
+    private void carry(List<Long> ids, Map<Long, Integer> drained, long seq, Map<Long, Integer> carried) {
+        ids.forEach(id -> carried.put(id, drained.get(id)));
+        try {
+            wal.append(CARRY_PREFIX + seq + ";" + encode(carried));
+        } catch (IOException e) {
+            throw new BizIllegalException("库存落库异常！", e);
+        }
+    }
+
+    /*
+    * 商品已预占、尚未落库的扣减量
+    * */
+    private int unflushed(Long id) {
+        LongAdder unflushed = pending.get(id);
+        return unflushed == null ? 0 : unflushed.intValue();
+    }
+
+    /*
+    * 按配置创建计数器，库存足够多时才拆分子桶
+    * */
+    private StockCounter newCounter(int stock) {
+        if (properties.getCounter() == StockProperties.CounterType.STRIPED && stock >= properties.getStripedMinStock()) {
+            return new StripedStockCounter(stock, properties.getStripes());
+        }
+        return new SingleStockCounter(stock);
+    }
+
+    /*
+    * 选择子桶的提示值：同一个用户的请求落在同一个子桶，没有用户信息时按线程分散
+    * */
+    private static int hint() {
+        Long userId = UserContext.getUser();
+        return userId != null ? Long.hashCode(userId) : Long.hashCode(Thread.currentThread().getId());
+    }
+
+    /*
+    * 日志内容格式：商品id:数量,商品id:数量
+    * */
+    private static String encode(Map<Long, Integer> deltas) {
+        return deltas.entrySet().stream()
+                .map(e -> e.getKey() + ":" + e.getValue())
+                .collect(Collectors.joining(","));
+    }
+
+    private static Map<Long, Integer> decode(String payload) {
+        Map<Long, Integer> deltas = new TreeMap<>();
+        for (String part : payload.split(",")) {
+            int colon = part.indexOf(':');
+            deltas.merge(Long.parseLong(part.substring(0, colon)), Integer.parseInt(part.substring(colon + 1)), Integer::sum);
+        }
+        return deltas;
+    }
+
+    private static List<OrderDetailDTO> toDetails(Map<Long, Integer> deltas) {
+        if (CollUtils.isEmpty(deltas)) {
+            return CollUtils.emptyList();
+        }
+        List<OrderDetailDTO> details = new ArrayList<>(deltas.size());
+        deltas.forEach((id, num) -> details.add(new OrderDetailDTO().setItemId(id).setNum(num)));
+        return details;
+    }
+}
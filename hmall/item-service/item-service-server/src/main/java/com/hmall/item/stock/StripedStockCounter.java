@@ -0,0 +1,114 @@
+package com.hmall.item.stock;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/*
+* 分桶库存计数器，用于超热门商品
+* 原理：
+*  1. 类似 LongAdder，把库存平均拆分到多个子桶中，请求按 hint 选择自己的子桶扣减，不同子桶之间没有竞争
+*  2. 与 LongAdder 不同的是，每个子桶都只能扣减到0，任何时刻所有子桶之和都不小于0，因此不会超卖
+* 再平衡：
+*  1. 自己的子桶不够扣减时，依次从其他子桶借库存，借够为止
+*  2. 借的时候顺便把对方剩余库存的一半搬到自己的子桶，下次就不用再借，库存逐渐集中到仍有请求的子桶
+*  3. 所有子桶加起来都不够时，把已经借到的库存还回去，扣减失败
+* 注意：
+*  1. 借库存的过程中，已借到的库存暂时不在任何子桶里，并发请求可能因此看到库存不足；这只会发生在库存接近售罄时
+*  2. 子桶之间间隔 PADDING 个 long，避免多个子桶落在同一个缓存行上造成伪共享
+* */
+public class StripedStockCounter implements StockCounter {
+
+    // 一个缓存行64字节，即8个long，间隔16个long以兼容相邻行预取
+    private static final int PADDING = 16;
+
+    private final int stripes;
+    private final AtomicLongArray buckets;
+
+    public StripedStockCounter(int stock, int stripes) {
+        this.stripes = Math.max(stripes, 1);
+        this.buckets = new AtomicLongArray(this.stripes * PADDING);
+        // 平均分配，余数分给前面的子桶
+        for (int i = 0; i < this.stripes; i++) {
+            buckets.set(i * PADDING, stock / this.stripes + (i < stock % this.stripes ? 1 : 0));
+        }
+    }
+
+    @Override
+    public boolean tryDeduct(int num, int hint) {
+        int home = indexOf(hint);
+        // 1.优先从自己的子桶扣减
+        if (takeUpTo(home, num, true) == num) {
+            return true;
+        }
+        // 2.自己的子桶不够，先取走剩余的部分，再向其他子桶借
+        long remaining = num - takeUpTo(home, num, false);
+        for (int i = 1; i < stripes && remaining > 0; i++) {
+            int donor = (home + i) % stripes;
+            remaining -= borrow(donor, home, remaining);
+        }
+        if (remaining == 0) {
+            return true;
+        }
+        // 3.所有子桶加起来都不够，归还已经取到的库存
+        buckets.addAndGet(home * PADDING, num - remaining);
+        return false;
+    }
+
+    @Override
+    public void add(int num, int hint) {
+        buckets.addAndGet(indexOf(hint) * PADDING, num);
+    }
+
+    @Override
+    public int get() {
+        long sum = 0;
+        for (int i = 0; i < stripes; i++) {
+            sum += buckets.get(i * PADDING);
+        }
+        return (int) sum;
+    }
+
+    /*
+    * 从子桶中取出最多num个库存
+    * exact为true时，只有库存不少于num才会取出，否则一个都不取
+    * */
+    private long takeUpTo(int bucket, long num, boolean exact) {
+        int index = bucket * PADDING;
+        while (true) {
+            long current = buckets.get(index);
+            long take = Math.min(current, num);
+            if (take <= 0 || (exact && take < num)) {
+                return 0;
+            }
+            if (buckets.compareAndSet(index, current, current - take)) {
+                return take;
+            }
+        }
+    }
+
+    /*
+    * 从donor子桶借最多need个库存，并把donor剩余库存的一半搬到home子桶
+    * */
+    private long borrow(int donor, int home, long need) {
+        int index = donor * PADDING;
+        while (true) {
+            long current = buckets.get(index);
+            if (current <= 0) {
+                return 0;
+            }
+            long take = Math.min(current, need);
+            long move = (current - take) / 2;
+            if (buckets.compareAndSet(index, current, current - take - move)) {
+                if (move > 0) {
+                    buckets.addAndGet(home * PADDING, move);
+                }
+                return take;
+            }
+        }
+    }
+
+    private int indexOf(int hint) {
+        // 打散hint的低位，避免连续的用户id落在相邻的子桶上
+        int h = hint * 0x9E3779B9;
+        return ((h ^ (h >>> 16)) & Integer.MAX_VALUE) % stripes;
+    }
+}
@@ -0,0 +1,38 @@
+package com.hmall.pay.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.cloud.context.config.annotation.RefreshScope;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/*
+* 超时未支付的支付单的关闭，见 PayOrderTimeoutCloser
+* */
+@Data
+@RefreshScope
+@Component
+@ConfigurationProperties(prefix = "hm.pay.timeout")
+public class PayOrderTimeoutProperties {
+    /**
+     * 是否关闭超过 payOverTime 仍未支付的支付单，仅在启动时读取
+     */
+    private boolean enabled = false;
+    /**
+     * 时间轮的精度，仅在启动时读取
+     */
+    private Duration tick = Duration.ofSeconds(1);
+    /**
+     * 时间轮每一层的槽位数，仅在启动时读取
+     */
+    private int wheelSize = 512;
+    /**
+     * 每批关闭的支付单数量
+     */
+    private int batchSize = 200;
+    /**
+     * 扫描数据库中已经超时、仍未关闭的支付单的间隔，仅在启动时读取
+     */
+    private Duration sweepInterval = Duration.ofMinutes(1);
+}
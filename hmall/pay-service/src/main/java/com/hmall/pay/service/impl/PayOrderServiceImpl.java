@@ -12,9 +12,11 @@ import com.hmall.pay.domain.po.PayOrder;
 import com.hmall.pay.enums.PayStatus;
 import com.hmall.pay.mapper.PayOrderMapper;
 import com.hmall.pay.service.IPayOrderService;
+import com.hmall.pay.timeout.PayOrderTimeoutCloser;
 import com.hmall.trade.api.client.OrderClient;
 import com.hmall.user.api.client.UserClient;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -33,6 +35,9 @@ public class PayOrderServiceImpl extends ServiceImpl<PayOrderMapper, PayOrder> i
 
     private final OrderClient orderClient;
 
+    // 未启用超时关闭时为空
+    private final ObjectProvider<PayOrderTimeoutCloser> timeoutCloser;
+
     @Override
     public String applyPayOrder(PayApplyDTO applyDTO) {
         // 1.幂等性校验
@@ -44,13 +49,24 @@ public class PayOrderServiceImpl extends ServiceImpl<PayOrderMapper, PayOrder> i
     @Override
     @Transactional
     public void tryPayOrderByBalance(PayOrderFormDTO payOrderFormDTO) {
-        // 1.查询支付单
-        PayOrder po = getById(payOrderFormDTO.getId());
+        // 1.查询并锁定支付单，直到事务结束；超时关闭的UPDATE会等待本次支付完成，
+        //   不会出现余额已经扣减、支付单却先被关闭的情况
+        PayOrder po = lambdaQuery()
+                .eq(PayOrder::getId, payOrderFormDTO.getId())
+                .last("FOR UPDATE")
+                .one();
+        if (po == null) {
+            throw new BizIllegalException("支付单不存在！");
+        }
         // 2.判断状态
         if(!PayStatus.WAIT_BUYER_PAY.equalsValue(po.getStatus())){
             // 订单不是未支付，状态异常
             throw new BizIllegalException("交易已支付或关闭！");
         }
+        if (po.getPayOverTime() != null && po.getPayOverTime().isBefore(LocalDateTime.now())) {
+            // 已经超过支付截止时间（不晚于订单的截止时间），尚未被关闭，不再扣减余额
+            throw new BizIllegalException("交易已超时关闭！");
+        }
         // 3.尝试扣减余额
         userClient.deductMoney(payOrderFormDTO.getPw(), po.getAmount());
         // 4.修改支付单状态
@@ -64,13 +80,17 @@ public class PayOrderServiceImpl extends ServiceImpl<PayOrderMapper, PayOrder> i
     }
 
     public boolean markPayOrderSuccess(Long id, LocalDateTime successTime) {
-        return lambdaUpdate()
+        boolean success = lambdaUpdate()
                 .set(PayOrder::getStatus, PayStatus.TRADE_SUCCESS.getValue())
                 .set(PayOrder::getPaySuccessTime, successTime)
                 .eq(PayOrder::getId, id)
-                // 支付状态的乐观锁判断
+                // 支付状态的乐观锁判断，超时关闭的支付单不会再被修改为成功
                 .in(PayOrder::getStatus, PayStatus.NOT_COMMIT.getValue(), PayStatus.WAIT_BUYER_PAY.getValue())
                 .update();
+        if (success) {
+            timeoutCloser.ifAvailable(closer -> closer.cancel(id));
+        }
+        return success;
     }
 
 
@@ -83,6 +103,7 @@ public class PayOrderServiceImpl extends ServiceImpl<PayOrderMapper, PayOrder> i
             PayOrder payOrder = buildPayOrder(applyDTO);
             payOrder.setPayOrderNo(IdWorker.getId());
             save(payOrder);
+            timeoutCloser.ifAvailable(closer -> closer.schedule(payOrder.getId(), payOrder.getPayOverTime()));
             return payOrder;
         }
         // 3.旧单已经存在，判断是否支付成功
@@ -103,6 +124,8 @@ public class PayOrderServiceImpl extends ServiceImpl<PayOrderMapper, PayOrder> i
             payOrder.setQrCodeUrl("");
             updateById(payOrder);
             payOrder.setPayOrderNo(oldOrder.getPayOrderNo());
+            // 重新申请后支付截止时间也重新计算
+            timeoutCloser.ifAvailable(closer -> closer.schedule(payOrder.getId(), payOrder.getPayOverTime()));
             return payOrder;
         }
         // 6.旧单已经存在，且可能是未支付或未提交，且支付渠道一致，直接返回旧数据
@@ -113,7 +136,14 @@ public class PayOrderServiceImpl extends ServiceImpl<PayOrderMapper, PayOrder> i
         // 1.数据转换
         PayOrder payOrder = BeanUtils.toBean(payApplyDTO, PayOrder.class);
         // 2.初始化数据
-        payOrder.setPayOverTime(LocalDateTime.now().plusMinutes(120L));
+        // 支付截止时间不晚于订单的截止时间，订单超时关闭之前还会等待一段时间，截止时间之前开始的扣款都能完成
+        // 订单已经支付或关闭时这里抛出异常，不会创建支付单
+        LocalDateTime payOverTime = LocalDateTime.now().plusMinutes(120L);
+        LocalDateTime orderDeadline = orderClient.queryPayDeadline(payApplyDTO.getBizOrderNo());
+        if (orderDeadline != null && orderDeadline.isBefore(payOverTime)) {
+            payOverTime = orderDeadline;
+        }
+        payOrder.setPayOverTime(payOverTime);
         payOrder.setStatus(PayStatus.WAIT_BUYER_PAY.getValue());
         payOrder.setBizUserId(UserContext.getUser());
         return payOrder;
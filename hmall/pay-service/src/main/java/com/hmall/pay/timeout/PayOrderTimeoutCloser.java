@@ -0,0 +1,159 @@
+package com.hmall.pay.timeout;
+
+import cn.hutool.core.collection.ListUtil;
+import com.baomidou.mybatisplus.core.toolkit.Wrappers;
+import com.hmall.common.timer.TimingWheel;
+import com.hmall.pay.config.PayOrderTimeoutProperties;
+import com.hmall.pay.domain.po.PayOrder;
+import com.hmall.pay.enums.PayStatus;
+import com.hmall.pay.mapper.PayOrderMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/*
+* 关闭超过 payOverTime 仍未支付的支付单，hm.pay.timeout.enabled=true 时启用
+* 流程：
+*  1. 创建支付单、重新申请支付单后按 payOverTime 放入时间轮，支付成功时取消
+*  2. 到期的支付单按批关闭，一条UPDATE语句，只关闭仍未支付且已经超时的支付单
+*  3. 启动时从数据库加载未支付的支付单放入时间轮，已经超时的在第一个tick关闭
+*  4. 定期关闭数据库中已经超时仍未关闭的支付单，例如其他实例宕机、关闭时数据库异常
+* 注意：
+*  1. 未支付的支付单本身（status、pay_over_time）就是持久化的超时时间，不需要另外保存
+*  2. 关闭与支付成功都带有未支付状态的条件，只有一个会成功；重复关闭同一个支付单没有影响
+*  3. 余额支付在扣款之前锁定支付单（SELECT ... FOR UPDATE），关闭的UPDATE等待支付事务结束，
+*     截止时间之前通过检查的支付不会在扣款之后才发现支付单已被关闭
+* */
+@Slf4j
+@Component
+@ConditionalOnProperty(prefix = "hm.pay.timeout", name = "enabled", havingValue = "true")
+public class PayOrderTimeoutCloser {
+
+    private final PayOrderTimeoutProperties properties;
+    private final PayOrderMapper payOrderMapper;
+    // 支付单id -> 超时时间
+    private final TimingWheel<Long> wheel;
+    private final ScheduledExecutorService sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "pay-timeout-sweeper");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public PayOrderTimeoutCloser(PayOrderTimeoutProperties properties, PayOrderMapper payOrderMapper) {
+        this.properties = properties;
+        this.payOrderMapper = payOrderMapper;
+        this.wheel = new TimingWheel<>("pay-timeout", properties.getTick(), properties.getWheelSize(), this::closeAll);
+    }
+
+    @PostConstruct
+    public void start() {
+        // 1.加载未支付的支付单
+        int recovered = 0;
+        long lastId = 0;
+        List<PayOrder> payOrders;
+        do {
+            payOrders = payOrderMapper.selectList(Wrappers.<PayOrder>lambdaQuery()
+                    .select(PayOrder::getId, PayOrder::getPayOverTime)
+                    .in(PayOrder::getStatus, PayStatus.NOT_COMMIT.getValue(), PayStatus.WAIT_BUYER_PAY.getValue())
+                    .gt(PayOrder::getId, lastId)
+                    .orderByAsc(PayOrder::getId)
+                    .last("LIMIT " + properties.getBatchSize()));
+            for (PayOrder payOrder : payOrders) {
+                schedule(payOrder.getId(), payOrder.getPayOverTime());
+                lastId = payOrder.getId();
+            }
+            recovered += payOrders.size();
+        } while (payOrders.size() == properties.getBatchSize());
+        log.info("加载未支付的支付单{}个", recovered);
+        // 2.开始推进时间轮、定期扫描
+        wheel.start();
+        long interval = properties.getSweepInterval().toMillis();
+        sweeper.scheduleWithFixedDelay(this::sweepQuietly, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 支付单开始计时，已经在计时的修改为新的超时时间
+     *
+     * @param payOrderId  支付单id
+     * @param payOverTime 支付截止时间，为null时不计时
+     */
+    public void schedule(Long payOrderId, LocalDateTime payOverTime) {
+        if (payOverTime == null) {
+            return;
+        }
+        wheel.schedule(payOrderId, payOverTime.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli());
+    }
+
+    /**
+     * 支付单已支付，取消计时
+     */
+    public void cancel(Long payOrderId) {
+        wheel.cancel(payOrderId);
+    }
+
+    /**
+     * 关闭仍未支付且已经超时的支付单
+     *
+     * @return 实际关闭的数量
+     */
+    public int close(List<Long> payOrderIds) {
+        PayOrder payOrder = new PayOrder();
+        payOrder.setStatus(PayStatus.TRADE_CLOSED.getValue());
+        return payOrderMapper.update(payOrder, Wrappers.<PayOrder>lambdaUpdate()
+                .in(PayOrder::getId, payOrderIds)
+                .in(PayOrder::getStatus, PayStatus.NOT_COMMIT.getValue(), PayStatus.WAIT_BUYER_PAY.getValue())
+                .le(PayOrder::getPayOverTime, LocalDateTime.now()));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        sweeper.shutdownNow();
+        wheel.close();
+    }
+
+    /*
+    * 时间轮中到期的支付单，按批关闭；一批失败时由定期扫描重试
+    * */
+    private void closeAll(List<Long> payOrderIds) {
+        for (List<Long> batch : ListUtil.partition(payOrderIds, properties.getBatchSize())) {
+            try {
+                close(batch);
+            } catch (Exception e) {
+                log.error("关闭超时支付单失败，将由定期扫描重试，支付单：{}", batch, e);
+            }
+        }
+    }
+
+    /*
+    * 关闭已经超时仍未关闭的支付单，每次最多 batchSize 条，直到没有剩余
+    * */
+    private void sweepQuietly() {
+        try {
+            PayOrder payOrder = new PayOrder();
+            payOrder.setStatus(PayStatus.TRADE_CLOSED.getValue());
+            int closed;
+            int total = 0;
+            do {
+                closed = payOrderMapper.update(payOrder, Wrappers.<PayOrder>lambdaUpdate()
+                        .in(PayOrder::getStatus, PayStatus.NOT_COMMIT.getValue(), PayStatus.WAIT_BUYER_PAY.getValue())
+                        .le(PayOrder::getPayOverTime, LocalDateTime.now())
+                        .last("LIMIT " + properties.getBatchSize()));
+                total += closed;
+            } while (closed == properties.getBatchSize());
+            if (total > 0) {
+                log.info("定期扫描关闭了{}个超时支付单", total);
+            }
+        } catch (Exception e) {
+            log.error("扫描超时支付单失败，将在下个周期重试", e);
+        }
+    }
+}
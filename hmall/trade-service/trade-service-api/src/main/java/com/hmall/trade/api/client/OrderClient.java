@@ -1,11 +1,17 @@
 package com.hmall.trade.api.client;
 
 import org.springframework.cloud.openfeign.FeignClient;
+import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PutMapping;
 
+import java.time.LocalDateTime;
+
 @FeignClient(name="trade-service")
 public interface OrderClient {
     @PutMapping("/orders/{orderId}")
     void markOrderPaySuccess(@PathVariable("orderId") Long orderId);
+
+    @GetMapping("/orders/{orderId}/pay-deadline")
+    LocalDateTime queryPayDeadline(@PathVariable("orderId") Long orderId);
 }
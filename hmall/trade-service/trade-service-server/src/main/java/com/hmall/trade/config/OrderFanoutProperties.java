@@ -0,0 +1,23 @@
+package com.hmall.trade.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.cloud.context.config.annotation.RefreshScope;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+@Data
+@RefreshScope
+@Component
+@ConfigurationProperties(prefix = "hm.trade.order.fanout")
+public class OrderFanoutProperties {
+    /**
+     * 并行调用下游服务的线程数，仅在启动时读取
+     */
+    private int parallelism = 8;
+    /**
+     * 扣减库存、清理购物车的总等待时间，超时按失败处理并补偿
+     */
+    private Duration timeout = Duration.ofSeconds(3);
+}
@@ -0,0 +1,19 @@
+package com.hmall.trade.config;
+
+import com.hmall.common.constants.MqConstants;
+import org.springframework.amqp.core.TopicExchange;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/*
+* 交易服务发送消息使用的交换机，在第一次连接 RabbitMQ 时声明
+* 队列和绑定由各个消费者声明
+* */
+@Configuration
+public class OrderMqConfig {
+
+    @Bean
+    public TopicExchange tradeExchange() {
+        return new TopicExchange(MqConstants.TRADE_EXCHANGE, true, false);
+    }
+}
@@ -0,0 +1,30 @@
+package com.hmall.trade.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.cloud.context.config.annotation.RefreshScope;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/*
+* 订单创建消息的发件箱，见 OrderCreatedPublisher
+* */
+@Data
+@RefreshScope
+@Component
+@ConfigurationProperties(prefix = "hm.trade.order.outbox")
+public class OrderOutboxProperties {
+    /**
+     * 发送消息后等待 RabbitMQ 确认的时间，超时按发送失败处理，由定期重试补发
+     */
+    private Duration confirmTimeout = Duration.ofSeconds(5);
+    /**
+     * 重试发送的间隔，只重试写入超过一个间隔仍未确认的消息，仅在启动时读取
+     */
+    private Duration retryInterval = Duration.ofMinutes(1);
+    /**
+     * 每批重试的订单数量
+     */
+    private int batchSize = 200;
+}
@@ -0,0 +1,26 @@
+package com.hmall.trade.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.cloud.context.config.annotation.RefreshScope;
+import org.springframework.stereotype.Component;
+
+/*
+* 下单流程配置
+* */
+@Data
+@RefreshScope
+@Component
+@ConfigurationProperties(prefix = "hm.trade.order")
+public class OrderPipelineProperties {
+    /**
+     * 下单流程：
+     * sync 在一个事务中查询商品、写订单、清理购物车、扣减库存，与原来的行为相同；
+     * async 同步流程只扣减库存、写订单，清理购物车等后续处理通过消息队列异步完成
+     */
+    private Pipeline pipeline = Pipeline.SYNC;
+
+    public enum Pipeline {
+        SYNC, ASYNC
+    }
+}
@@ -0,0 +1,47 @@
+package com.hmall.trade.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.cloud.context.config.annotation.RefreshScope;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/*
+* 超时未支付订单的关闭，见 OrderTimeoutCloser
+* */
+@Data
+@RefreshScope
+@Component
+@ConfigurationProperties(prefix = "hm.trade.order.timeout")
+public class OrderTimeoutProperties {
+    /**
+     * 是否关闭超时未支付的订单，仅在启动时读取
+     */
+    private boolean enabled = false;
+    /**
+     * 订单创建后多久之内可以支付，支付单的截止时间不会晚于它
+     */
+    private Duration payTimeout = Duration.ofMinutes(120);
+    /**
+     * 超过支付截止时间后再等待多久关闭订单，让截止时间之前已经开始的扣款完成，
+     * 需要大于支付服务扣减余额、标记订单已支付的最长耗时（Feign 超时）
+     */
+    private Duration closeGrace = Duration.ofMinutes(5);
+    /**
+     * 时间轮的精度，仅在启动时读取
+     */
+    private Duration tick = Duration.ofSeconds(1);
+    /**
+     * 时间轮每一层的槽位数，仅在启动时读取
+     */
+    private int wheelSize = 512;
+    /**
+     * 每批关闭的订单数量，同一批订单的库存合并为一次调用归还
+     */
+    private int batchSize = 200;
+    /**
+     * 扫描数据库中已经超时、仍未关闭的订单的间隔，仅在启动时读取
+     */
+    private Duration sweepInterval = Duration.ofMinutes(1);
+}
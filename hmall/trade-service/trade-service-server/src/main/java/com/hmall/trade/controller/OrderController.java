@@ -11,6 +11,8 @@ import lombok.RequiredArgsConstructor;
 import org.apache.ibatis.annotations.Param;
 import org.springframework.web.bind.annotation.*;
 
+import java.time.LocalDateTime;
+
 @Api(tags = "订单管理接口")
 @RestController
 @RequestMapping("/orders")
@@ -36,4 +38,11 @@ public class OrderController {
     public void markOrderPaySuccess(@PathVariable("orderId") Long orderId) {
         orderService.markOrderPaySuccess(orderId);
     }
+
+    @ApiOperation("查询订单的支付截止时间")
+    @ApiImplicitParam(name = "orderId", value = "订单id", paramType = "path")
+    @GetMapping("/{orderId}/pay-deadline")
+    public LocalDateTime queryPayDeadline(@PathVariable("orderId") Long orderId) {
+        return orderService.queryPayDeadline(orderId);
+    }
 }
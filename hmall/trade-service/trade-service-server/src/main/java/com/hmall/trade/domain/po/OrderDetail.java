@@ -26,7 +26,7 @@ public class OrderDetail implements Serializable {
     /**
      * 订单详情id 
      */
-    @TableId(value = "id", type = IdType.AUTO)
+    @TableId(value = "id", type = IdType.ASSIGN_ID)
     private Long id;
 
     /**
@@ -0,0 +1,192 @@
+package com.hmall.trade.fanout;
+
+import com.hmall.cart.api.client.CartClient;
+import com.hmall.cart.api.dto.CartItemDTO;
+import com.hmall.common.domain.dto.OrderDetailDTO;
+import com.hmall.common.exception.BizIllegalException;
+import com.hmall.common.utils.UserContextTaskDecorator;
+import com.hmall.item.api.client.ItemClient;
+import com.hmall.trade.config.OrderFanoutProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/*
+* 下单时并行调用下游服务：扣减库存、清理购物车
+* 流程：
+*  1. 两个调用互不依赖，在线程池中同时发起，耗时是两者中较慢的一个，而不是两者之和
+*  2. 两个调用共用一个总的等待时间
+*  3. 任意一个失败或超时，对已经成功（包括超时之后才成功）的调用执行补偿：归还库存、把商品放回购物车
+* 注意：
+*  1. 线程池使用 UserContextTaskDecorator，Feign 请求头中的用户信息来自 UserContext，否则工作线程中没有用户
+*  2. 超时的调用不会被取消，它可能在之后成功，所以补偿挂在调用完成时执行，而不是立即执行
+*  3. 清理购物车返回实际删除的条目，撤销时只把这些条目原样放回；不在购物车中的商品不会被加入购物车
+*  4. async 下单流程只扣减库存（deductStock），同样在等待时间内等待，超时之后才成功的扣减在完成时归还
+* */
+@Slf4j
+@Component
+public class OrderFanout {
+
+    private final ItemClient itemClient;
+    private final CartClient cartClient;
+    private final OrderFanoutProperties properties;
+    private final ThreadPoolTaskExecutor executor;
+
+    public OrderFanout(ItemClient itemClient, CartClient cartClient, OrderFanoutProperties properties) {
+        this.itemClient = itemClient;
+        this.cartClient = cartClient;
+        this.properties = properties;
+        this.executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(properties.getParallelism());
+        executor.setMaxPoolSize(properties.getParallelism());
+        executor.setQueueCapacity(properties.getParallelism() * 64);
+        executor.setThreadNamePrefix("order-fanout-");
+        executor.setTaskDecorator(new UserContextTaskDecorator());
+        // 排队已满时拒绝，按调用失败处理
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+        executor.initialize();
+    }
+
+    /**
+     * 并行扣减库存、清理购物车，两者都成功才返回
+     *
+     * @param details 下单的商品id和数量
+     * @return 两者都成功后，如果之后的步骤失败（例如订单事务回滚），用它撤销这两个调用
+     * @throws BizIllegalException 任意一个调用失败或超时，已经执行补偿
+     */
+    public Compensation deductStockAndClearCart(List<OrderDetailDTO> details) {
+        List<Long> itemIds = new ArrayList<>(details.size());
+        for (OrderDetailDTO detail : details) {
+            itemIds.add(detail.getItemId());
+        }
+        // 1.同时发起两个调用
+        CompletableFuture<Void> stock = submit(() -> {
+            itemClient.deductStock(details);
+            return null;
+        });
+        CompletableFuture<List<CartItemDTO>> cart = submit(() -> cartClient.removeByItemIds(itemIds));
+        // 2.在总的等待时间内等待两个调用
+        long deadline = System.nanoTime() + properties.getTimeout().toNanos();
+        Throwable stockError = await(stock, deadline);
+        Throwable cartError = await(cart, deadline);
+        if (stockError == null && cartError == null) {
+            return new Compensation(details, cart.join());
+        }
+        // 3.失败，撤销成功的调用；超时的调用在完成后如果成功再撤销
+        stock.thenRun(() -> restoreStock(details));
+        cart.thenAccept(this::restoreCart);
+        if (stockError != null) {
+            log.warn("下单扣减库存失败", stockError);
+            throw new BizIllegalException(stockError instanceof TimeoutException ? "下单超时，请稍后重试！" : "库存不足！", stockError);
+        }
+        log.warn("下单清理购物车失败", cartError);
+        throw new BizIllegalException("下单失败，请稍后重试！", cartError);
+    }
+
+    /**
+     * 只扣减库存，用于 async 下单流程
+     *
+     * @param details 下单的商品id和数量
+     * @throws BizIllegalException 扣减失败或超时；超时的扣减如果之后成功，会在完成时归还
+     */
+    public void deductStock(List<OrderDetailDTO> details) {
+        CompletableFuture<Void> stock = submit(() -> {
+            itemClient.deductStock(details);
+            return null;
+        });
+        Throwable stockError = await(stock, System.nanoTime() + properties.getTimeout().toNanos());
+        if (stockError == null) {
+            return;
+        }
+        stock.thenRun(() -> restoreStock(details));
+        log.warn("下单扣减库存失败", stockError);
+        throw new BizIllegalException(stockError instanceof TimeoutException ? "下单超时，请稍后重试！" : "库存不足！", stockError);
+    }
+
+    private <T> CompletableFuture<T> submit(Supplier<T> call) {
+        try {
+            return CompletableFuture.supplyAsync(call, executor);
+        } catch (RuntimeException e) {
+            // 线程池已满
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /*
+    * 等待调用完成，返回null表示成功，否则返回失败原因
+    * */
+    private static Throwable await(CompletableFuture<?> future, long deadline) {
+        try {
+            future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            return null;
+        } catch (TimeoutException e) {
+            return e;
+        } catch (ExecutionException e) {
+            return e.getCause();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return e;
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    private void restoreStock(List<OrderDetailDTO> details) {
+        try {
+            itemClient.restoreStock(details);
+        } catch (Exception e) {
+            log.error("下单失败后归还库存失败，需要人工处理：{}", details, e);
+        }
+    }
+
+    /*
+    * 把清理购物车时实际删除的条目放回购物车
+    * */
+    private void restoreCart(List<CartItemDTO> removed) {
+        if (removed == null || removed.isEmpty()) {
+            return;
+        }
+        try {
+            cartClient.addItems2Cart(removed);
+        } catch (Exception e) {
+            log.warn("下单失败后把商品放回购物车失败：{}", removed, e);
+        }
+    }
+
+    /**
+     * 撤销扣减库存、清理购物车
+     * <p>
+     * 补偿失败只记录日志，不再向上抛出：调用方已经在处理一个失败，补偿失败需要人工处理。
+     * </p>
+     */
+    public class Compensation {
+        private final List<OrderDetailDTO> details;
+        private final List<CartItemDTO> removedCartItems;
+
+        private Compensation(List<OrderDetailDTO> details, List<CartItemDTO> removedCartItems) {
+            this.details = details;
+            this.removedCartItems = removedCartItems;
+        }
+
+        /**
+         * 撤销两个调用
+         */
+        public void compensate() {
+            restoreStock(details);
+            restoreCart(removedCartItems);
+        }
+    }
+}
@@ -1,6 +1,6 @@
 package com.hmall.trade.mapper;
 
-import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.hmall.common.mybatis.BatchBaseMapper;
 import com.hmall.trade.domain.po.OrderDetail;
 
 /**
@@ -9,6 +9,6 @@ import com.hmall.trade.domain.po.OrderDetail;
  * </p>
 
  */
-public interface OrderDetailMapper extends BaseMapper<OrderDetail> {
+public interface OrderDetailMapper extends BatchBaseMapper<OrderDetail> {
 
 }
@@ -0,0 +1,39 @@
+package com.hmall.trade.mapper;
+
+import org.apache.ibatis.annotations.Delete;
+import org.apache.ibatis.annotations.Insert;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.annotations.Update;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * <p>
+ * 订单创建消息发件箱 Mapper 接口
+ * 与订单在同一个事务中写入，消息被 RabbitMQ 确认后删除，未确认的由定期扫描补发
+ * </p>
+ */
+public interface OrderOutboxMapper {
+
+    @Update("CREATE TABLE IF NOT EXISTS order_created_outbox (" +
+            "order_id BIGINT NOT NULL PRIMARY KEY, " +
+            "create_time DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP" +
+            ") COMMENT '尚未确认发送的订单创建消息'")
+    void createTableIfAbsent();
+
+    @Insert("INSERT IGNORE INTO order_created_outbox (order_id) VALUES (#{orderId})")
+    void insert(@Param("orderId") Long orderId);
+
+    /**
+     * 锁定一批在指定时间之前写入的订单，已被其他事务锁定的跳过
+     */
+    @Select("SELECT order_id FROM order_created_outbox WHERE create_time <= #{createdBefore} " +
+            "ORDER BY order_id LIMIT #{limit} FOR UPDATE SKIP LOCKED")
+    List<Long> lockPending(@Param("createdBefore") LocalDateTime createdBefore, @Param("limit") int limit);
+
+    @Delete("<script>DELETE FROM order_created_outbox WHERE order_id IN " +
+            "<foreach collection='orderIds' item='orderId' open='(' separator=',' close=')'>#{orderId}</foreach></script>")
+    void deleteAll(@Param("orderIds") List<Long> orderIds);
+}
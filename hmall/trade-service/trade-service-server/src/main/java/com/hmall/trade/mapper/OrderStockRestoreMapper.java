@@ -0,0 +1,40 @@
+package com.hmall.trade.mapper;
+
+import org.apache.ibatis.annotations.Delete;
+import org.apache.ibatis.annotations.Insert;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.annotations.Update;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * <p>
+ * 待归还库存的订单 Mapper 接口
+ * 超时关闭订单时在同一个事务中写入，库存归还成功后删除，归还失败的由定期扫描重试
+ * </p>
+ */
+public interface OrderStockRestoreMapper {
+
+    @Update("CREATE TABLE IF NOT EXISTS order_stock_restore (" +
+            "order_id BIGINT NOT NULL PRIMARY KEY, " +
+            "create_time DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP" +
+            ") COMMENT '已关闭、尚未归还库存的订单'")
+    void createTableIfAbsent();
+
+    @Insert("<script>INSERT IGNORE INTO order_stock_restore (order_id) VALUES " +
+            "<foreach collection='orderIds' item='orderId' separator=','>(#{orderId})</foreach></script>")
+    void insertAll(@Param("orderIds") List<Long> orderIds);
+
+    /**
+     * 锁定一批在指定时间之前写入的订单，已被其他事务锁定的跳过
+     */
+    @Select("SELECT order_id FROM order_stock_restore WHERE create_time <= #{createdBefore} " +
+            "ORDER BY order_id LIMIT #{limit} FOR UPDATE SKIP LOCKED")
+    List<Long> lockPending(@Param("createdBefore") LocalDateTime createdBefore, @Param("limit") int limit);
+
+    @Delete("<script>DELETE FROM order_stock_restore WHERE order_id IN " +
+            "<foreach collection='orderIds' item='orderId' open='(' separator=',' close=')'>#{orderId}</foreach></script>")
+    void deleteAll(@Param("orderIds") List<Long> orderIds);
+}
@@ -0,0 +1,223 @@
+package com.hmall.trade.outbox;
+
+import com.baomidou.mybatisplus.core.toolkit.Wrappers;
+import com.hmall.common.constants.MqConstants;
+import com.hmall.common.domain.dto.OrderCreatedMessage;
+import com.hmall.common.domain.dto.OrderDetailDTO;
+import com.hmall.trade.config.OrderOutboxProperties;
+import com.hmall.trade.domain.po.Order;
+import com.hmall.trade.domain.po.OrderDetail;
+import com.hmall.trade.mapper.OrderDetailMapper;
+import com.hmall.trade.mapper.OrderMapper;
+import com.hmall.trade.mapper.OrderOutboxMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/*
+* 订单创建消息的发件箱，async 下单流程使用
+* 作用：
+*  1. 订单提交后直接发送消息时，发送失败、没有被 RabbitMQ 接收或者实例在发送前宕机，消息都会丢失，购物车不会被清理
+* 流程：
+*  1. 写订单的事务中同时写入发件箱（order_created_outbox），与订单一起提交或回滚
+*  2. 事务提交后发送消息并等待发送确认，确认成功且没有被退回时删除发件箱记录，否则留给定期补发
+*  3. 定期补发：锁定写入超过一个重试间隔的记录，根据订单和订单详情重新构造消息，全部发送后等待确认，在同一个事务中删除已确认的记录
+* 注意：
+*  1. 需要开启 publisher-confirm-type=correlated、publisher-returns 和 template.mandatory（见 application.yaml），
+*     交换机上没有可路由的队列时消息会被退回，按发送失败处理
+*  2. 确认超时或者删除记录失败时消息可能已经送达，补发会重复投递，消费者必须是幂等的（见 OrderCreatedMessage）
+*  3. 补发只处理写入超过一个重试间隔的记录（FOR UPDATE SKIP LOCKED），不会与刚下单的线程、其他实例同时发送同一条消息
+* */
+@Slf4j
+@Component
+public class OrderCreatedPublisher {
+
+    private final OrderOutboxProperties properties;
+    private final OrderOutboxMapper outboxMapper;
+    private final OrderMapper orderMapper;
+    private final OrderDetailMapper detailMapper;
+    private final RabbitTemplate rabbitTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final ScheduledExecutorService retrier = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "order-outbox-retrier");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public OrderCreatedPublisher(OrderOutboxProperties properties, OrderOutboxMapper outboxMapper, OrderMapper orderMapper,
+                                 OrderDetailMapper detailMapper, RabbitTemplate rabbitTemplate,
+                                 TransactionTemplate transactionTemplate) {
+        this.properties = properties;
+        this.outboxMapper = outboxMapper;
+        this.orderMapper = orderMapper;
+        this.detailMapper = detailMapper;
+        this.rabbitTemplate = rabbitTemplate;
+        this.transactionTemplate = transactionTemplate;
+    }
+
+    @PostConstruct
+    public void start() {
+        outboxMapper.createTableIfAbsent();
+        long interval = properties.getRetryInterval().toMillis();
+        retrier.scheduleWithFixedDelay(this::retryQuietly, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 记录待发送的订单创建消息，必须在写订单的事务中调用
+     *
+     * @param orderId 订单id
+     */
+    public void record(Long orderId) {
+        outboxMapper.insert(orderId);
+    }
+
+    /**
+     * 发送订单创建消息，在写订单的事务提交之后调用；发送失败只记录日志，由定期补发重试
+     *
+     * @param message 订单创建消息
+     */
+    public void publish(OrderCreatedMessage message) {
+        CorrelationData correlation = send(message);
+        if (!confirmed(correlation, System.nanoTime() + properties.getConfirmTimeout().toNanos())) {
+            log.warn("订单创建消息没有被确认，将由定期补发重试，订单id：{}", message.getOrderId());
+            return;
+        }
+        try {
+            outboxMapper.deleteAll(List.of(message.getOrderId()));
+        } catch (Exception e) {
+            log.warn("订单创建消息已确认，删除发件箱记录失败，补发时会重复投递，订单id：{}", message.getOrderId(), e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        retrier.shutdownNow();
+    }
+
+    /*
+    * 补发写入超过一个重试间隔仍未确认的消息，每批在一个事务中锁定、发送并删除已确认的记录
+    * 一批中有消息没有被确认时停止，下个周期再重试
+    * */
+    private void retryQuietly() {
+        try {
+            LocalDateTime createdBefore = LocalDateTime.now().minus(properties.getRetryInterval());
+            List<Long> confirmed;
+            do {
+                confirmed = transactionTemplate.execute(status -> {
+                    List<Long> pending = outboxMapper.lockPending(createdBefore, properties.getBatchSize());
+                    if (pending.isEmpty()) {
+                        return Collections.<Long>emptyList();
+                    }
+                    List<Long> sent = resend(pending);
+                    if (!sent.isEmpty()) {
+                        outboxMapper.deleteAll(sent);
+                    }
+                    return sent;
+                });
+                if (confirmed != null && !confirmed.isEmpty()) {
+                    log.info("补发了{}条订单创建消息", confirmed.size());
+                }
+            } while (confirmed != null && confirmed.size() == properties.getBatchSize());
+        } catch (Exception e) {
+            log.error("补发订单创建消息失败，将在下个周期重试", e);
+        }
+    }
+
+    /*
+    * 根据订单和订单详情重新构造消息，全部发送之后再等待确认，返回已确认（或订单已不存在、无需发送）的订单id
+    * */
+    private List<Long> resend(List<Long> orderIds) {
+        Map<Long, OrderCreatedMessage> messages = new LinkedHashMap<>();
+        for (Order order : orderMapper.selectList(Wrappers.<Order>lambdaQuery()
+                .select(Order::getId, Order::getUserId)
+                .in(Order::getId, orderIds))) {
+            messages.put(order.getId(), new OrderCreatedMessage(order.getId(), order.getUserId(), new ArrayList<>()));
+        }
+        for (OrderDetail detail : detailMapper.selectList(Wrappers.<OrderDetail>lambdaQuery()
+                .select(OrderDetail::getOrderId, OrderDetail::getItemId, OrderDetail::getNum)
+                .in(OrderDetail::getOrderId, orderIds))) {
+            OrderCreatedMessage message = messages.get(detail.getOrderId());
+            if (message != null) {
+                message.getItems().add(new OrderDetailDTO().setItemId(detail.getItemId()).setNum(detail.getNum()));
+            }
+        }
+        List<Long> done = new ArrayList<>(orderIds.size());
+        Map<Long, CorrelationData> correlations = new HashMap<>();
+        for (Long orderId : orderIds) {
+            OrderCreatedMessage message = messages.get(orderId);
+            if (message == null) {
+                log.warn("待发送消息的订单已不存在，删除发件箱记录，订单id：{}", orderId);
+                done.add(orderId);
+                continue;
+            }
+            correlations.put(orderId, send(message));
+        }
+        long deadline = System.nanoTime() + properties.getConfirmTimeout().toNanos();
+        correlations.forEach((orderId, correlation) -> {
+            if (confirmed(correlation, deadline)) {
+                done.add(orderId);
+            }
+        });
+        return done;
+    }
+
+    /*
+    * 发送消息，返回用于等待确认的 CorrelationData，发送失败时返回null
+    * */
+    private CorrelationData send(OrderCreatedMessage message) {
+        CorrelationData correlation = new CorrelationData(String.valueOf(message.getOrderId()));
+        try {
+            rabbitTemplate.convertAndSend(MqConstants.TRADE_EXCHANGE, MqConstants.ORDER_CREATED_KEY, message, correlation);
+            return correlation;
+        } catch (AmqpException e) {
+            log.warn("发送订单创建消息失败，订单id：{}", message.getOrderId(), e);
+            return null;
+        }
+    }
+
+    /*
+    * 在截止时间之前等待发送确认，确认成功且没有被退回才算发送成功
+    * 开启 mandatory 时，退回的回调在确认之前执行，确认完成时已经可以判断是否被退回
+    * */
+    private static boolean confirmed(CorrelationData correlation, long deadline) {
+        if (correlation == null) {
+            return false;
+        }
+        try {
+            CorrelationData.Confirm confirm = correlation.getFuture()
+                    .get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            if (!confirm.isAck()) {
+                log.warn("订单创建消息被拒绝，订单id：{}，原因：{}", correlation.getId(), confirm.getReason());
+                return false;
+            }
+            if (correlation.getReturned() != null) {
+                log.warn("订单创建消息没有可路由的队列，被退回，订单id：{}", correlation.getId());
+                return false;
+            }
+            return true;
+        } catch (TimeoutException | ExecutionException e) {
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}
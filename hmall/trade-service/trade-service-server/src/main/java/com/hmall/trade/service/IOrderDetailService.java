@@ -3,6 +3,8 @@ package com.hmall.trade.service;
 import com.baomidou.mybatisplus.extension.service.IService;
 import com.hmall.trade.domain.po.OrderDetail;
 
+import java.util.List;
+
 /**
  * <p>
  * 订单详情表 服务类
@@ -10,4 +12,9 @@ import com.hmall.trade.domain.po.OrderDetail;
  */
 public interface IOrderDetailService extends IService<OrderDetail> {
 
+    /**
+     * 使用多行插入语句保存订单详情，按语句大小分批
+     */
+    void saveAllValues(List<OrderDetail> details);
+
 }
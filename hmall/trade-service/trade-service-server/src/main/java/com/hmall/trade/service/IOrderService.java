@@ -4,6 +4,8 @@ import com.baomidou.mybatisplus.extension.service.IService;
 import com.hmall.trade.domain.dto.OrderFormDTO;
 import com.hmall.trade.domain.po.Order;
 
+import java.time.LocalDateTime;
+
 /**
  * <p>
  *  服务类
@@ -14,4 +16,6 @@ public interface IOrderService extends IService<Order> {
     Long createOrder(OrderFormDTO orderFormDTO);
 
     void markOrderPaySuccess(Long orderId);
+
+    LocalDateTime queryPayDeadline(Long orderId);
 }
@@ -5,6 +5,9 @@ import com.hmall.trade.domain.po.OrderDetail;
 import com.hmall.trade.mapper.OrderDetailMapper;
 import com.hmall.trade.service.IOrderDetailService;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
 
 /**
  * <p>
@@ -14,4 +17,13 @@ import org.springframework.stereotype.Service;
 @Service
 public class OrderDetailServiceImpl extends ServiceImpl<OrderDetailMapper, OrderDetail> implements IOrderDetailService {
 
+    /*
+    * saveBatch 每一行一条 INSERT，没有开启 rewriteBatchedStatements 时是 N 次往返；这里一批只有一条语句
+    * */
+    @Override
+    @Transactional
+    public void saveAllValues(List<OrderDetail> details) {
+        baseMapper.insertValues(details);
+    }
+
 }
@@ -1,21 +1,32 @@
 package com.hmall.trade.service.impl;
 
+import com.baomidou.mybatisplus.core.toolkit.IdWorker;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
-import com.hmall.cart.api.client.CartClient;
+import com.hmall.common.domain.dto.OrderCreatedMessage;
 import com.hmall.common.domain.dto.OrderDetailDTO;
 import com.hmall.common.exception.BadRequestException;
+import com.hmall.common.exception.BizIllegalException;
 import com.hmall.common.utils.UserContext;
 import com.hmall.item.api.client.ItemClient;
 import com.hmall.item.api.dto.ItemDTO;
+import com.hmall.trade.config.OrderPipelineProperties;
+import com.hmall.trade.config.OrderTimeoutProperties;
 import com.hmall.trade.domain.dto.OrderFormDTO;
+import com.hmall.trade.fanout.OrderFanout;
 import com.hmall.trade.domain.po.Order;
 import com.hmall.trade.domain.po.OrderDetail;
 import com.hmall.trade.mapper.OrderMapper;
+import com.hmall.trade.outbox.OrderCreatedPublisher;
 import com.hmall.trade.service.IOrderDetailService;
 import com.hmall.trade.service.IOrderService;
+import com.hmall.trade.timeout.OrderTimeoutCloser;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.time.LocalDateTime;
 import java.util.ArrayList;
@@ -29,66 +40,176 @@ import java.util.stream.Collectors;
  * 服务实现类
  * </p>
  */
+@Slf4j
 @Service
 @RequiredArgsConstructor
 public class OrderServiceImpl extends ServiceImpl<OrderMapper, Order> implements IOrderService {
 
     private final ItemClient itemClient;
     private final IOrderDetailService detailService;
-    private final CartClient cartClient;
+    private final OrderFanout orderFanout;
+    private final TransactionTemplate transactionTemplate;
+    private final OrderCreatedPublisher orderCreatedPublisher;
+    private final OrderPipelineProperties orderPipelineProperties;
+    private final OrderTimeoutProperties orderTimeoutProperties;
+    // 未启用超时关闭时为空
+    private final ObjectProvider<OrderTimeoutCloser> timeoutCloser;
 
+    /*
+    * 下单
+    * 流程（见 OrderPipelineProperties）：
+    *  1. sync：在一个事务中完成查询商品、写订单，再并行清理购物车、扣减库存（见 OrderFanout），事务期间一直持有数据库连接
+    *  2. async：事务外查询商品、扣减库存，事务内写订单和发件箱，提交后发送订单创建消息，清理购物车由消费者异步完成
+    * */
     @Override
-    @Transactional
     public Long createOrder(OrderFormDTO orderFormDTO) {
+        if (orderPipelineProperties.getPipeline() == OrderPipelineProperties.Pipeline.ASYNC) {
+            return createOrderAsync(orderFormDTO);
+        }
+        return transactionTemplate.execute(status -> createOrderSync(orderFormDTO));
+    }
+
+    private Long createOrderSync(OrderFormDTO orderFormDTO) {
         // 1.订单数据
-        Order order = new Order();
         // 1.1.查询商品
         List<OrderDetailDTO> detailDTOS = orderFormDTO.getDetails();
         // 1.2.获取商品id和数量的Map
         Map<Long, Integer> itemNumMap = detailDTOS.stream()
                 .collect(Collectors.toMap(OrderDetailDTO::getItemId, OrderDetailDTO::getNum));
-        Set<Long> itemIds = itemNumMap.keySet();
         // 1.3.查询商品
+        List<ItemDTO> items = queryItems(itemNumMap.keySet());
+        // 1.4-1.5.计算商品总价，填写其它属性
+        Order order = newOrder(orderFormDTO, items, itemNumMap);
+        // 1.6.将Order写入数据库order表中
+        save(order);
+
+        // 2.保存订单详情
+        List<OrderDetail> details = buildDetails(order.getId(), items, itemNumMap);
+        detailService.saveAllValues(details);
+
+        // 3.清理购物车商品
+        // 4.扣减库存
+        // 优化：两者互不依赖，并行调用，任意一个失败时已经补偿了另一个
+        OrderFanout.Compensation compensation = orderFanout.deductStockAndClearCart(detailDTOS);
+        // 5.之后订单事务回滚（例如提交失败）时，撤销这两个调用；提交后开始超时计时
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status != STATUS_COMMITTED) {
+                    compensation.compensate();
+                } else {
+                    timeoutCloser.ifAvailable(closer -> closer.schedule(order.getId()));
+                }
+            }
+        });
+        return order.getId();
+    }
+
+    private Long createOrderAsync(OrderFormDTO orderFormDTO) {
+        // 1.查询商品，此时不持有数据库连接
+        List<OrderDetailDTO> detailDTOS = orderFormDTO.getDetails();
+        Map<Long, Integer> itemNumMap = detailDTOS.stream()
+                .collect(Collectors.toMap(OrderDetailDTO::getItemId, OrderDetailDTO::getNum));
+        List<ItemDTO> items = queryItems(itemNumMap.keySet());
+        Order order = newOrder(orderFormDTO, items, itemNumMap);
+        List<OrderDetail> details = buildDetails(order.getId(), items, itemNumMap);
+
+        // 2.扣减库存，失败时还没有写入任何数据，直接返回；超时之后才成功的扣减由 OrderFanout 归还
+        orderFanout.deductStock(detailDTOS);
+
+        // 3.在一个短事务中写入订单、订单详情和待发送的消息，失败时归还库存
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                save(order);
+                detailService.saveAllValues(details);
+                orderCreatedPublisher.record(order.getId());
+            });
+        } catch (RuntimeException e) {
+            restoreStockQuietly(detailDTOS);
+            throw e;
+        }
+
+        // 4.事务已提交，开始超时计时，发送订单创建消息（失败时由发件箱补发），清理购物车等后续处理由消费者完成
+        timeoutCloser.ifAvailable(closer -> closer.schedule(order.getId()));
+        orderCreatedPublisher.publish(new OrderCreatedMessage(order.getId(), order.getUserId(), detailDTOS));
+        return order.getId();
+    }
+
+    private List<ItemDTO> queryItems(Set<Long> itemIds) {
         List<ItemDTO> items = itemClient.queryItemByIds(itemIds.stream().toList());
         if (items == null || items.size() < itemIds.size()) {
             throw new BadRequestException("商品不存在");
         }
-        // 1.4.基于商品价格、购买数量计算商品总价：totalFee
+        return items;
+    }
+
+    private Order newOrder(OrderFormDTO orderFormDTO, List<ItemDTO> items, Map<Long, Integer> itemNumMap) {
+        Order order = new Order();
+        // 订单id在本地生成，不需要等待插入之后才能构建订单详情
+        order.setId(IdWorker.getId(order));
+        // 基于商品价格、购买数量计算商品总价：totalFee
         int total = 0;
         for (ItemDTO item : items) {
             total += item.getPrice() * itemNumMap.get(item.getId());
         }
         order.setTotalFee(total);
-        // 1.5.其它属性
+        // 其它属性
         order.setPaymentType(orderFormDTO.getPaymentType());
         order.setUserId(UserContext.getUser());
         order.setStatus(1);
-        // 1.6.将Order写入数据库order表中
-        save(order);
-
-        // 2.保存订单详情
-        List<OrderDetail> details = buildDetails(order.getId(), items, itemNumMap);
-        detailService.saveBatch(details);
-
-        // 3.清理购物车商品
-        cartClient.removeByItemIds(itemIds.stream().toList());
+        return order;
+    }
 
-        // 4.扣减库存
+    /*
+    * 归还已扣减的库存，失败时只记录日志，需要人工处理
+    * */
+    private void restoreStockQuietly(List<OrderDetailDTO> items) {
         try {
-            itemClient.deductStock(detailDTOS);
+            itemClient.restoreStock(items);
         } catch (Exception e) {
-            throw new RuntimeException("库存不足！");
+            log.error("下单失败后归还库存失败，需要人工处理：{}", items, e);
         }
-        return order.getId();
     }
 
+    /*
+    * 只有未支付的订单可以改为已支付，与超时关闭互斥：两者都带有 status=1 的条件，只有一个会成功
+    * 订单已经是已支付之后的状态时按重复通知处理，直接返回
+    * */
     @Override
     public void markOrderPaySuccess(Long orderId) {
-        Order order = new Order();
-        order.setId(orderId);
-        order.setStatus(2);
-        order.setPayTime(LocalDateTime.now());
-        updateById(order);
+        boolean success = lambdaUpdate()
+                .set(Order::getStatus, 2)
+                .set(Order::getPayTime, LocalDateTime.now())
+                .eq(Order::getId, orderId)
+                .eq(Order::getStatus, 1)
+                .update();
+        if (!success) {
+            Order order = getById(orderId);
+            if (order == null) {
+                throw new BadRequestException("订单不存在");
+            }
+            if (order.getStatus() == 5) {
+                throw new BizIllegalException("订单已超时关闭！");
+            }
+            return;
+        }
+        timeoutCloser.ifAvailable(closer -> closer.cancel(orderId));
+    }
+
+    /*
+    * 订单的支付截止时间，支付服务据此限制支付单的有效期，只在截止时间之前开始扣款
+    * 超时关闭在截止时间之后再等待 closeGrace，已经开始的扣款有时间完成并标记订单已支付
+    * */
+    @Override
+    public LocalDateTime queryPayDeadline(Long orderId) {
+        Order order = getById(orderId);
+        if (order == null) {
+            throw new BadRequestException("订单不存在");
+        }
+        if (order.getStatus() != 1) {
+            throw new BizIllegalException("订单已支付或关闭！");
+        }
+        return order.getCreateTime().plus(orderTimeoutProperties.getPayTimeout());
     }
 
     private List<OrderDetail> buildDetails(Long orderId, List<ItemDTO> items, Map<Long, Integer> numMap) {
@@ -0,0 +1,280 @@
+package com.hmall.trade.timeout;
+
+import cn.hutool.core.collection.ListUtil;
+import com.baomidou.mybatisplus.core.toolkit.Wrappers;
+import com.hmall.common.domain.dto.OrderDetailDTO;
+import com.hmall.common.timer.TimingWheel;
+import com.hmall.item.api.client.ItemClient;
+import com.hmall.trade.config.OrderTimeoutProperties;
+import com.hmall.trade.domain.po.Order;
+import com.hmall.trade.domain.po.OrderDetail;
+import com.hmall.trade.mapper.OrderDetailMapper;
+import com.hmall.trade.mapper.OrderMapper;
+import com.hmall.trade.mapper.OrderStockRestoreMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/*
+* 关闭超时未支付的订单并归还库存，hm.trade.order.timeout.enabled=true 时启用
+* 流程：
+*  1. 下单成功后按 创建时间 + 支付超时时间 + 关闭宽限时间 放入时间轮，支付成功时取消
+*  2. 到期的订单按批关闭：在一个事务中锁定仍未支付的订单，改为关闭状态，并写入待归还库存的订单（order_stock_restore）
+*  3. 事务提交后，把这一批订单的商品按商品id合并，一次调用归还库存，成功后删除待归还的记录
+*  4. 启动时从数据库加载未支付的订单放入时间轮，已经超时的在第一个tick关闭
+*  5. 定期扫描数据库中已经超时仍未关闭的订单，例如创建订单的实例宕机、关闭时数据库异常
+*  6. 定期重试归还失败的库存：锁定写入超过一个扫描周期的待归还记录，归还成功后在同一个事务中删除
+* 注意：
+*  1. 未支付的订单本身（status=1 和 create_time）就是持久化的超时时间，不需要另外保存
+*  2. 订单只能从未支付改为关闭或者已支付，两者都带有 status=1 的条件，同一个订单只有一个会成功，
+*     所以多个实例、时间轮与定期扫描重复关闭同一个订单时只会归还一次库存
+*  3. 支付成功的请求可能由其他实例处理，本实例时间轮中的任务不会被取消，到期时按第2条跳过
+*  4. 支付单的截止时间不晚于 创建时间 + 支付超时时间，关闭时再多等待 closeGrace，
+*     所以截止时间之前开始的扣款不会因为订单已关闭而失败（见 OrderServiceImpl.queryPayDeadline）
+*  5. 待归还的记录与关闭订单在同一个事务中提交，归还库存失败或者实例宕机都不会丢失；
+*     重试只处理写入超过一个扫描周期的记录（FOR UPDATE SKIP LOCKED），不会与刚关闭订单的实例、其他实例重复归还，
+*     只有归还成功而删除记录失败时才会重复归还一次，此时记录日志
+*  6. 扫描的条件是 status、create_time，订单量大时需要相应的索引
+* */
+@Slf4j
+@Component
+@ConditionalOnProperty(prefix = "hm.trade.order.timeout", name = "enabled", havingValue = "true")
+public class OrderTimeoutCloser {
+
+    private static final int UNPAID = 1;
+    private static final int CLOSED = 5;
+
+    private final OrderTimeoutProperties properties;
+    private final OrderMapper orderMapper;
+    private final OrderDetailMapper detailMapper;
+    private final OrderStockRestoreMapper stockRestoreMapper;
+    private final ItemClient itemClient;
+    private final TransactionTemplate transactionTemplate;
+    // 订单id -> 超时时间
+    private final TimingWheel<Long> wheel;
+    private final ScheduledExecutorService sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "order-timeout-sweeper");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public OrderTimeoutCloser(OrderTimeoutProperties properties, OrderMapper orderMapper, OrderDetailMapper detailMapper,
+                              OrderStockRestoreMapper stockRestoreMapper, ItemClient itemClient,
+                              TransactionTemplate transactionTemplate) {
+        this.properties = properties;
+        this.orderMapper = orderMapper;
+        this.detailMapper = detailMapper;
+        this.stockRestoreMapper = stockRestoreMapper;
+        this.itemClient = itemClient;
+        this.transactionTemplate = transactionTemplate;
+        this.wheel = new TimingWheel<>("order-timeout", properties.getTick(), properties.getWheelSize(), this::closeAll);
+    }
+
+    @PostConstruct
+    public void start() {
+        stockRestoreMapper.createTableIfAbsent();
+        // 1.加载未支付的订单
+        int recovered = 0;
+        long lastId = 0;
+        List<Order> orders;
+        do {
+            orders = orderMapper.selectList(Wrappers.<Order>lambdaQuery()
+                    .select(Order::getId, Order::getCreateTime)
+                    .eq(Order::getStatus, UNPAID)
+                    .gt(Order::getId, lastId)
+                    .orderByAsc(Order::getId)
+                    .last("LIMIT " + properties.getBatchSize()));
+            for (Order order : orders) {
+                wheel.schedule(order.getId(), deadlineOf(order.getCreateTime()));
+                lastId = order.getId();
+            }
+            recovered += orders.size();
+        } while (orders.size() == properties.getBatchSize());
+        log.info("加载未支付的订单{}个", recovered);
+        // 2.开始推进时间轮、定期扫描
+        wheel.start();
+        long interval = properties.getSweepInterval().toMillis();
+        sweeper.scheduleWithFixedDelay(this::sweepQuietly, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 新订单开始计时，在订单写入数据库之后调用
+     */
+    public void schedule(Long orderId) {
+        wheel.schedule(orderId, System.currentTimeMillis() + closeAfterMillis());
+    }
+
+    /**
+     * 订单已支付，取消计时
+     */
+    public void cancel(Long orderId) {
+        wheel.cancel(orderId);
+    }
+
+    /**
+     * 关闭仍未支付的订单，并归还这些订单的库存
+     *
+     * @param orderIds 订单id，已支付、已关闭的订单会被跳过
+     * @return 实际关闭的订单id
+     */
+    public List<Long> close(List<Long> orderIds) {
+        // 1.在一个事务中锁定仍未支付的订单，改为关闭，并记录待归还库存的订单
+        List<Long> closed = transactionTemplate.execute(status -> {
+            List<Long> unpaid = orderMapper.selectList(Wrappers.<Order>lambdaQuery()
+                            .select(Order::getId)
+                            .in(Order::getId, orderIds)
+                            .eq(Order::getStatus, UNPAID)
+                            .last("FOR UPDATE"))
+                    .stream().map(Order::getId).collect(Collectors.toList());
+            if (unpaid.isEmpty()) {
+                return Collections.<Long>emptyList();
+            }
+            Order order = new Order();
+            order.setStatus(CLOSED);
+            order.setCloseTime(LocalDateTime.now());
+            orderMapper.update(order, Wrappers.<Order>lambdaUpdate()
+                    .in(Order::getId, unpaid)
+                    .eq(Order::getStatus, UNPAID));
+            stockRestoreMapper.insertAll(unpaid);
+            return unpaid;
+        });
+        if (closed == null || closed.isEmpty()) {
+            return Collections.emptyList();
+        }
+        // 2.事务已提交，归还库存后删除待归还的记录，失败时由定期扫描重试
+        try {
+            restoreStock(closed);
+        } catch (Exception e) {
+            log.warn("关闭超时订单后归还库存失败，将由定期扫描重试，订单：{}", closed, e);
+            return closed;
+        }
+        try {
+            stockRestoreMapper.deleteAll(closed);
+        } catch (Exception e) {
+            log.error("库存已归还，删除待归还记录失败，重试时会重复归还，需要人工核对，订单：{}", closed, e);
+        }
+        return closed;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        sweeper.shutdownNow();
+        wheel.close();
+    }
+
+    /*
+    * 时间轮中到期的订单，按批关闭；一批失败时由定期扫描重试
+    * */
+    private void closeAll(List<Long> orderIds) {
+        for (List<Long> batch : ListUtil.partition(orderIds, properties.getBatchSize())) {
+            try {
+                close(batch);
+            } catch (Exception e) {
+                log.error("关闭超时订单失败，将由定期扫描重试，订单：{}", batch, e);
+            }
+        }
+    }
+
+    /*
+    * 扫描已经超时仍未关闭的订单
+    * */
+    private void sweepQuietly() {
+        try {
+            LocalDateTime createdBefore = LocalDateTime.now().minus(closeAfterMillis(), ChronoUnit.MILLIS);
+            long lastId = 0;
+            List<Order> orders;
+            do {
+                orders = orderMapper.selectList(Wrappers.<Order>lambdaQuery()
+                        .select(Order::getId)
+                        .eq(Order::getStatus, UNPAID)
+                        .le(Order::getCreateTime, createdBefore)
+                        .gt(Order::getId, lastId)
+                        .orderByAsc(Order::getId)
+                        .last("LIMIT " + properties.getBatchSize()));
+                if (orders.isEmpty()) {
+                    break;
+                }
+                List<Long> ids = orders.stream().map(Order::getId).collect(Collectors.toList());
+                lastId = ids.get(ids.size() - 1);
+                List<Long> closed = close(ids);
+                if (!closed.isEmpty()) {
+                    log.info("定期扫描关闭了{}个超时订单", closed.size());
+                }
+            } while (orders.size() == properties.getBatchSize());
+        } catch (Exception e) {
+            log.error("扫描超时订单失败，将在下个周期重试", e);
+        }
+        retryStockRestoreQuietly();
+    }
+
+    /*
+    * 重试归还失败的库存，只处理写入超过一个扫描周期的记录，刚关闭的订单由关闭它的线程归还
+    * 归还库存与删除记录在同一个事务中，归还失败时记录保留，下个周期重试
+    * */
+    private void retryStockRestoreQuietly() {
+        try {
+            LocalDateTime createdBefore = LocalDateTime.now().minus(properties.getSweepInterval());
+            List<Long> restored;
+            do {
+                restored = transactionTemplate.execute(status -> {
+                    List<Long> pending = stockRestoreMapper.lockPending(createdBefore, properties.getBatchSize());
+                    if (!pending.isEmpty()) {
+                        restoreStock(pending);
+                        stockRestoreMapper.deleteAll(pending);
+                    }
+                    return pending;
+                });
+                if (restored != null && !restored.isEmpty()) {
+                    log.info("重试归还了{}个已关闭订单的库存", restored.size());
+                }
+            } while (restored != null && restored.size() == properties.getBatchSize());
+        } catch (Exception e) {
+            log.error("重试归还库存失败，将在下个周期重试", e);
+        }
+    }
+
+    /*
+    * 把这些订单的商品按商品id合并，一次调用归还库存
+    * */
+    private void restoreStock(List<Long> orderIds) {
+        List<OrderDetail> details = detailMapper.selectList(Wrappers.<OrderDetail>lambdaQuery()
+                .select(OrderDetail::getItemId, OrderDetail::getNum)
+                .in(OrderDetail::getOrderId, orderIds));
+        Map<Long, Integer> nums = new TreeMap<>();
+        for (OrderDetail detail : details) {
+            nums.merge(detail.getItemId(), detail.getNum(), Integer::sum);
+        }
+        if (nums.isEmpty()) {
+            return;
+        }
+        List<OrderDetailDTO> items = new ArrayList<>(nums.size());
+        nums.forEach((itemId, num) -> items.add(new OrderDetailDTO().setItemId(itemId).setNum(num)));
+        itemClient.restoreStock(items);
+    }
+
+    private long deadlineOf(LocalDateTime createTime) {
+        long created = createTime == null ? System.currentTimeMillis()
+                : createTime.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        return created + closeAfterMillis();
+    }
+
+    private long closeAfterMillis() {
+        return properties.getPayTimeout().plus(properties.getCloseGrace()).toMillis();
+    }
+}